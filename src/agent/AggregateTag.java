@@ -0,0 +1,85 @@
+/*
+ * Copyright (C) 2015 SFINA Team
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package agent;
+
+import java.io.Serializable;
+
+/**
+ * Measurement log tag of a per iteration summary, e.g. the sum of the link
+ * flows. Logged together with the iteration as second tag.
+ */
+public final class AggregateTag implements Serializable {
+
+    private static final AggregateTag[][] TAGS = new AggregateTag[Metrics.values().length][Aggregates.values().length];
+
+    static {
+        for (Metrics metric : Metrics.values()) {
+            for (Aggregates aggregate : Aggregates.values()) {
+                TAGS[metric.ordinal()][aggregate.ordinal()] = new AggregateTag(metric, aggregate);
+            }
+        }
+    }
+
+    private final Metrics metric;
+    private final Aggregates aggregate;
+
+    private AggregateTag(Metrics metric, Aggregates aggregate) {
+        this.metric = metric;
+        this.aggregate = aggregate;
+    }
+
+    /**
+     * @param metric
+     * @param aggregate
+     * @return the shared tag instance
+     */
+    public static AggregateTag of(Metrics metric, Aggregates aggregate) {
+        return TAGS[metric.ordinal()][aggregate.ordinal()];
+    }
+
+    public Metrics getMetric() {
+        return metric;
+    }
+
+    public Aggregates getAggregate() {
+        return aggregate;
+    }
+
+    private Object readResolve() {
+        return of(metric, aggregate);
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (!(other instanceof AggregateTag)) {
+            return false;
+        }
+        AggregateTag tag = (AggregateTag) other;
+        return metric == tag.metric && aggregate == tag.aggregate;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * metric.hashCode() + aggregate.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return metric + "_" + aggregate;
+    }
+}
@@ -25,5 +25,6 @@ public enum Aggregates {
     SUM,
     AVG,
     MAX,
-    MIN
+    MIN,
+    COUNT
 }
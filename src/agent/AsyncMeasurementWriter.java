@@ -0,0 +1,149 @@
+/*
+ * Copyright (C) 2015 SFINA Team
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package agent;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import org.apache.log4j.Logger;
+
+/**
+ * Runs measurement writes on a background thread. Tasks are queued in a
+ * bounded queue, submit blocks while the queue is full so a slow disk slows
+ * down the simulation instead of filling up the memory. The thread is a
+ * daemon, the owner has to close the writer before the JVM exits or the logs
+ * are read, otherwise queued tasks are lost.
+ */
+public class AsyncMeasurementWriter {
+
+    private static final Logger logger = Logger.getLogger(AsyncMeasurementWriter.class);
+
+    private static final Runnable CLOSE = new Runnable() {
+        @Override
+        public void run() {
+        }
+    };
+
+    private final ArrayBlockingQueue<Runnable> queue;
+    private final Thread thread;
+    private volatile boolean closed;
+
+    /**
+     * Starts the background thread.
+     *
+     * @param name name of the thread
+     * @param capacity maximum number of queued tasks
+     */
+    public AsyncMeasurementWriter(String name, int capacity) {
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                drain();
+            }
+        }, name);
+        this.thread.setDaemon(true);
+        this.closed = false;
+        this.thread.start();
+    }
+
+    private void drain() {
+        while (true) {
+            Runnable task;
+            try {
+                task = queue.take();
+            } catch (InterruptedException ex) {
+                logger.error("Measurement writer " + thread.getName() + " interrupted, " + queue.size() + " tasks dropped");
+                return;
+            }
+            if (task == CLOSE) {
+                return;
+            }
+            try {
+                task.run();
+            } catch (RuntimeException ex) {
+                logger.error("Measurement write failed", ex);
+            }
+        }
+    }
+
+    /**
+     * Queues the task, waits while the queue is full.
+     *
+     * @param task
+     * @throws IllegalStateException if the writer is closed or the calling
+     * thread is interrupted while waiting, the task isn't run and the
+     * interrupt flag stays set
+     */
+    public void submit(Runnable task) {
+        if (closed) {
+            throw new IllegalStateException("Measurement writer " + thread.getName() + " is closed");
+        }
+        try {
+            queue.put(task);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while queueing on measurement writer " + thread.getName(), ex);
+        }
+    }
+
+    /**
+     * Waits until all tasks submitted before were run.
+     */
+    public void flush() {
+        if (closed) {
+            return;
+        }
+        final CountDownLatch done = new CountDownLatch(1);
+        submit(new Runnable() {
+            @Override
+            public void run() {
+                done.countDown();
+            }
+        });
+        try {
+            done.await();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Runs all queued tasks and stops the background thread.
+     */
+    public void close() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            submit(CLOSE);
+            closed = true;
+        }
+        try {
+            thread.join();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return number of tasks waiting in the queue
+     */
+    public int getQueuedTasks() {
+        return queue.size();
+    }
+}
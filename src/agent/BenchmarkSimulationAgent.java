@@ -18,8 +18,11 @@
 package agent;
 
 import agents.simulation.SimulationAgent;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import network.Link;
 import network.Node;
 import org.apache.log4j.Logger;
@@ -40,110 +43,136 @@ public class BenchmarkSimulationAgent extends SimulationAgent{
     
     private static final Logger logger = Logger.getLogger(BenchmarkSimulationAgent.class);
     
-    // Time, Iteration, Node/Link ID, Metric, Values
-    private HashMap<Integer,HashMap<Integer,HashMap<String,HashMap<Metrics,Object>>>> temporalLinkMetrics;
-    private HashMap<Integer,HashMap<Integer,HashMap<String,HashMap<Metrics,Object>>>> temporalNodeMetrics;
+    public static final int RETAIN_ALL_TIME_STEPS = 0;
+    
+    public static final DoubleMetric TOT_SIMU_TIME=DoubleMetric.of(Metrics.TOT_SIMU_TIME);
+    public static final IntMetric NEEDED_ITERATIONS=IntMetric.of(Metrics.NEEDED_ITERATIONS);
+    
+    // Ordinal and index of the only element in the system metric frames
+    public static final int SYSTEM=0;
+    private static final String SYSTEM_INDEX="system";
+    
+    // Node/Link ID, Time, Iteration, Metric, Values
+    private final MetricStore linkMetricStore;
+    private final MetricStore nodeMetricStore;
+    private final FlowMetricCollector flowMetricCollector;
+    private final ArrayList<MetricCollector> metricCollectors;
     
     // Time, Iteration, Metric, Values
-    private HashMap<Integer,HashMap<Integer,HashMap<Metrics,Object>>> temporalSystemMetrics;
+    private final MetricStore systemMetricStore;
     private long simulationStartTime;
     
+    // Number of time steps kept in memory after they were dumped
+    private int retainedTimeSteps;
+    private MetricSpillFile metricSpillFile;
+    
+    private boolean logElementMetrics;
+    
+    private final PhaseTimer phaseTimer;
+    
+    private MeasurementFormat measurementFormat;
+    private BinaryLogWriter binaryLogWriter;
+    private EpochIndexWriter epochIndexWriter;
+    
+    private int asyncQueueCapacity;
+    private AsyncMeasurementWriter asyncWriter;
+    
+    private MetricRegistry metricRegistry;
+    
     public BenchmarkSimulationAgent(String experimentID){
+        this(experimentID, MetricRegistry.DEFAULT_CONFIG_FILE);
+    }
+    
+    /**
+     * @param experimentID
+     * @param measurementConfigFile metric registry configuration, defaults
+     * are used if the file doesn't exist
+     */
+    public BenchmarkSimulationAgent(String experimentID, String measurementConfigFile){
         super(experimentID);
-        this.temporalLinkMetrics=new HashMap();
-        this.temporalNodeMetrics=new HashMap();
-        this.temporalSystemMetrics=new HashMap();
+        this.linkMetricStore=new MetricStore();
+        this.nodeMetricStore=new MetricStore();
+        this.flowMetricCollector=new FlowMetricCollector();
+        this.metricCollectors=new ArrayList<>();
+        this.metricCollectors.add(flowMetricCollector);
+        this.systemMetricStore=new MetricStore();
+        this.systemMetricStore.ordinalOf(SYSTEM_INDEX);
+        this.retainedTimeSteps=1;
+        this.logElementMetrics=true;
+        this.phaseTimer=new PhaseTimer();
+        this.measurementFormat=MeasurementFormat.SERIALIZED;
+        this.setMetricRegistry(MetricRegistry.load(measurementConfigFile));
     }
     
     public void initMeasurementVariables(){
-        if(getIteration()==1){
-            this.getTemporalLinkMetrics().put(this.getSimulationTime(), new HashMap<>());
-            this.getTemporalNodeMetrics().put(this.getSimulationTime(), new HashMap<>());
-            this.getTemporalSystemMetrics().put(this.getSimulationTime(), new HashMap<>());
-        }
-
-        HashMap<String,HashMap<Metrics,Object>> linkMetrics=new HashMap<>();
-        for(Link link:this.getFlowNetwork().getLinks()){
-            HashMap<Metrics,Object> metrics=new HashMap<>();
-            linkMetrics.put(link.getIndex(), metrics);
-        }
-        this.getTemporalLinkMetrics().get(this.getSimulationTime()).put(this.getIteration(), linkMetrics);
+        for(Link link:this.getFlowNetwork().getLinks())
+            this.getLinkMetricStore().ordinalOf(link.getIndex());
+        this.getLinkMetricStore().createFrame(this.getSimulationTime(), this.getIteration());
         
-        HashMap<String,HashMap<Metrics,Object>> nodeMetrics=new HashMap<>();
-        for(Node node:this.getFlowNetwork().getNodes()){
-            HashMap<Metrics,Object> metrics=new HashMap<>();
-            nodeMetrics.put(node.getIndex(), metrics);
-        }
-        this.getTemporalNodeMetrics().get(this.getSimulationTime()).put(this.getIteration(), nodeMetrics);
+        for(Node node:this.getFlowNetwork().getNodes())
+            this.getNodeMetricStore().ordinalOf(node.getIndex());
+        this.getNodeMetricStore().createFrame(this.getSimulationTime(), this.getIteration());
         
-        this.getTemporalSystemMetrics().get(this.getSimulationTime()).put(this.getIteration(), new HashMap<>());
+        this.getSystemMetricStore().createFrame(this.getSimulationTime(), this.getIteration());
     }
     
-    public void calculateTotalNumber(){
-        for(Link link:this.getFlowNetwork().getLinks()){
-            HashMap<Metrics,Object> metrics=this.getTemporalLinkMetrics().get(this.getSimulationTime()).get(this.getIteration()).get(link.getIndex());
-            metrics.put(Metrics.TOTAL_LINKS, 1.0);
-        }
-        for(Node node:this.getFlowNetwork().getNodes()){
-            HashMap<Metrics,Object> metrics=this.getTemporalNodeMetrics().get(this.getSimulationTime()).get(this.getIteration()).get(node.getIndex());
-            metrics.put(Metrics.TOTAL_NODES, 1.0);
-        }
+    /**
+     * @return the link metrics of the current time step and iteration
+     */
+    public MetricFrame getLinkMetricFrame(){
+        return this.getLinkMetricStore().getFrame(this.getSimulationTime(), this.getIteration());
     }
     
-    public void calculateActivationStatus(){
-        for(Link link:this.getFlowNetwork().getLinks()){
-            boolean activationStatus=link.isActivated();
-            HashMap<Metrics,Object> metrics=this.getTemporalLinkMetrics().get(this.getSimulationTime()).get(this.getIteration()).get(link.getIndex());
-            metrics.put(Metrics.ACTIVATED_LINKS, (activationStatus==true) ? 1.0 : 0.0);
-        }
-        for(Node node:this.getFlowNetwork().getNodes()){
-            boolean activationStatus=node.isActivated();
-            HashMap<Metrics,Object> metrics=this.getTemporalNodeMetrics().get(this.getSimulationTime()).get(this.getIteration()).get(node.getIndex());
-            metrics.put(Metrics.ACTIVATED_NODES, (activationStatus==true) ? 1.0 : 0.0);
-        }
+    /**
+     * @return the node metrics of the current time step and iteration
+     */
+    public MetricFrame getNodeMetricFrame(){
+        return this.getNodeMetricStore().getFrame(this.getSimulationTime(), this.getIteration());
     }
     
-    public void calculateFlow(){
-        for(Link link:this.getFlowNetwork().getLinks()){
-            double flow=link.getFlow();
-            HashMap<Metrics,Object> metrics=this.getTemporalLinkMetrics().get(this.getSimulationTime()).get(this.getIteration()).get(link.getIndex());
-            metrics.put(Metrics.LINK_FLOW, (link.isActivated()) ? flow : 0.0);
-        }
-        for(Node node:this.getFlowNetwork().getNodes()){
-            double flow=node.getFlow();
-            HashMap<Metrics,Object> metrics=this.getTemporalNodeMetrics().get(this.getSimulationTime()).get(this.getIteration()).get(node.getIndex());
-            metrics.put(Metrics.NODE_FLOW, (node.isActivated()) ? flow : 0.0);
+    /**
+     * Calculates the metrics of all registered collectors in a single pass
+     * over the links and nodes of the flow network.
+     */
+    public void collectMetrics(){
+        if(!metricRegistry.isCaptured(this.getSimulationTime()))
+            return;
+        ArrayList<MetricCollector> linkCollectors=new ArrayList<>();
+        ArrayList<MetricCollector> nodeCollectors=new ArrayList<>();
+        for(MetricCollector collector:metricCollectors){
+            if(collector.collectsLinks())
+                linkCollectors.add(collector);
+            if(collector.collectsNodes())
+                nodeCollectors.add(collector);
         }
-    }
-    
-    public void calculateUtilization(){
-        for(Link link:this.getFlowNetwork().getLinks()){
-            double flow=link.getFlow();
-            double capacity=link.getCapacity();
-            double utilization=flow/capacity;
-            HashMap<Metrics,Object> metrics=this.getTemporalLinkMetrics().get(this.getSimulationTime()).get(this.getIteration()).get(link.getIndex());
-            metrics.put(Metrics.LINK_UTILIZATION, (link.isActivated()) ? utilization : 1.0);
+        if(!linkCollectors.isEmpty()){
+            MetricFrame linkFrame=this.getLinkMetricFrame();
+            for(Link link:this.getFlowNetwork().getLinks()){
+                int ordinal=this.getLinkMetricStore().ordinalOf(link.getIndex());
+                if(!linkFrame.isSampled(ordinal))
+                    continue;
+                for(MetricCollector collector:linkCollectors)
+                    collector.collectLink(link, ordinal, linkFrame);
+            }
         }
-        for(Node node:this.getFlowNetwork().getNodes()){
-            double flow=node.getFlow();
-            double capacity=node.getCapacity();
-            double utilization=flow/capacity;
-            HashMap<Metrics,Object> metrics=this.getTemporalNodeMetrics().get(this.getSimulationTime()).get(this.getIteration()).get(node.getIndex());
-            metrics.put(Metrics.NODE_UTILIZATION, (node.isActivated()) ? utilization : 1.0);
+        if(!nodeCollectors.isEmpty()){
+            MetricFrame nodeFrame=this.getNodeMetricFrame();
+            for(Node node:this.getFlowNetwork().getNodes()){
+                int ordinal=this.getNodeMetricStore().ordinalOf(node.getIndex());
+                if(!nodeFrame.isSampled(ordinal))
+                    continue;
+                for(MetricCollector collector:nodeCollectors)
+                    collector.collectNode(node, ordinal, nodeFrame);
+            }
         }
     }
     
-    public void calculateOverloadStatus(){
-        for(Link link:this.getFlowNetwork().getLinks()){
-            boolean overloaded = Math.abs(link.getFlow()) > Math.abs(link.getCapacity());
-            HashMap<Metrics,Object> metrics=this.getTemporalLinkMetrics().get(this.getSimulationTime()).get(this.getIteration()).get(link.getIndex());
-            metrics.put(Metrics.OVERLOADED_LINKS, overloaded ? 1.0 : 0.0);
-        }
-        for(Node node:this.getFlowNetwork().getNodes()){
-            boolean overloaded = Math.abs(node.getFlow()) > Math.abs(node.getCapacity());
-            HashMap<Metrics,Object> metrics=this.getTemporalNodeMetrics().get(this.getSimulationTime()).get(this.getIteration()).get(node.getIndex());
-            metrics.put(Metrics.OVERLOADED_NODES, overloaded ? 1.0 : 0.0);
-        }
+    /**
+     * Adds a collector to the pass of collectMetrics().
+     * @param collector 
+     */
+    public void addMetricCollector(MetricCollector collector){
+        this.metricCollectors.add(collector);
     }
     
     public void saveStartTime(){
@@ -152,12 +181,26 @@ public class BenchmarkSimulationAgent extends SimulationAgent{
     
     public void saveSimuTime(){
         double totSimuTime = System.currentTimeMillis() - simulationStartTime;
-        this.getTemporalSystemMetrics().get(this.getSimulationTime()).get(this.getIteration()).put(Metrics.TOT_SIMU_TIME, totSimuTime);
+        this.getSystemMetricFrame().set(TOT_SIMU_TIME, SYSTEM, totSimuTime);
     }
     
     public void saveIterationNumber(){
         int iter = getIteration();
-        this.getTemporalSystemMetrics().get(this.getSimulationTime()).get(this.getIteration()).put(Metrics.NEEDED_ITERATIONS, iter);
+        this.getSystemMetricFrame().set(NEEDED_ITERATIONS, SYSTEM, iter);
+    }
+    
+    @Override
+    public void runFlowAnalysis(){
+        long start=phaseTimer.start();
+        super.runFlowAnalysis();
+        phaseTimer.stop(Phase.FLOW_ANALYSIS, start);
+    }
+    
+    @Override
+    public void executeAllEvents(){
+        long start=phaseTimer.start();
+        super.executeAllEvents();
+        phaseTimer.stop(Phase.EVENTS, start);
     }
     
     @Override
@@ -168,35 +211,85 @@ public class BenchmarkSimulationAgent extends SimulationAgent{
     
     @Override
     public void runFinalOperations(){
-        this.calculateActivationStatus();
-        this.calculateFlow();
-        this.calculateUtilization();
-        this.calculateTotalNumber();
-        this.calculateOverloadStatus();
+        this.collectMetrics();
         this.saveSimuTime();
         this.saveIterationNumber();
     }
         
     /**
-     * @return the temporalLinkMetrics
+     * @return read-only view of the temporal link metrics
      */
     public HashMap<Integer,HashMap<Integer,HashMap<String,HashMap<Metrics,Object>>>> getTemporalLinkMetrics() {
-        return temporalLinkMetrics;
+        return linkMetricStore.asMap();
     }
 
     /**
-     * @return the temporalNodeMetrics
+     * @return read-only view of the temporal node metrics
      */
     public HashMap<Integer,HashMap<Integer,HashMap<String,HashMap<Metrics,Object>>>> getTemporalNodeMetrics() {
-        return temporalNodeMetrics;
+        return nodeMetricStore.asMap();
     }
     
     /**
-     * 
-     * @return the temporalSystemMetrics
+     * @return read-only view of the temporal system metrics
      */
     public HashMap<Integer,HashMap<Integer,HashMap<Metrics,Object>>> getTemporalSystemMetrics() {
-        return temporalSystemMetrics;
+        return new ReadOnlyHashMap<Integer,HashMap<Integer,HashMap<String,HashMap<Metrics,Object>>>,HashMap<Integer,HashMap<Metrics,Object>>>(systemMetricStore.asMap()){
+            @Override
+            HashMap<Integer,HashMap<Metrics,Object>> view(HashMap<Integer,HashMap<String,HashMap<Metrics,Object>>> iterations){
+                return new ReadOnlyHashMap<Integer,HashMap<String,HashMap<Metrics,Object>>,HashMap<Metrics,Object>>(iterations){
+                    @Override
+                    HashMap<Metrics,Object> view(HashMap<String,HashMap<Metrics,Object>> frame){
+                        return frame.get(SYSTEM_INDEX);
+                    }
+                };
+            }
+        };
+    }
+    
+    /**
+     * @return the flowMetricCollector
+     */
+    public FlowMetricCollector getFlowMetricCollector() {
+        return flowMetricCollector;
+    }
+    
+    /**
+     * Phase durations are logged at the end of every time step. The
+     * measurement phase is logged with the next time step.
+     * @return the phaseTimer
+     */
+    public PhaseTimer getPhaseTimer() {
+        return phaseTimer;
+    }
+    
+    /**
+     * @return the linkMetricStore
+     */
+    public MetricStore getLinkMetricStore() {
+        return linkMetricStore;
+    }
+
+    /**
+     * @return the nodeMetricStore
+     */
+    public MetricStore getNodeMetricStore() {
+        return nodeMetricStore;
+    }
+    
+    /**
+     * System metrics are kept in frames with a single element, SYSTEM.
+     * @return the systemMetricStore
+     */
+    public MetricStore getSystemMetricStore() {
+        return systemMetricStore;
+    }
+    
+    /**
+     * @return the system metrics of the current time step and iteration
+     */
+    public MetricFrame getSystemMetricFrame(){
+        return this.getSystemMetricStore().getFrame(this.getSimulationTime(), this.getIteration());
     }
     
     // *************************** Measurements ******************************** /
@@ -208,62 +301,367 @@ public class BenchmarkSimulationAgent extends SimulationAgent{
      */
     @Override
     public void scheduleMeasurements(){
-        setMeasurementDumper(new MeasurementFileDumper(getPeersLogDirectory()+this.getExperimentID()+this.getPeerTokenName()));
+        String peerLogFile=getPeersLogDirectory()+this.getExperimentID()+this.getPeerTokenName();
+        setMeasurementLogFile(peerLogFile);
+        if(measurementFormat==MeasurementFormat.BINARY)
+            binaryLogWriter=new BinaryLogWriter(peerLogFile+BinaryLogFormat.FILE_EXTENSION);
+        if(asyncQueueCapacity>0)
+            asyncWriter=new AsyncMeasurementWriter("measurement-writer-"+getPeerTokenName(), asyncQueueCapacity);
         getPeer().getMeasurementLogger().addMeasurementLoggerListener(new MeasurementLoggerListener(){
             public void measurementEpochEnded(MeasurementLog log, int epochNumber){
-                int simulationTime=getSimulationTime();
+                long start=phaseTimer.start();
+                final int simulationTime=getSimulationTime();
                 Integer totalIteration=getIteration();
+                final ArrayList<MetricFrame> linkFrames=new ArrayList<>();
+                final ArrayList<MetricFrame> nodeFrames=new ArrayList<>();
                 
                 if(simulationTime>=1){
+                    boolean captured=metricRegistry.isCaptured(simulationTime);
                     logger.debug("Logging at simulation time " + simulationTime);
                     log.logTagSet(simulationTime, new HashSet(getFlowNetwork().getLinks()), simulationTime);
                     log.logTagSet(simulationTime, new HashSet(getFlowNetwork().getNodes()), simulationTime);
                     
                     for(Integer iteration=1; iteration<=totalIteration; iteration++){
-                        for(Link link:getFlowNetwork().getLinks()){
-                            try {
-                            HashMap<Metrics,Object> linkMetrics=getTemporalLinkMetrics().get(simulationTime).get(iteration).get(link.getIndex());
-                            log.log(simulationTime, iteration, Metrics.LINK_UTILIZATION, ((Double)linkMetrics.get(Metrics.LINK_UTILIZATION)));
-                            log.log(simulationTime, iteration, Metrics.LINK_FLOW, ((Double)linkMetrics.get(Metrics.LINK_FLOW)));
-                            log.log(simulationTime, iteration, Metrics.ACTIVATED_LINKS, ((Double)linkMetrics.get(Metrics.ACTIVATED_LINKS)));
-                            log.log(simulationTime, iteration, Metrics.OVERLOADED_LINKS, ((Double)linkMetrics.get(Metrics.OVERLOADED_LINKS)));
-                            log.log(simulationTime, iteration, Metrics.TOTAL_LINKS, ((Double)linkMetrics.get(Metrics.TOTAL_LINKS)));
-                            logLinkMetrics(log, simulationTime, iteration, linkMetrics);
-                            }catch(Exception ex){
-                                logger.info(" Exception in Benchmarksimulation Agent ");
-                            }
+                        MetricFrame linkFrame=(captured) ? getLinkMetricStore().getFrame(simulationTime, iteration) : null;
+                        if(linkFrame!=null){
+                            for(int i=linkFrame.nextSampled(0); i>=0; i=linkFrame.nextSampled(i+1))
+                                logLinkMetrics(log, simulationTime, iteration, linkFrame.getElementView(i));
+                            linkFrames.add(asyncWriter==null ? linkFrame : linkFrame.snapshot());
                         }
-                        for(Node node:getFlowNetwork().getNodes()){
-                            try {
-                            HashMap<Metrics,Object> nodeMetrics=getTemporalNodeMetrics().get(simulationTime).get(iteration).get(node.getIndex());
-                            log.log(simulationTime, iteration, Metrics.NODE_UTILIZATION, ((Double)nodeMetrics.get(Metrics.NODE_UTILIZATION)));
-                            log.log(simulationTime, iteration, Metrics.NODE_FLOW, ((Double)nodeMetrics.get(Metrics.NODE_FLOW)));
-                            log.log(simulationTime, iteration, Metrics.ACTIVATED_NODES, ((Double)nodeMetrics.get(Metrics.ACTIVATED_NODES)));
-                            log.log(simulationTime, iteration, Metrics.OVERLOADED_NODES, ((Double)nodeMetrics.get(Metrics.OVERLOADED_NODES)));
-                            log.log(simulationTime, iteration, Metrics.TOTAL_NODES, ((Double)nodeMetrics.get(Metrics.TOTAL_NODES)));
-                            logNodeMetrics(log, simulationTime, iteration, nodeMetrics);
-                            }catch(Exception ex){
-                                logger.info("Exception in BenchmarkSimulationAgent 2");
-                            }
+                        else if(captured)
+                            logger.info("No link metrics at time step " + simulationTime + ", iteration " + iteration);
+                        MetricFrame nodeFrame=(captured) ? getNodeMetricStore().getFrame(simulationTime, iteration) : null;
+                        if(nodeFrame!=null){
+                            for(int i=nodeFrame.nextSampled(0); i>=0; i=nodeFrame.nextSampled(i+1))
+                                logNodeMetrics(log, simulationTime, iteration, nodeFrame.getElementView(i));
+                            nodeFrames.add(asyncWriter==null ? nodeFrame : nodeFrame.snapshot());
                         }
-                        try {
-                            HashMap<Metrics,Object> sysMetrics=getTemporalSystemMetrics().get(simulationTime).get(iteration);
-                            log.log(simulationTime, iteration, Metrics.TOT_SIMU_TIME, ((Double)sysMetrics.get(Metrics.TOT_SIMU_TIME)));
-                            log.log(simulationTime, Metrics.NEEDED_ITERATIONS, (Integer)sysMetrics.get(Metrics.NEEDED_ITERATIONS));
-                            logSystemMetrics(log, simulationTime, iteration, sysMetrics);
-                        }catch(Exception ex){
-                            logger.info("Exception in BenchmarkSimulationAgent 3");
+                        else if(captured)
+                            logger.info("No node metrics at time step " + simulationTime + ", iteration " + iteration);
+                        MetricFrame systemFrame=getSystemMetricStore().getFrame(simulationTime, iteration);
+                        if(systemFrame!=null){
+                            if(metricRegistry.isEnabled(Metrics.TOT_SIMU_TIME) && systemFrame.isPresent(TOT_SIMU_TIME, SYSTEM))
+                                log.log(simulationTime, iteration, Metrics.TOT_SIMU_TIME, systemFrame.getDouble(TOT_SIMU_TIME, SYSTEM));
+                            if(metricRegistry.isEnabled(Metrics.NEEDED_ITERATIONS) && systemFrame.isPresent(NEEDED_ITERATIONS, SYSTEM))
+                                log.log(simulationTime, Metrics.NEEDED_ITERATIONS, systemFrame.getInt(NEEDED_ITERATIONS, SYSTEM, 0));
+                            logSystemMetrics(log, simulationTime, iteration, systemFrame.getElementView(SYSTEM));
                         }
+                        else
+                            logger.info("No system metrics at time step " + simulationTime + ", iteration " + iteration);
                     }
+                    phaseTimer.logAndReset(log, simulationTime);
+                }
+                if(asyncWriter!=null){
+                    final MeasurementLog epochLog=log.getSubLog(simulationTime, simulationTime+1);
+                    asyncWriter.submit(new Runnable(){
+                        public void run(){
+                            writeMeasurements(epochLog, simulationTime, linkFrames, nodeFrames);
+                        }
+                    });
                 }
-                getMeasurementDumper().measurementEpochEnded(log, simulationTime);
+                else
+                    writeMeasurements(log, simulationTime, linkFrames, nodeFrames);
                 log.shrink(simulationTime, simulationTime+1);
+                evictTemporalMetrics(simulationTime);
+                phaseTimer.stop(Phase.MEASUREMENT, start);
             }
         });
     }
     
     /**
-     * Override to log more link metrics.
+     * Logs the summaries and per element values of the frames and dumps the
+     * log. Runs on the measurement writer thread if asynchronous measurements
+     * are enabled, the log and the frames are then copies of the epoch.
+     * @param log
+     * @param simulationTime
+     * @param linkFrames
+     * @param nodeFrames 
+     */
+    private void writeMeasurements(MeasurementLog log, int simulationTime, List<MetricFrame> linkFrames, List<MetricFrame> nodeFrames){
+        if(simulationTime>=1){
+            if(binaryLogWriter!=null)
+                binaryLogWriter.beginEpoch(simulationTime);
+            for(MetricFrame linkFrame:linkFrames)
+                logFrame(log, simulationTime, linkFrame);
+            for(MetricFrame nodeFrame:nodeFrames)
+                logFrame(log, simulationTime, nodeFrame);
+            if(binaryLogWriter!=null){
+                try{
+                    binaryLogWriter.endEpoch();
+                }
+                catch(IOException ex){
+                    logger.error("Could not write binary log of time step " + simulationTime, ex);
+                }
+            }
+        }
+        dump(log, simulationTime);
+    }
+    
+    /**
+     * Dumps the log to the peer log file and adds the dumped bytes to its
+     * epoch index.
+     * @param log
+     * @param simulationTime 
+     */
+    private void dump(MeasurementLog log, int simulationTime){
+        getMeasurementDumper().measurementEpochEnded(log, simulationTime);
+        if(epochIndexWriter!=null){
+            try{
+                epochIndexWriter.epochDumped(simulationTime);
+            }
+            catch(IOException ex){
+                logger.error("Could not index time step " + simulationTime, ex);
+            }
+        }
+    }
+    
+    /**
+     * Dumps the measurements to the file, with an epoch index next to it so
+     * that replayers can load a range of time steps without reading the
+     * whole file.
+     * @param peerLogFile 
+     */
+    protected void setMeasurementLogFile(String peerLogFile){
+        setMeasurementDumper(new MeasurementFileDumper(peerLogFile));
+        epochIndexWriter=new EpochIndexWriter(peerLogFile);
+    }
+    
+    /**
+     * Dumps the entries of the time step, on the measurement writer thread if
+     * asynchronous measurements are enabled. For subclasses which log in
+     * their own measurement listener.
+     * @param log
+     * @param simulationTime 
+     */
+    protected void dumpMeasurements(MeasurementLog log, final int simulationTime){
+        if(asyncWriter!=null){
+            final MeasurementLog epochLog=log.getSubLog(simulationTime, simulationTime+1);
+            asyncWriter.submit(new Runnable(){
+                public void run(){
+                    dump(epochLog, simulationTime);
+                }
+            });
+        }
+        else
+            dump(log, simulationTime);
+    }
+    
+    private void logFrame(MeasurementLog log, int simulationTime, MetricFrame frame){
+        for(MetricKey metric:frame.getKeys()){
+            if(metric.getMetric()!=null)
+                logSummary(log, simulationTime, frame.getIteration(), frame, metric.getMetric());
+            if(logElementMetrics)
+                logColumn(log, simulationTime, frame.getIteration(), frame, metric);
+        }
+    }
+    
+    /**
+     * Drops link, node and system metrics of time steps which fell out of the
+     * retention window and spills them to disk if a spill file is set. The
+     * current time step is always kept.
+     * @param simulationTime the time step that was just dumped
+     */
+    public void evictTemporalMetrics(int simulationTime){
+        if(retainedTimeSteps==RETAIN_ALL_TIME_STEPS)
+            return;
+        final int oldestRetained=simulationTime-retainedTimeSteps+1;
+        List<MetricFrame> evictedLinks=getLinkMetricStore().evictBefore(oldestRetained);
+        List<MetricFrame> evictedNodes=getNodeMetricStore().evictBefore(oldestRetained);
+        getSystemMetricStore().evictBefore(oldestRetained);
+        if(metricSpillFile!=null){
+            try{
+                metricSpillFile.write(MetricSpillFile.LINKS, getLinkMetricStore(), evictedLinks);
+                metricSpillFile.write(MetricSpillFile.NODES, getNodeMetricStore(), evictedNodes);
+            }
+            catch(IOException ex){
+                logger.error("Could not spill evicted metrics", ex);
+            }
+        }
+    }
+    
+    /**
+     * @return the number of time steps kept in memory
+     */
+    public int getRetainedTimeSteps() {
+        return retainedTimeSteps;
+    }
+
+    /**
+     * Sets how many time steps of metrics are kept in memory, older ones are
+     * evicted after each measurement epoch. 1 evicts a time step as soon as
+     * it is dumped, RETAIN_ALL_TIME_STEPS disables eviction.
+     * @param retainedTimeSteps 
+     */
+    public void setRetainedTimeSteps(int retainedTimeSteps) {
+        this.retainedTimeSteps=retainedTimeSteps;
+    }
+    
+    /**
+     * Evicted link and node metrics are appended to this file, load them
+     * with MetricSpillFile.read.
+     * @param fileName or null to drop evicted metrics
+     */
+    public void setMetricSpillFile(String fileName) {
+        this.metricSpillFile=(fileName==null) ? null : new MetricSpillFile(fileName);
+    }
+    
+    /**
+     * Logs one value per sampled element of the frame which has a value of
+     * the metric. Metrics without a Metrics constant are tagged with their
+     * name.
+     * @param log
+     * @param simulationTime
+     * @param iteration
+     * @param frame
+     * @param metric 
+     */
+    private void logColumn(MeasurementLog log, int simulationTime, Integer iteration, MetricFrame frame, MetricKey metric){
+        double[] column=frame.values(metric);
+        if(column==null){
+            logger.debug(metric + " not calculated at time step " + simulationTime + ", iteration " + iteration);
+            return;
+        }
+        if(binaryLogWriter!=null){
+            try{
+                binaryLogWriter.column(column, column.length, iteration, metric.getTag());
+            }
+            catch(IOException ex){
+                logger.error("Could not write " + metric + " to binary log", ex);
+            }
+            return;
+        }
+        for(int i=0; i<column.length; i++)
+            log.log(simulationTime, iteration, metric.getTag(), column[i]);
+    }
+    
+    /**
+     * Logs count, sum, average, maximum and minimum of the metric over all
+     * elements of the frame as system level entries tagged with the iteration
+     * and an AggregateTag.
+     * @param log
+     * @param simulationTime
+     * @param iteration
+     * @param frame
+     * @param metric 
+     */
+    private void logSummary(MeasurementLog log, int simulationTime, Integer iteration, MetricFrame frame, Metrics metric){
+        MetricAggregate aggregate=frame.aggregate(metric);
+        if(aggregate==null)
+            return;
+        for(Aggregates type:Aggregates.values())
+            log.log(simulationTime, iteration, AggregateTag.of(metric, type), aggregate.get(type));
+    }
+    
+    /**
+     * @return true if one entry per link and node is logged next to the
+     * summaries
+     */
+    public boolean isLogElementMetrics() {
+        return logElementMetrics;
+    }
+
+    /**
+     * BenchmarkLogReplayer only needs the summaries, switching off the per
+     * element entries makes the logs much smaller.
+     * @param logElementMetrics 
+     */
+    public void setLogElementMetrics(boolean logElementMetrics) {
+        this.logElementMetrics=logElementMetrics;
+    }
+    
+    /**
+     * @return the format of the per link and per node values
+     */
+    public MeasurementFormat getMeasurementFormat() {
+        return measurementFormat;
+    }
+
+    /**
+     * With BINARY the per link and per node values are written as primitive
+     * columns to a binary log next to the serialized peer log, which then
+     * only keeps summaries, system metrics and subclass entries. Has to be set
+     * before the measurements are scheduled.
+     * @param measurementFormat 
+     */
+    public void setMeasurementFormat(MeasurementFormat measurementFormat) {
+        this.measurementFormat=measurementFormat;
+    }
+    
+    /**
+     * @return the registry deciding which metrics are collected
+     */
+    public MetricRegistry getMetricRegistry() {
+        return metricRegistry;
+    }
+
+    /**
+     * Enables exactly the metrics of the flow metric collector which are
+     * enabled in the registry and sets the link and node samplers, replacing
+     * the selection of the previous registry. Retention, element logging,
+     * format and writer settings are left as they are.
+     * @param metricRegistry 
+     */
+    public void setMetricRegistry(MetricRegistry metricRegistry) {
+        this.metricRegistry=metricRegistry;
+        for(Metrics metric:Metrics.values()){
+            if(metricRegistry.isEnabled(metric))
+                this.flowMetricCollector.enable(metric);
+            else
+                this.flowMetricCollector.disable(metric);
+        }
+        this.linkMetricStore.setSampler(metricRegistry.createLinkSampler());
+        this.nodeMetricStore.setSampler(metricRegistry.createNodeSampler());
+    }
+    
+    /**
+     * @return capacity of the measurement writer queue, 0 if measurements are
+     * written on the simulation thread
+     */
+    public int getAsyncQueueCapacity() {
+        return asyncQueueCapacity;
+    }
+
+    /**
+     * Writes measurements on a background thread. Each time step is handed
+     * over as a copy, the simulation waits if more than the given number of
+     * time steps are still queued. Has to be set before the measurements are
+     * scheduled. The queued time steps are written when the peer stops.
+     * @param asyncQueueCapacity or 0 to write on the simulation thread
+     */
+    public void setAsyncQueueCapacity(int asyncQueueCapacity) {
+        this.asyncQueueCapacity=asyncQueueCapacity;
+    }
+    
+    /**
+     * Writes all queued measurements before the peer stops.
+     */
+    @Override
+    public void stop(){
+        if(asyncWriter!=null)
+            asyncWriter.close();
+        if(binaryLogWriter!=null){
+            try{
+                binaryLogWriter.close();
+            }
+            catch(IOException ex){
+                logger.error("Could not close binary log", ex);
+            }
+        }
+        if(epochIndexWriter!=null){
+            try{
+                epochIndexWriter.close();
+            }
+            catch(IOException ex){
+                logger.error("Could not close epoch index", ex);
+            }
+        }
+        super.stop();
+    }
+    
+    /**
+     * Override to log more link metrics. Called once per sampled link with a
+     * read-only view of its metrics. Metrics without a Metrics constant are
+     * in getLinkMetricStore().
      * @param log
      * @param simulationTime
      * @param iteration
@@ -271,11 +669,12 @@ public class BenchmarkSimulationAgent extends SimulationAgent{
      */
     public void logLinkMetrics(MeasurementLog log, int simulationTime, Integer iteration, HashMap<Metrics,Object> linkMetrics){
         //log.log(simulationTime, iteration, Metrics.TOTAL_LINES, ((Double)linkMetrics.get(Metrics.TOTAL_LINES)));
-
     }
     
     /**
-     * Override to log more node metrics.
+     * Override to log more node metrics. Called once per sampled node with a
+     * read-only view of its metrics. Metrics without a Metrics constant are
+     * in getNodeMetricStore().
      * @param log
      * @param simulationTime
      * @param iteration
@@ -290,7 +689,7 @@ public class BenchmarkSimulationAgent extends SimulationAgent{
      * @param log
      * @param simulationTime
      * @param iteration
-     * @param sysMetrics 
+     * @param sysMetrics read-only view of the system metrics
      */
     public void logSystemMetrics(MeasurementLog log, int simulationTime, Integer iteration, HashMap<Metrics,Object> sysMetrics) {
         //log.log(simulationTime, iteration, Metrics.TOT_SIMU_TIME, ((Double)sysMetrics.get(Metrics.TOT_SIMU_TIME)));
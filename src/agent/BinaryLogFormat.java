@@ -0,0 +1,133 @@
+/*
+ * Copyright (C) 2015 SFINA Team
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package agent;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Binary measurement log written by BinaryLogWriter and read by
+ * replayer.BinaryLogReader. All numbers are big endian.
+ * 
+ * Data file (.bin):
+ * - header: MAGIC, VERSION (short)
+ * - one segment per epoch: epoch, body length, body
+ * - body: new tag count, new tags, column count, columns
+ * - tag: type (byte), payload; tags get consecutive ids in order of appearance
+ *   and are only written the first time they are used. Long tags, e.g.
+ *   packed ContingencyMetric tags, exist since version 2.
+ * - column: tag count (byte), tag ids, value count, values (double)
+ * 
+ * Index file (.bin.idx): one record per segment with epoch, segment offset and
+ * segment length.
+ */
+public final class BinaryLogFormat {
+
+    public static final int MAGIC = 0x53464D4C; // SFML
+    public static final short VERSION = 2;
+    public static final int HEADER_LENGTH = 6;
+    public static final int SEGMENT_HEADER_LENGTH = 8;
+    public static final int INDEX_RECORD_LENGTH = 16;
+
+    public static final String FILE_EXTENSION = ".bin";
+    public static final String INDEX_EXTENSION = ".idx";
+
+    public static final byte INTEGER_TAG = 0;
+    public static final byte STRING_TAG = 1;
+    public static final byte ENUM_TAG = 2;
+    public static final byte AGGREGATE_TAG = 3;
+    public static final byte LONG_TAG = 4;
+
+    private BinaryLogFormat() {
+    }
+
+    /**
+     * @param tag
+     * @return true if the tag can be written to a binary log
+     */
+    public static boolean isSupported(Object tag) {
+        return tag instanceof Integer || tag instanceof Long || tag instanceof String || tag instanceof Enum || tag instanceof AggregateTag;
+    }
+
+    static void writeTag(DataOutput out, Object tag) throws IOException {
+        if (tag instanceof Integer) {
+            out.writeByte(INTEGER_TAG);
+            out.writeInt((Integer) tag);
+        } else if (tag instanceof Long) {
+            out.writeByte(LONG_TAG);
+            out.writeLong((Long) tag);
+        } else if (tag instanceof String) {
+            out.writeByte(STRING_TAG);
+            out.writeUTF((String) tag);
+        } else if (tag instanceof Enum) {
+            out.writeByte(ENUM_TAG);
+            out.writeUTF(((Enum) tag).getDeclaringClass().getName());
+            out.writeUTF(((Enum) tag).name());
+        } else if (tag instanceof AggregateTag) {
+            out.writeByte(AGGREGATE_TAG);
+            out.writeUTF(((AggregateTag) tag).getMetric().name());
+            out.writeUTF(((AggregateTag) tag).getAggregate().name());
+        } else {
+            throw new IllegalArgumentException("Tag type not supported by the binary log: " + tag.getClass().getName());
+        }
+    }
+
+    /**
+     * Reads a tag at the current position of the buffer.
+     *
+     * @param buffer
+     * @return the tag
+     * @throws IOException if the tag can't be decoded
+     */
+    public static Object readTag(ByteBuffer buffer) throws IOException {
+        byte type = buffer.get();
+        switch (type) {
+            case INTEGER_TAG:
+                return buffer.getInt();
+            case LONG_TAG:
+                return buffer.getLong();
+            case STRING_TAG:
+                return readUTF(buffer);
+            case ENUM_TAG:
+                String className = readUTF(buffer);
+                String name = readUTF(buffer);
+                try {
+                    return Enum.valueOf(Class.forName(className).asSubclass(Enum.class), name);
+                } catch (ClassNotFoundException | IllegalArgumentException ex) {
+                    throw new IOException("Unknown enum tag " + className + "." + name, ex);
+                }
+            case AGGREGATE_TAG:
+                return AggregateTag.of(Metrics.valueOf(readUTF(buffer)), Aggregates.valueOf(readUTF(buffer)));
+            default:
+                throw new IOException("Unknown tag type " + type);
+        }
+    }
+
+    /**
+     * Reads a string written by DataOutput.writeUTF. Tags are plain ASCII in
+     * practice, for which modified UTF-8 and UTF-8 are identical.
+     */
+    private static String readUTF(ByteBuffer buffer) {
+        int length = buffer.getShort() & 0xFFFF;
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
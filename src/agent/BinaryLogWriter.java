@@ -0,0 +1,188 @@
+/*
+ * Copyright (C) 2015 SFINA Team
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package agent;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * Writes measurement values in the BinaryLogFormat. Values are collected per
+ * epoch and written as one segment by endEpoch():
+ * 
+ * writer.beginEpoch(epoch);
+ * writer.column(values, size, iteration, Metrics.LINK_FLOW);
+ * writer.endEpoch();
+ */
+public class BinaryLogWriter {
+
+    private final String fileName;
+    private final HashMap<Object, Integer> tagIds;
+    private final ArrayList<Object> epochTags;
+    private final ByteArrayOutputStream newTags;
+    private final DataOutputStream newTagsOut;
+    private final ByteArrayOutputStream columns;
+    private final DataOutputStream columnsOut;
+    private DataOutputStream out;
+    private DataOutputStream indexOut;
+    private long offset;
+    private int epoch;
+    private int newTagCount;
+    private int columnCount;
+    private boolean inEpoch;
+
+    public BinaryLogWriter(String fileName) {
+        this.fileName = fileName;
+        this.tagIds = new HashMap<>();
+        this.epochTags = new ArrayList<>();
+        this.newTags = new ByteArrayOutputStream();
+        this.newTagsOut = new DataOutputStream(newTags);
+        this.columns = new ByteArrayOutputStream();
+        this.columnsOut = new DataOutputStream(columns);
+    }
+
+    /**
+     * Starts collecting the values of an epoch. An epoch that was begun but
+     * not ended is discarded.
+     *
+     * @param epoch
+     */
+    public void beginEpoch(int epoch) {
+        if (inEpoch) {
+            for (Object tag : epochTags) {
+                tagIds.remove(tag);
+            }
+        }
+        this.epochTags.clear();
+        this.epoch = epoch;
+        this.newTagCount = 0;
+        this.columnCount = 0;
+        this.newTags.reset();
+        this.columns.reset();
+        this.inEpoch = true;
+    }
+
+    /**
+     * Adds the first length values of the array as one column.
+     *
+     * @param values
+     * @param length
+     * @param tags one or two tags, like MeasurementLog.log
+     * @throws IOException
+     */
+    public void column(double[] values, int length, Object... tags) throws IOException {
+        if (!inEpoch) {
+            throw new IllegalStateException("No epoch begun");
+        }
+        if (tags.length < 1 || tags.length > 2) {
+            throw new IllegalArgumentException("A column has one or two tags");
+        }
+        int[] ids = new int[tags.length];
+        for (int i = 0; i < tags.length; i++) {
+            ids[i] = idOf(tags[i]);
+        }
+        columnsOut.writeByte(tags.length);
+        for (int id : ids) {
+            columnsOut.writeInt(id);
+        }
+        columnsOut.writeInt(length);
+        for (int i = 0; i < length; i++) {
+            columnsOut.writeDouble(values[i]);
+        }
+        columnCount++;
+    }
+
+    /**
+     * Adds a single value.
+     *
+     * @param value
+     * @param tags one or two tags, like MeasurementLog.log
+     * @throws IOException
+     */
+    public void value(double value, Object... tags) throws IOException {
+        column(new double[]{value}, 1, tags);
+    }
+
+    /**
+     * Writes the segment of the current epoch and its index record.
+     *
+     * @throws IOException
+     */
+    public void endEpoch() throws IOException {
+        if (!inEpoch) {
+            throw new IllegalStateException("No epoch begun");
+        }
+        inEpoch = false;
+        open();
+        int bodyLength = 4 + newTags.size() + 4 + columns.size();
+        out.writeInt(epoch);
+        out.writeInt(bodyLength);
+        out.writeInt(newTagCount);
+        newTags.writeTo(out);
+        out.writeInt(columnCount);
+        columns.writeTo(out);
+        out.flush();
+
+        indexOut.writeInt(epoch);
+        indexOut.writeLong(offset);
+        indexOut.writeInt(BinaryLogFormat.SEGMENT_HEADER_LENGTH + bodyLength);
+        indexOut.flush();
+        offset += BinaryLogFormat.SEGMENT_HEADER_LENGTH + bodyLength;
+    }
+
+    public void close() throws IOException {
+        if (out != null) {
+            out.close();
+            indexOut.close();
+            out = null;
+            indexOut = null;
+        }
+    }
+
+    private int idOf(Object tag) throws IOException {
+        Integer id = tagIds.get(tag);
+        if (id == null) {
+            BinaryLogFormat.writeTag(newTagsOut, tag);
+            id = tagIds.size();
+            tagIds.put(tag, id);
+            epochTags.add(tag);
+            newTagCount++;
+        }
+        return id;
+    }
+
+    private void open() throws IOException {
+        if (out != null) {
+            return;
+        }
+        File file = new File(fileName);
+        if (file.getParentFile() != null) {
+            file.getParentFile().mkdirs();
+        }
+        out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, false), 1 << 16));
+        indexOut = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(fileName + BinaryLogFormat.INDEX_EXTENSION, false)));
+        out.writeInt(BinaryLogFormat.MAGIC);
+        out.writeShort(BinaryLogFormat.VERSION);
+        offset = BinaryLogFormat.HEADER_LENGTH;
+    }
+}
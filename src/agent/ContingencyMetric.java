@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2015 SFINA Team
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package agent;
+
+/**
+ * Values logged per contingency by paperSimulations.BenchmarkEvolution. The
+ * log tag of a value packs the metric, the contingency and the iteration into
+ * one long instead of a string per contingency:
+ * 
+ * bits 63-56: ordinal of the metric + 1
+ * bits 55-28: contingency
+ * bits 27-0:  iteration
+ * 
+ * Long tags are only used for these values, so they don't collide with the
+ * other tags of a measurement log.
+ */
+public enum ContingencyMetric {
+    UTILIZATION,
+    POWER,
+    POWER_INCREASE,
+    LINK,
+    LINK_REMOVED,
+    SPECTRAL_RADIUS;
+
+    /**
+     * Iteration of values which cover the whole time step.
+     */
+    public static final int TIME_STEP = 0;
+
+    private static final ContingencyMetric[] METRICS = values();
+
+    private static final int INDEX_BITS = 28;
+    private static final long INDEX_MASK = (1L << INDEX_BITS) - 1;
+    private static final int METRIC_SHIFT = 2 * INDEX_BITS;
+
+    /**
+     * @param contingency
+     * @param iteration
+     * @return the packed tag
+     */
+    public long pack(int contingency, int iteration) {
+        if (contingency < 0 || contingency > INDEX_MASK || iteration < 0 || iteration > INDEX_MASK) {
+            throw new IllegalArgumentException("Contingency or iteration out of range: " + contingency + ", " + iteration);
+        }
+        return ((long) (ordinal() + 1) << METRIC_SHIFT) | ((long) contingency << INDEX_BITS) | iteration;
+    }
+
+    /**
+     * @param contingency
+     * @param iteration
+     * @return the packed tag boxed for the measurement log
+     */
+    public Long tag(int contingency, int iteration) {
+        return pack(contingency, iteration);
+    }
+
+    /**
+     * @param tag
+     * @return true if the tag is a packed contingency tag
+     */
+    public static boolean isTag(Object tag) {
+        if (!(tag instanceof Long)) {
+            return false;
+        }
+        long metric = ((Long) tag) >>> METRIC_SHIFT;
+        return metric >= 1 && metric <= METRICS.length;
+    }
+
+    /**
+     * @param tag packed tag
+     * @return the metric of the tag
+     */
+    public static ContingencyMetric metricOf(long tag) {
+        return METRICS[(int) (tag >>> METRIC_SHIFT) - 1];
+    }
+
+    public static int contingencyOf(long tag) {
+        return (int) ((tag >>> INDEX_BITS) & INDEX_MASK);
+    }
+
+    public static int iterationOf(long tag) {
+        return (int) (tag & INDEX_MASK);
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright (C) 2015 SFINA Team
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package agent;
+
+/**
+ * Metric with double values. Subclasses of BenchmarkSimulationAgent declare
+ * their own metrics as constants, e.g.
+ * {@code static final DoubleMetric SPECTRAL_RADIUS = DoubleMetric.named("SPECTRAL_RADIUS");}
+ */
+public final class DoubleMetric extends MetricKey {
+
+    private static final Factory<DoubleMetric> FACTORY = new Factory<DoubleMetric>() {
+        @Override
+        public DoubleMetric create(String name, Metrics metric) {
+            return new DoubleMetric(name, metric);
+        }
+    };
+
+    private DoubleMetric(String name, Metrics metric) {
+        super(name, metric);
+    }
+
+    /**
+     * @param metric
+     * @return the key of the enum constant
+     * @throws IllegalArgumentException if the constant is an IntMetric
+     */
+    public static DoubleMetric of(Metrics metric) {
+        return MetricKey.of(metric, DoubleMetric.class, FACTORY);
+    }
+
+    /**
+     * Returns the key with the given name, registers it if needed.
+     *
+     * @param name
+     * @return the key
+     * @throws IllegalArgumentException if the name is taken by an IntMetric
+     */
+    public static DoubleMetric named(String name) {
+        return MetricKey.named(name, DoubleMetric.class, FACTORY);
+    }
+}
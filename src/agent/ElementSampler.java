@@ -0,0 +1,155 @@
+/*
+ * Copyright (C) 2015 SFINA Team
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package agent;
+
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Random;
+
+/**
+ * Selects the links or nodes of a MetricStore whose metrics are collected.
+ * The sample is extended when new elements are registered, elements keep
+ * their ordinal so the same elements are followed over all time steps.
+ */
+public class ElementSampler {
+
+    public enum Mode {
+        ALL,
+        EVERY_KTH,
+        RESERVOIR,
+        WATCH_LIST
+    }
+
+    private final Mode mode;
+    private final int interval;
+    private final int reservoirSize;
+    private final Random random;
+    private final HashSet<String> watchList;
+
+    private final BitSet sample;
+    private final int[] reservoir;
+    private int seen;
+    private BitSet published;
+
+    private ElementSampler(Mode mode, int interval, int reservoirSize, long seed, Collection<String> watchList) {
+        this.mode = mode;
+        this.interval = interval;
+        this.reservoirSize = reservoirSize;
+        this.random = (seed == 0) ? new Random() : new Random(seed);
+        this.watchList = (watchList == null) ? new HashSet<String>() : new HashSet<>(watchList);
+        this.sample = new BitSet();
+        this.reservoir = new int[reservoirSize];
+        this.seen = 0;
+        this.published = null;
+    }
+
+    /**
+     * @return sampler which selects all elements
+     */
+    public static ElementSampler all() {
+        return new ElementSampler(Mode.ALL, 1, 0, 0, null);
+    }
+
+    /**
+     * @param interval
+     * @return sampler which selects every interval-th registered element
+     */
+    public static ElementSampler everyKth(int interval) {
+        if (interval < 1) {
+            throw new IllegalArgumentException("Sampling interval must be at least 1: " + interval);
+        }
+        return new ElementSampler(Mode.EVERY_KTH, interval, 0, 0, null);
+    }
+
+    /**
+     * @param size number of sampled elements
+     * @param seed seed of the random selection, 0 for a random seed
+     * @return sampler which selects a uniform random sample of the elements
+     */
+    public static ElementSampler reservoir(int size, long seed) {
+        if (size < 1) {
+            throw new IllegalArgumentException("Reservoir size must be at least 1: " + size);
+        }
+        return new ElementSampler(Mode.RESERVOIR, 1, size, seed, null);
+    }
+
+    /**
+     * @param indices link or node indices
+     * @return sampler which selects the listed elements
+     */
+    public static ElementSampler watchList(Collection<String> indices) {
+        return new ElementSampler(Mode.WATCH_LIST, 1, 0, 0, indices);
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    /**
+     * Adds the elements registered since the last call to the sample.
+     *
+     * @param store
+     * @return the sampled ordinals, null if all elements are sampled. The
+     * returned set is not modified later on.
+     */
+    public BitSet sample(MetricStore store) {
+        if (mode == Mode.ALL) {
+            return null;
+        }
+        boolean changed = false;
+        for (; seen < store.size(); seen++) {
+            changed |= offer(seen, store.getIndex(seen));
+        }
+        if (changed || published == null) {
+            published = (BitSet) sample.clone();
+        }
+        return published;
+    }
+
+    private boolean offer(int ordinal, String index) {
+        switch (mode) {
+            case EVERY_KTH:
+                if (ordinal % interval != 0) {
+                    return false;
+                }
+                break;
+            case WATCH_LIST:
+                if (!watchList.contains(index)) {
+                    return false;
+                }
+                break;
+            case RESERVOIR:
+                if (ordinal < reservoirSize) {
+                    reservoir[ordinal] = ordinal;
+                } else {
+                    int slot = random.nextInt(ordinal + 1);
+                    if (slot >= reservoirSize) {
+                        return false;
+                    }
+                    sample.clear(reservoir[slot]);
+                    reservoir[slot] = ordinal;
+                }
+                break;
+            default:
+                break;
+        }
+        sample.set(ordinal);
+        return true;
+    }
+}
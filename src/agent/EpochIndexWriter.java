@@ -0,0 +1,82 @@
+/*
+ * Copyright (C) 2015 SFINA Team
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package agent;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * Writes the epoch index of a serialized peer log next to it. After each dump
+ * the growth of the log file is recorded as one record with epoch, offset and
+ * length, the same layout as the index of a binary log. The replayers use it
+ * to seek to the first dumped chunk of the epochs they load.
+ *
+ * The index is only a hint, the log file itself is unchanged and can still be
+ * read without it.
+ */
+public class EpochIndexWriter {
+
+    private final File logFile;
+    private DataOutputStream out;
+    private long offset;
+
+    /**
+     * @param logFileName the serialized log written by the measurement dumper
+     */
+    public EpochIndexWriter(String logFileName) {
+        this.logFile = new File(logFileName);
+        this.offset = 0;
+        new File(logFileName + BinaryLogFormat.INDEX_EXTENSION).delete();
+    }
+
+    /**
+     * Records the bytes appended to the log file since the last call. Call
+     * right after the dumper wrote the epoch.
+     *
+     * @param epoch
+     * @throws IOException
+     */
+    public void epochDumped(int epoch) throws IOException {
+        long length = logFile.length();
+        if (length <= offset) {
+            return;
+        }
+        open();
+        out.writeInt(epoch);
+        out.writeLong(offset);
+        out.writeInt((int) (length - offset));
+        out.flush();
+        offset = length;
+    }
+
+    public void close() throws IOException {
+        if (out != null) {
+            out.close();
+            out = null;
+        }
+    }
+
+    private void open() throws IOException {
+        if (out == null) {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(logFile.getPath() + BinaryLogFormat.INDEX_EXTENSION, false)));
+        }
+    }
+}
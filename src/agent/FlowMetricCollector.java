@@ -0,0 +1,122 @@
+/*
+ * Copyright (C) 2015 SFINA Team
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package agent;
+
+import java.util.Collections;
+import java.util.EnumSet;
+import network.Link;
+import network.Node;
+
+/**
+ * Domain independent link and node metrics: activation status, flow,
+ * utilization, total number and overload status. Each of them can be
+ * disabled.
+ */
+public class FlowMetricCollector implements MetricCollector {
+
+    private static final EnumSet<Metrics> LINK_METRICS = EnumSet.of(
+            Metrics.ACTIVATED_LINKS, Metrics.LINK_FLOW, Metrics.LINK_UTILIZATION, Metrics.TOTAL_LINKS, Metrics.OVERLOADED_LINKS);
+    private static final EnumSet<Metrics> NODE_METRICS = EnumSet.of(
+            Metrics.ACTIVATED_NODES, Metrics.NODE_FLOW, Metrics.NODE_UTILIZATION, Metrics.TOTAL_NODES, Metrics.OVERLOADED_NODES);
+
+    private final EnumSet<Metrics> enabledMetrics;
+
+    public FlowMetricCollector() {
+        this.enabledMetrics = EnumSet.copyOf(LINK_METRICS);
+        this.enabledMetrics.addAll(NODE_METRICS);
+    }
+
+    @Override
+    public boolean collectsLinks() {
+        return !Collections.disjoint(enabledMetrics, LINK_METRICS);
+    }
+
+    @Override
+    public boolean collectsNodes() {
+        return !Collections.disjoint(enabledMetrics, NODE_METRICS);
+    }
+
+    @Override
+    public void collectLink(Link link, int ordinal, MetricFrame frame) {
+        boolean activated = link.isActivated();
+        double flow = link.getFlow();
+        double capacity = link.getCapacity();
+        if (enabledMetrics.contains(Metrics.ACTIVATED_LINKS)) {
+            frame.set(Metrics.ACTIVATED_LINKS, ordinal, activated ? 1.0 : 0.0);
+        }
+        if (enabledMetrics.contains(Metrics.LINK_FLOW)) {
+            frame.set(Metrics.LINK_FLOW, ordinal, activated ? flow : 0.0);
+        }
+        if (enabledMetrics.contains(Metrics.LINK_UTILIZATION)) {
+            frame.set(Metrics.LINK_UTILIZATION, ordinal, activated ? flow / capacity : 1.0);
+        }
+        if (enabledMetrics.contains(Metrics.TOTAL_LINKS)) {
+            frame.set(Metrics.TOTAL_LINKS, ordinal, 1.0);
+        }
+        if (enabledMetrics.contains(Metrics.OVERLOADED_LINKS)) {
+            frame.set(Metrics.OVERLOADED_LINKS, ordinal, (Math.abs(flow) > Math.abs(capacity)) ? 1.0 : 0.0);
+        }
+    }
+
+    @Override
+    public void collectNode(Node node, int ordinal, MetricFrame frame) {
+        boolean activated = node.isActivated();
+        double flow = node.getFlow();
+        double capacity = node.getCapacity();
+        if (enabledMetrics.contains(Metrics.ACTIVATED_NODES)) {
+            frame.set(Metrics.ACTIVATED_NODES, ordinal, activated ? 1.0 : 0.0);
+        }
+        if (enabledMetrics.contains(Metrics.NODE_FLOW)) {
+            frame.set(Metrics.NODE_FLOW, ordinal, activated ? flow : 0.0);
+        }
+        if (enabledMetrics.contains(Metrics.NODE_UTILIZATION)) {
+            frame.set(Metrics.NODE_UTILIZATION, ordinal, activated ? flow / capacity : 1.0);
+        }
+        if (enabledMetrics.contains(Metrics.TOTAL_NODES)) {
+            frame.set(Metrics.TOTAL_NODES, ordinal, 1.0);
+        }
+        if (enabledMetrics.contains(Metrics.OVERLOADED_NODES)) {
+            frame.set(Metrics.OVERLOADED_NODES, ordinal, (Math.abs(flow) > Math.abs(capacity)) ? 1.0 : 0.0);
+        }
+    }
+
+    /**
+     * @param metric to be skipped from now on
+     */
+    public void disable(Metrics metric) {
+        enabledMetrics.remove(metric);
+    }
+
+    /**
+     * @param metric to be calculated from now on, ignored if the collector
+     * doesn't calculate it
+     */
+    public void enable(Metrics metric) {
+        if (LINK_METRICS.contains(metric) || NODE_METRICS.contains(metric)) {
+            enabledMetrics.add(metric);
+        }
+    }
+
+    /**
+     * @param metric
+     * @return true if the metric is calculated
+     */
+    public boolean isEnabled(Metrics metric) {
+        return enabledMetrics.contains(metric);
+    }
+}
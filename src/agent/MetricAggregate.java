@@ -0,0 +1,110 @@
+/*
+ * Copyright (C) 2015 SFINA Team
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package agent;
+
+import java.io.Serializable;
+
+/**
+ * Running count, sum, minimum and maximum of a metric. Aggregates of
+ * different elements or peers are combined with merge.
+ */
+public class MetricAggregate implements Serializable {
+
+    private int count;
+    private double sum;
+    private double min;
+    private double max;
+
+    public MetricAggregate() {
+        this.count = 0;
+        this.sum = 0.0;
+        this.min = Double.POSITIVE_INFINITY;
+        this.max = Double.NEGATIVE_INFINITY;
+    }
+
+    public MetricAggregate(int count, double sum, double min, double max) {
+        this.count = count;
+        this.sum = sum;
+        this.min = min;
+        this.max = max;
+    }
+
+    public void add(double value) {
+        count++;
+        sum += value;
+        if (value < min) {
+            min = value;
+        }
+        if (value > max) {
+            max = value;
+        }
+    }
+
+    public void merge(MetricAggregate other) {
+        count += other.count;
+        sum += other.sum;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+    }
+
+    /**
+     * @param aggregate
+     * @return the value of the given aggregate
+     */
+    public double get(Aggregates aggregate) {
+        switch (aggregate) {
+            case SUM:
+                return sum;
+            case AVG:
+                return getAverage();
+            case MAX:
+                return getMax();
+            case MIN:
+                return getMin();
+            case COUNT:
+                return count;
+            default:
+                throw new IllegalArgumentException("Unknown aggregate " + aggregate);
+        }
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public double getSum() {
+        return sum;
+    }
+
+    public double getAverage() {
+        return (count == 0) ? Double.NaN : sum / count;
+    }
+
+    public double getMin() {
+        return (count == 0) ? Double.NaN : min;
+    }
+
+    public double getMax() {
+        return (count == 0) ? Double.NaN : max;
+    }
+
+    @Override
+    public String toString() {
+        return "count=" + count + ", sum=" + sum + ", min=" + min + ", max=" + max;
+    }
+}
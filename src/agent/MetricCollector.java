@@ -0,0 +1,57 @@
+/*
+ * Copyright (C) 2015 SFINA Team
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package agent;
+
+import network.Link;
+import network.Node;
+
+/**
+ * Calculates metrics of a single link or node. All registered collectors are
+ * called from the same pass over the network, see
+ * BenchmarkSimulationAgent.collectMetrics().
+ */
+public interface MetricCollector {
+
+    /**
+     * @param link
+     * @param ordinal ordinal of the link in the link frame
+     * @param frame link metrics of the current time step and iteration
+     */
+    public void collectLink(Link link, int ordinal, MetricFrame frame);
+
+    /**
+     * @param node
+     * @param ordinal ordinal of the node in the node frame
+     * @param frame node metrics of the current time step and iteration
+     */
+    public void collectNode(Node node, int ordinal, MetricFrame frame);
+
+    /**
+     * @return false to be skipped in the pass over the links
+     */
+    public default boolean collectsLinks() {
+        return true;
+    }
+
+    /**
+     * @return false to be skipped in the pass over the nodes
+     */
+    public default boolean collectsNodes() {
+        return true;
+    }
+}
@@ -0,0 +1,522 @@
+/*
+ * Copyright (C) 2015 SFINA Team
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package agent;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Metric values of all links or all nodes for one (time step, iteration).
+ * Each metric is one primitive column indexed by the dense element ordinal of
+ * the owning MetricStore, next to a bitmap of the elements which have a value.
+ * Columns are only allocated for metrics that are actually calculated. If the
+ * store samples its elements, values of elements outside the sample are
+ * neither aggregated nor visible in the map views.
+ */
+public class MetricFrame {
+
+    private final MetricStore store;
+    private final int simulationTime;
+    private final int iteration;
+    // Indexed by MetricKey id
+    private double[][] doubleColumns;
+    private int[][] intColumns;
+    private long[][] present;
+    private MetricAggregate[] aggregates;
+    private final BitSet sample;
+    private int size;
+
+    MetricFrame(MetricStore store, int simulationTime, int iteration, int size, BitSet sample) {
+        this.store = store;
+        this.simulationTime = simulationTime;
+        this.iteration = iteration;
+        int keys = MetricKey.count();
+        this.doubleColumns = new double[keys][];
+        this.intColumns = new int[keys][];
+        this.present = new long[keys][];
+        this.aggregates = new MetricAggregate[keys];
+        this.sample = sample;
+        this.size = size;
+    }
+
+    /**
+     * Sets the value of the metric for the element with the given ordinal.
+     *
+     * @param metric
+     * @param ordinal dense element ordinal as given by the MetricStore
+     * @param value
+     */
+    public void set(DoubleMetric metric, int ordinal, double value) {
+        int id = prepare(metric, ordinal);
+        if (doubleColumns[id] == null) {
+            doubleColumns[id] = new double[size];
+        }
+        doubleColumns[id][ordinal] = value;
+    }
+
+    /**
+     * Sets the value of the metric for the element with the given ordinal.
+     *
+     * @param metric
+     * @param ordinal dense element ordinal as given by the MetricStore
+     * @param value
+     */
+    public void set(IntMetric metric, int ordinal, int value) {
+        int id = prepare(metric, ordinal);
+        if (intColumns[id] == null) {
+            intColumns[id] = new int[size];
+        }
+        intColumns[id][ordinal] = value;
+    }
+
+    /**
+     * Shortcut for set(DoubleMetric.of(metric), ordinal, value).
+     *
+     * @param metric
+     * @param ordinal
+     * @param value
+     */
+    public void set(Metrics metric, int ordinal, double value) {
+        set(DoubleMetric.of(metric), ordinal, value);
+    }
+
+    private int prepare(MetricKey metric, int ordinal) {
+        if (ordinal >= size) {
+            grow(ordinal + 1);
+        }
+        int id = metric.getId();
+        if (id >= present.length) {
+            int keys = Math.max(id + 1, MetricKey.count());
+            doubleColumns = Arrays.copyOf(doubleColumns, keys);
+            intColumns = Arrays.copyOf(intColumns, keys);
+            present = Arrays.copyOf(present, keys);
+            aggregates = Arrays.copyOf(aggregates, keys);
+        }
+        if (present[id] == null) {
+            present[id] = new long[words(size)];
+        }
+        present[id][ordinal >>> 6] |= 1L << ordinal;
+        aggregates[id] = null;
+        return id;
+    }
+
+    private static int words(int size) {
+        return (size + 63) >>> 6;
+    }
+
+    /**
+     * @param metric
+     * @param ordinal
+     * @return true if the element has a value of the metric
+     */
+    public boolean isPresent(MetricKey metric, int ordinal) {
+        int id = metric.getId();
+        return id < present.length && present[id] != null && ordinal < size
+                && (present[id][ordinal >>> 6] & (1L << ordinal)) != 0;
+    }
+
+    /**
+     * @param metric
+     * @param ordinal
+     * @return the value, NaN if the element has no value
+     */
+    public double getDouble(DoubleMetric metric, int ordinal) {
+        return isPresent(metric, ordinal) ? doubleColumns[metric.getId()][ordinal] : Double.NaN;
+    }
+
+    /**
+     * @param metric
+     * @param ordinal
+     * @param missingValue
+     * @return the value, missingValue if the element has no value
+     */
+    public int getInt(IntMetric metric, int ordinal, int missingValue) {
+        return isPresent(metric, ordinal) ? intColumns[metric.getId()][ordinal] : missingValue;
+    }
+
+    /**
+     * @param metric
+     * @param ordinal
+     * @return the value as double, NaN if the metric was not calculated
+     */
+    public double get(Metrics metric, int ordinal) {
+        MetricKey key = MetricKey.of(metric);
+        if (key == null || !isPresent(key, ordinal)) {
+            return Double.NaN;
+        }
+        return valueOf(key.getId(), ordinal);
+    }
+
+    private double valueOf(int id, int ordinal) {
+        return (doubleColumns[id] != null) ? doubleColumns[id][ordinal] : intColumns[id][ordinal];
+    }
+
+    /**
+     * @param metric
+     * @return true if values of the metric were calculated in this frame
+     */
+    public boolean contains(MetricKey metric) {
+        int id = metric.getId();
+        return id < present.length && present[id] != null;
+    }
+
+    /**
+     * @param metric
+     * @return true if values of the metric were calculated in this frame
+     */
+    public boolean contains(Metrics metric) {
+        MetricKey key = MetricKey.of(metric);
+        return key != null && contains(key);
+    }
+
+    /**
+     * @return the keys of all calculated metrics ordered by id
+     */
+    public List<MetricKey> getKeys() {
+        ArrayList<MetricKey> keys = new ArrayList<>();
+        for (int id = 0; id < present.length; id++) {
+            if (present[id] != null) {
+                keys.add(MetricKey.get(id));
+            }
+        }
+        return keys;
+    }
+
+    /**
+     * Values of all sampled elements which have a value of the metric, in
+     * ordinal order. Returns the column itself if every element has a value,
+     * it must not be modified.
+     *
+     * @param metric
+     * @return the values or null if the metric was not calculated
+     */
+    public double[] values(MetricKey metric) {
+        if (!contains(metric)) {
+            return null;
+        }
+        int id = metric.getId();
+        long[] bits = present[id];
+        int count = 0;
+        for (int i = nextValue(bits, 0); i >= 0; i = nextValue(bits, i + 1)) {
+            count++;
+        }
+        if (count == size && doubleColumns[id] != null) {
+            return doubleColumns[id];
+        }
+        double[] values = new double[count];
+        int next = 0;
+        for (int i = nextValue(bits, 0); i >= 0; i = nextValue(bits, i + 1)) {
+            values[next++] = valueOf(id, i);
+        }
+        return values;
+    }
+
+    /**
+     * @param metric
+     * @return see values(MetricKey)
+     */
+    public double[] values(Metrics metric) {
+        MetricKey key = MetricKey.of(metric);
+        return (key == null) ? null : values(key);
+    }
+
+    private int nextValue(long[] bits, int from) {
+        for (int i = nextSampled(from); i >= 0; i = nextSampled(i + 1)) {
+            if ((bits[i >>> 6] & (1L << i)) != 0) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Aggregates the values of the metric over all sampled elements which
+     * have a value. The result is kept until a value of the metric changes.
+     *
+     * @param metric
+     * @return the aggregate or null if the metric was not calculated
+     */
+    public MetricAggregate aggregate(MetricKey metric) {
+        if (!contains(metric)) {
+            return null;
+        }
+        int id = metric.getId();
+        MetricAggregate aggregate = aggregates[id];
+        if (aggregate == null) {
+            aggregate = new MetricAggregate();
+            long[] bits = present[id];
+            for (int i = nextValue(bits, 0); i >= 0; i = nextValue(bits, i + 1)) {
+                aggregate.add(valueOf(id, i));
+            }
+            aggregates[id] = aggregate;
+        }
+        return aggregate;
+    }
+
+    /**
+     * @param metric
+     * @return see aggregate(MetricKey)
+     */
+    public MetricAggregate aggregate(Metrics metric) {
+        MetricKey key = MetricKey.of(metric);
+        return (key == null) ? null : aggregate(key);
+    }
+
+    /**
+     * @return the number of elements in this frame
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param ordinal
+     * @return true if the element belongs to the sample of this frame
+     */
+    public boolean isSampled(int ordinal) {
+        return ordinal < size && (sample == null || sample.get(ordinal));
+    }
+
+    /**
+     * @param from
+     * @return the first sampled ordinal at or after from, -1 if there is none
+     */
+    public int nextSampled(int from) {
+        int next = (sample == null) ? from : sample.nextSetBit(from);
+        return (next >= 0 && next < size) ? next : -1;
+    }
+
+    /**
+     * @return the number of sampled elements
+     */
+    public int getSampleSize() {
+        if (sample == null) {
+            return size;
+        }
+        return sample.get(0, size).cardinality();
+    }
+
+    public int getSimulationTime() {
+        return simulationTime;
+    }
+
+    public int getIteration() {
+        return iteration;
+    }
+
+    /**
+     * Copies the values and the element indices of this frame. The copy
+     * doesn't share state with the store and can be handed to another thread.
+     *
+     * @return detached copy of this frame
+     */
+    public MetricFrame snapshot() {
+        MetricStore detached = new MetricStore();
+        for (int i = 0; i < size; i++) {
+            detached.ordinalOf(store.getIndex(i));
+        }
+        MetricFrame copy = new MetricFrame(detached, simulationTime, iteration, size, sample);
+        copy.doubleColumns = copyOf(doubleColumns);
+        copy.intColumns = copyOf(intColumns);
+        copy.present = copyOf(present);
+        copy.aggregates = new MetricAggregate[present.length];
+        return copy;
+    }
+
+    private static double[][] copyOf(double[][] columns) {
+        double[][] copy = new double[columns.length][];
+        for (int i = 0; i < columns.length; i++) {
+            copy[i] = (columns[i] == null) ? null : columns[i].clone();
+        }
+        return copy;
+    }
+
+    private static int[][] copyOf(int[][] columns) {
+        int[][] copy = new int[columns.length][];
+        for (int i = 0; i < columns.length; i++) {
+            copy[i] = (columns[i] == null) ? null : columns[i].clone();
+        }
+        return copy;
+    }
+
+    private static long[][] copyOf(long[][] columns) {
+        long[][] copy = new long[columns.length][];
+        for (int i = 0; i < columns.length; i++) {
+            copy[i] = (columns[i] == null) ? null : columns[i].clone();
+        }
+        return copy;
+    }
+
+    private void grow(int newSize) {
+        for (int i = 0; i < present.length; i++) {
+            if (doubleColumns[i] != null) {
+                doubleColumns[i] = Arrays.copyOf(doubleColumns[i], newSize);
+            }
+            if (intColumns[i] != null) {
+                intColumns[i] = Arrays.copyOf(intColumns[i], newSize);
+            }
+            if (present[i] != null) {
+                present[i] = Arrays.copyOf(present[i], words(newSize));
+            }
+        }
+        Arrays.fill(aggregates, null);
+        size = newSize;
+    }
+
+    /**
+     * @return read-only view of the frame keyed by element index
+     */
+    public HashMap<String, HashMap<Metrics, Object>> asMap() {
+        return ReadOnlyHashMap.of(new AbstractMap<String, HashMap<Metrics, Object>>() {
+            @Override
+            public HashMap<Metrics, Object> get(Object index) {
+                int ordinal = store.getOrdinal(index);
+                return (ordinal < 0 || !isSampled(ordinal)) ? null : getElementView(ordinal);
+            }
+
+            @Override
+            public boolean containsKey(Object index) {
+                int ordinal = store.getOrdinal(index);
+                return ordinal >= 0 && isSampled(ordinal);
+            }
+
+            @Override
+            public int size() {
+                return getSampleSize();
+            }
+
+            @Override
+            public Set<Map.Entry<String, HashMap<Metrics, Object>>> entrySet() {
+                return new AbstractSet<Map.Entry<String, HashMap<Metrics, Object>>>() {
+                    @Override
+                    public Iterator<Map.Entry<String, HashMap<Metrics, Object>>> iterator() {
+                        return new Iterator<Map.Entry<String, HashMap<Metrics, Object>>>() {
+                            private int next = nextSampled(0);
+
+                            @Override
+                            public boolean hasNext() {
+                                return next >= 0;
+                            }
+
+                            @Override
+                            public Map.Entry<String, HashMap<Metrics, Object>> next() {
+                                if (!hasNext()) {
+                                    throw new NoSuchElementException();
+                                }
+                                int ordinal = next;
+                                next = nextSampled(next + 1);
+                                return new AbstractMap.SimpleImmutableEntry<>(store.getIndex(ordinal), getElementView(ordinal));
+                            }
+                        };
+                    }
+
+                    @Override
+                    public int size() {
+                        return getSampleSize();
+                    }
+                };
+            }
+        });
+    }
+
+    /**
+     * @param ordinal
+     * @return read-only view of all calculated metrics of one element which
+     * have a Metrics constant. Values are Double or Integer.
+     */
+    public HashMap<Metrics, Object> getElementView(final int ordinal) {
+        return ReadOnlyHashMap.of(new AbstractMap<Metrics, Object>() {
+            @Override
+            public Object get(Object metric) {
+                if (!(metric instanceof Metrics)) {
+                    return null;
+                }
+                MetricKey key = MetricKey.of((Metrics) metric);
+                return (key == null || !isPresent(key, ordinal)) ? null : box(key, ordinal);
+            }
+
+            @Override
+            public boolean containsKey(Object metric) {
+                if (!(metric instanceof Metrics)) {
+                    return false;
+                }
+                MetricKey key = MetricKey.of((Metrics) metric);
+                return key != null && isPresent(key, ordinal);
+            }
+
+            @Override
+            public Set<Map.Entry<Metrics, Object>> entrySet() {
+                return new AbstractSet<Map.Entry<Metrics, Object>>() {
+                    @Override
+                    public Iterator<Map.Entry<Metrics, Object>> iterator() {
+                        return new Iterator<Map.Entry<Metrics, Object>>() {
+                            private int next = advance(0);
+
+                            private int advance(int from) {
+                                while (from < present.length && !(isPresent(MetricKey.get(from), ordinal) && MetricKey.get(from).getMetric() != null)) {
+                                    from++;
+                                }
+                                return from;
+                            }
+
+                            @Override
+                            public boolean hasNext() {
+                                return next < present.length;
+                            }
+
+                            @Override
+                            public Map.Entry<Metrics, Object> next() {
+                                if (!hasNext()) {
+                                    throw new NoSuchElementException();
+                                }
+                                MetricKey key = MetricKey.get(next);
+                                next = advance(next + 1);
+                                return new AbstractMap.SimpleImmutableEntry<>(key.getMetric(), box(key, ordinal));
+                            }
+                        };
+                    }
+
+                    @Override
+                    public int size() {
+                        int count = 0;
+                        for (int id = 0; id < present.length; id++) {
+                            if (isPresent(MetricKey.get(id), ordinal) && MetricKey.get(id).getMetric() != null) {
+                                count++;
+                            }
+                        }
+                        return count;
+                    }
+                };
+            }
+        });
+    }
+
+    private Object box(MetricKey key, int ordinal) {
+        int id = key.getId();
+        return (doubleColumns[id] != null) ? (Object) doubleColumns[id][ordinal] : (Object) intColumns[id][ordinal];
+    }
+}
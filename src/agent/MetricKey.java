@@ -0,0 +1,179 @@
+/*
+ * Copyright (C) 2015 SFINA Team
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package agent;
+
+import java.io.ObjectStreamException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Typed key of a link, node or system metric. Every key has a unique name and
+ * a dense id which MetricFrames use as column index. Keys of the Metrics enum
+ * are logged with the enum as tag, all other keys with their name.
+ * 
+ * @see DoubleMetric
+ * @see IntMetric
+ */
+public abstract class MetricKey implements Serializable {
+
+    private static final ArrayList<MetricKey> keys = new ArrayList<>();
+    private static final HashMap<String, MetricKey> keysByName = new HashMap<>();
+    // read without the lock by of(Metrics)
+    private static final ConcurrentHashMap<Metrics, MetricKey> keysByMetric = new ConcurrentHashMap<>();
+
+    private final String name;
+    private final Metrics metric;
+    private final transient int id;
+
+    MetricKey(String name, Metrics metric) {
+        this.name = name;
+        this.metric = metric;
+        this.id = keys.size();
+        keys.add(this);
+        keysByName.put(name, this);
+        if (metric != null) {
+            keysByMetric.put(metric, this);
+        }
+    }
+
+    /**
+     * @param metric
+     * @return the registered key of the enum constant or null
+     */
+    public static MetricKey of(Metrics metric) {
+        return keysByMetric.get(metric);
+    }
+
+    /**
+     * Creates keys of one subclass, called with the lock of MetricKey held.
+     */
+    interface Factory<K extends MetricKey> {
+
+        K create(String name, Metrics metric);
+    }
+
+    /**
+     * Returns the key of the enum constant, registers it if needed.
+     *
+     * @throws IllegalArgumentException if the constant is registered as
+     * another type
+     */
+    static <K extends MetricKey> K of(Metrics metric, Class<K> type, Factory<K> factory) {
+        MetricKey key = keysByMetric.get(metric);
+        if (key == null) {
+            return named(metric.name(), type, factory);
+        }
+        if (!type.isInstance(key)) {
+            throw new IllegalArgumentException("Metric " + metric + " is registered as " + key.getClass().getSimpleName());
+        }
+        return type.cast(key);
+    }
+
+    /**
+     * Returns the key with the given name, registers it if needed. A name of
+     * a Metrics constant is bound to the constant.
+     *
+     * @throws IllegalArgumentException if the name is taken by another type
+     */
+    static <K extends MetricKey> K named(String name, Class<K> type, Factory<K> factory) {
+        synchronized (MetricKey.class) {
+            K key = lookup(name, type);
+            if (key == null) {
+                Metrics metric = null;
+                for (Metrics candidate : Metrics.values()) {
+                    if (candidate.name().equals(name)) {
+                        metric = candidate;
+                        break;
+                    }
+                }
+                key = factory.create(name, metric);
+            }
+            return key;
+        }
+    }
+
+    /**
+     * Returns the registered key of the given name and type or null if there
+     * is none.
+     *
+     * @throws IllegalArgumentException if the name is taken by another type
+     */
+    private static <K extends MetricKey> K lookup(String name, Class<K> type) {
+        MetricKey key = keysByName.get(name);
+        if (key == null) {
+            return null;
+        }
+        if (!type.isInstance(key)) {
+            throw new IllegalArgumentException("Metric " + name + " is registered as " + key.getClass().getSimpleName());
+        }
+        return type.cast(key);
+    }
+
+    /**
+     * @param name
+     * @return the key with the given name or null
+     */
+    public static synchronized MetricKey forName(String name) {
+        return keysByName.get(name);
+    }
+
+    /**
+     * @return the number of registered keys
+     */
+    static synchronized int count() {
+        return keys.size();
+    }
+
+    static synchronized MetricKey get(int id) {
+        return keys.get(id);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return the enum constant of the key or null for custom keys
+     */
+    public Metrics getMetric() {
+        return metric;
+    }
+
+    /**
+     * @return the tag of logged values, the enum constant or the name
+     */
+    public Object getTag() {
+        return (metric != null) ? metric : name;
+    }
+
+    int getId() {
+        return id;
+    }
+
+    private Object readResolve() throws ObjectStreamException {
+        MetricKey key = forName(name);
+        return (key != null) ? key : (this instanceof IntMetric) ? IntMetric.named(name) : DoubleMetric.named(name);
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
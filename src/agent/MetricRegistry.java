@@ -0,0 +1,208 @@
+/*
+ * Copyright (C) 2015 SFINA Team
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package agent;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Properties;
+import org.apache.log4j.Logger;
+
+/**
+ * Decides which metrics are collected, for which links and nodes and at
+ * which time steps. Loaded from a properties file, see conf/measurement.conf
+ * for the keys.
+ */
+public class MetricRegistry {
+
+    private static final Logger logger = Logger.getLogger(MetricRegistry.class);
+
+    public static final String DEFAULT_CONFIG_FILE = "conf/measurement.conf";
+
+    private final EnumSet<Metrics> enabledMetrics;
+    private int captureInterval;
+    private ElementSampler.Mode samplingMode;
+    private int samplingInterval;
+    private int reservoirSize;
+    private long samplingSeed;
+    private List<String> linkWatchList;
+    private List<String> nodeWatchList;
+
+    /**
+     * Everything enabled, all elements at every time step.
+     */
+    public MetricRegistry() {
+        this.enabledMetrics = EnumSet.allOf(Metrics.class);
+        this.captureInterval = 1;
+        this.samplingMode = ElementSampler.Mode.ALL;
+        this.samplingInterval = 1;
+        this.reservoirSize = 100;
+        this.samplingSeed = 0;
+        this.linkWatchList = new ArrayList<>();
+        this.nodeWatchList = new ArrayList<>();
+    }
+
+    /**
+     * Loads the registry from a properties file. Missing keys keep their
+     * defaults, a missing file gives the default registry.
+     *
+     * @param fileName
+     * @return the registry
+     */
+    public static MetricRegistry load(String fileName) {
+        MetricRegistry registry = new MetricRegistry();
+        File file = new File(fileName);
+        if (!file.isFile()) {
+            logger.debug("No measurement configuration at " + fileName + ", using defaults");
+            return registry;
+        }
+        Properties properties = new Properties();
+        try (InputStream in = new FileInputStream(file)) {
+            properties.load(in);
+        } catch (IOException ex) {
+            logger.error("Could not read measurement configuration " + fileName + ", using defaults", ex);
+            return registry;
+        }
+        registry.configure(properties);
+        return registry;
+    }
+
+    /**
+     * @param properties
+     */
+    public void configure(Properties properties) {
+        for (String metric : split(properties.getProperty("disabledMetrics"))) {
+            disable(Metrics.valueOf(metric));
+        }
+        captureInterval = Integer.parseInt(properties.getProperty("captureInterval", Integer.toString(captureInterval)).trim());
+        samplingMode = ElementSampler.Mode.valueOf(properties.getProperty("sampling", samplingMode.name()).trim());
+        samplingInterval = Integer.parseInt(properties.getProperty("samplingInterval", Integer.toString(samplingInterval)).trim());
+        reservoirSize = Integer.parseInt(properties.getProperty("reservoirSize", Integer.toString(reservoirSize)).trim());
+        samplingSeed = Long.parseLong(properties.getProperty("samplingSeed", Long.toString(samplingSeed)).trim());
+        if (properties.containsKey("linkWatchList")) {
+            linkWatchList = split(properties.getProperty("linkWatchList"));
+        }
+        if (properties.containsKey("nodeWatchList")) {
+            nodeWatchList = split(properties.getProperty("nodeWatchList"));
+        }
+        if (captureInterval < 1) {
+            throw new IllegalArgumentException("captureInterval must be at least 1: " + captureInterval);
+        }
+    }
+
+    private static List<String> split(String value) {
+        ArrayList<String> values = new ArrayList<>();
+        if (value != null) {
+            for (String token : value.split(",")) {
+                if (!token.trim().isEmpty()) {
+                    values.add(token.trim());
+                }
+            }
+        }
+        return values;
+    }
+
+    /**
+     * @param metric
+     * @return true if the metric is calculated and logged
+     */
+    public boolean isEnabled(Metrics metric) {
+        return enabledMetrics.contains(metric);
+    }
+
+    public void enable(Metrics metric) {
+        enabledMetrics.add(metric);
+    }
+
+    public void disable(Metrics metric) {
+        enabledMetrics.remove(metric);
+    }
+
+    /**
+     * @param simulationTime
+     * @return true if link and node metrics are collected at this time step,
+     * the first time step is always captured
+     */
+    public boolean isCaptured(int simulationTime) {
+        return (simulationTime - 1) % captureInterval == 0;
+    }
+
+    public int getCaptureInterval() {
+        return captureInterval;
+    }
+
+    /**
+     * @param captureInterval collect link and node metrics every n time steps
+     */
+    public void setCaptureInterval(int captureInterval) {
+        this.captureInterval = captureInterval;
+    }
+
+    /**
+     * @return a new sampler for the links
+     */
+    public ElementSampler createLinkSampler() {
+        return createSampler(linkWatchList);
+    }
+
+    /**
+     * @return a new sampler for the nodes
+     */
+    public ElementSampler createNodeSampler() {
+        return createSampler(nodeWatchList);
+    }
+
+    private ElementSampler createSampler(List<String> watchList) {
+        switch (samplingMode) {
+            case EVERY_KTH:
+                return ElementSampler.everyKth(samplingInterval);
+            case RESERVOIR:
+                return ElementSampler.reservoir(reservoirSize, samplingSeed);
+            case WATCH_LIST:
+                return ElementSampler.watchList(watchList);
+            default:
+                return ElementSampler.all();
+        }
+    }
+
+    public ElementSampler.Mode getSamplingMode() {
+        return samplingMode;
+    }
+
+    public void setSamplingMode(ElementSampler.Mode samplingMode) {
+        this.samplingMode = samplingMode;
+    }
+
+    public void setSamplingInterval(int samplingInterval) {
+        this.samplingInterval = samplingInterval;
+    }
+
+    public void setReservoirSize(int reservoirSize, long samplingSeed) {
+        this.reservoirSize = reservoirSize;
+        this.samplingSeed = samplingSeed;
+    }
+
+    public void setWatchLists(List<String> linkWatchList, List<String> nodeWatchList) {
+        this.linkWatchList = new ArrayList<>(linkWatchList);
+        this.nodeWatchList = new ArrayList<>(nodeWatchList);
+    }
+}
@@ -0,0 +1,175 @@
+/*
+ * Copyright (C) 2015 SFINA Team
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package agent;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Append-only file for metric frames evicted from the MetricStores. Element
+ * indices are written once, frames only carry their primitive columns.
+ * 
+ * Records:
+ * - INDICES: kind, count, count x index
+ * - FRAME: kind, time step, iteration, size, column count, column count x
+ *   (type, metric name, value count, value count x (ordinal, value))
+ */
+public class MetricSpillFile {
+
+    public static final byte LINKS = 0;
+    public static final byte NODES = 1;
+
+    private static final byte INDICES = 0;
+    private static final byte FRAME = 1;
+
+    private static final byte DOUBLE_COLUMN = 0;
+    private static final byte INT_COLUMN = 1;
+
+    private final String fileName;
+    private final int[] writtenIndices;
+    private DataOutputStream out;
+
+    public MetricSpillFile(String fileName) {
+        this.fileName = fileName;
+        this.writtenIndices = new int[2];
+    }
+
+    /**
+     * Appends the frames and flushes them to disk.
+     *
+     * @param kind LINKS or NODES
+     * @param store the store the frames were evicted from
+     * @param frames
+     * @throws IOException
+     */
+    public void write(byte kind, MetricStore store, List<MetricFrame> frames) throws IOException {
+        if (frames.isEmpty()) {
+            return;
+        }
+        if (out == null) {
+            File file = new File(fileName);
+            if (file.getParentFile() != null) {
+                file.getParentFile().mkdirs();
+            }
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, false)));
+        }
+        if (writtenIndices[kind] < store.size()) {
+            out.writeByte(INDICES);
+            out.writeByte(kind);
+            out.writeInt(store.size() - writtenIndices[kind]);
+            for (int i = writtenIndices[kind]; i < store.size(); i++) {
+                out.writeUTF(store.getIndex(i));
+            }
+            writtenIndices[kind] = store.size();
+        }
+        for (MetricFrame frame : frames) {
+            List<MetricKey> keys = frame.getKeys();
+            out.writeByte(FRAME);
+            out.writeByte(kind);
+            out.writeInt(frame.getSimulationTime());
+            out.writeInt(frame.getIteration());
+            out.writeInt(frame.size());
+            out.writeInt(keys.size());
+            for (MetricKey key : keys) {
+                out.writeByte((key instanceof IntMetric) ? INT_COLUMN : DOUBLE_COLUMN);
+                out.writeUTF(key.getName());
+                int count = 0;
+                for (int i = 0; i < frame.size(); i++) {
+                    if (frame.isPresent(key, i)) {
+                        count++;
+                    }
+                }
+                out.writeInt(count);
+                for (int i = 0; i < frame.size(); i++) {
+                    if (frame.isPresent(key, i)) {
+                        out.writeInt(i);
+                        if (key instanceof IntMetric) {
+                            out.writeInt(frame.getInt((IntMetric) key, i, 0));
+                        } else {
+                            out.writeDouble(frame.getDouble((DoubleMetric) key, i));
+                        }
+                    }
+                }
+            }
+        }
+        out.flush();
+    }
+
+    public void close() throws IOException {
+        if (out != null) {
+            out.close();
+            out = null;
+        }
+    }
+
+    /**
+     * Loads all spilled frames back into the given stores.
+     *
+     * @param fileName
+     * @param linkStore
+     * @param nodeStore
+     * @throws IOException
+     */
+    public static void read(String fileName, MetricStore linkStore, MetricStore nodeStore) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(fileName)))) {
+            while (true) {
+                byte record;
+                try {
+                    record = in.readByte();
+                } catch (EOFException eof) {
+                    break;
+                }
+                MetricStore store = (in.readByte() == LINKS) ? linkStore : nodeStore;
+                if (record == INDICES) {
+                    int count = in.readInt();
+                    for (int i = 0; i < count; i++) {
+                        store.ordinalOf(in.readUTF());
+                    }
+                } else {
+                    MetricFrame frame = store.createFrame(in.readInt(), in.readInt());
+                    in.readInt();
+                    int columnCount = in.readInt();
+                    for (int c = 0; c < columnCount; c++) {
+                        byte type = in.readByte();
+                        String name = in.readUTF();
+                        int count = in.readInt();
+                        if (type == INT_COLUMN) {
+                            IntMetric metric = IntMetric.named(name);
+                            for (int i = 0; i < count; i++) {
+                                frame.set(metric, in.readInt(), in.readInt());
+                            }
+                        } else {
+                            DoubleMetric metric = DoubleMetric.named(name);
+                            for (int i = 0; i < count; i++) {
+                                frame.set(metric, in.readInt(), in.readDouble());
+                            }
+                        }
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,166 @@
+/*
+ * Copyright (C) 2015 SFINA Team
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package agent;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * Columnar store of link or node metrics. Elements get a dense ordinal the
+ * first time their index is seen, values are kept in MetricFrames grouped by
+ * time step and iteration.
+ */
+public class MetricStore {
+
+    private final HashMap<String, Integer> ordinals;
+    private final ArrayList<String> indices;
+
+    // Time, Iteration, Frame
+    private final TreeMap<Integer, TreeMap<Integer, MetricFrame>> frames;
+    private ElementSampler sampler;
+
+    public MetricStore() {
+        this.ordinals = new HashMap<>();
+        this.indices = new ArrayList<>();
+        this.frames = new TreeMap<>();
+        this.sampler = ElementSampler.all();
+    }
+
+    /**
+     * Returns the ordinal of the element, registers the element if it wasn't
+     * seen before.
+     *
+     * @param index the link or node index
+     * @return the dense ordinal of the element
+     */
+    public int ordinalOf(String index) {
+        Integer ordinal = ordinals.get(index);
+        if (ordinal == null) {
+            ordinal = indices.size();
+            ordinals.put(index, ordinal);
+            indices.add(index);
+        }
+        return ordinal;
+    }
+
+    /**
+     * @param index
+     * @return the ordinal of the element or -1 if it is not registered
+     */
+    public int getOrdinal(Object index) {
+        Integer ordinal = ordinals.get(index);
+        return (ordinal == null) ? -1 : ordinal;
+    }
+
+    /**
+     * @param ordinal
+     * @return the index of the element with the given ordinal
+     */
+    public String getIndex(int ordinal) {
+        return indices.get(ordinal);
+    }
+
+    /**
+     * @return the number of registered elements
+     */
+    public int size() {
+        return indices.size();
+    }
+
+    /**
+     * @return the sampler of new frames
+     */
+    public ElementSampler getSampler() {
+        return sampler;
+    }
+
+    /**
+     * Frames created from now on only aggregate and show the sampled
+     * elements.
+     *
+     * @param sampler
+     */
+    public void setSampler(ElementSampler sampler) {
+        this.sampler = sampler;
+    }
+
+    /**
+     * Creates (or replaces) the frame of the given time step and iteration.
+     *
+     * @param simulationTime
+     * @param iteration
+     * @return the new frame
+     */
+    public MetricFrame createFrame(int simulationTime, int iteration) {
+        TreeMap<Integer, MetricFrame> iterations = frames.get(simulationTime);
+        if (iterations == null) {
+            iterations = new TreeMap<>();
+            frames.put(simulationTime, iterations);
+        }
+        MetricFrame frame = new MetricFrame(this, simulationTime, iteration, size(), sampler.sample(this));
+        iterations.put(iteration, frame);
+        return frame;
+    }
+
+    /**
+     * @param simulationTime
+     * @param iteration
+     * @return the frame or null if it doesn't exist
+     */
+    public MetricFrame getFrame(int simulationTime, int iteration) {
+        TreeMap<Integer, MetricFrame> iterations = frames.get(simulationTime);
+        return (iterations == null) ? null : iterations.get(iteration);
+    }
+
+    /**
+     * Removes all frames of time steps before the given one.
+     *
+     * @param simulationTime the oldest time step to keep
+     * @return the removed frames ordered by time step and iteration
+     */
+    public List<MetricFrame> evictBefore(int simulationTime) {
+        ArrayList<MetricFrame> evicted = new ArrayList<>();
+        NavigableMap<Integer, TreeMap<Integer, MetricFrame>> expired = frames.headMap(simulationTime, false);
+        for (TreeMap<Integer, MetricFrame> iterations : expired.values()) {
+            evicted.addAll(iterations.values());
+        }
+        expired.clear();
+        return evicted;
+    }
+
+    /**
+     * @return read-only view keyed by time step, iteration, element index and
+     * metric
+     */
+    public HashMap<Integer, HashMap<Integer, HashMap<String, HashMap<Metrics, Object>>>> asMap() {
+        return new ReadOnlyHashMap<Integer, TreeMap<Integer, MetricFrame>, HashMap<Integer, HashMap<String, HashMap<Metrics, Object>>>>(frames) {
+            @Override
+            HashMap<Integer, HashMap<String, HashMap<Metrics, Object>>> view(TreeMap<Integer, MetricFrame> iterations) {
+                return new ReadOnlyHashMap<Integer, MetricFrame, HashMap<String, HashMap<Metrics, Object>>>(iterations) {
+                    @Override
+                    HashMap<String, HashMap<Metrics, Object>> view(MetricFrame frame) {
+                        return frame.asMap();
+                    }
+                };
+            }
+        };
+    }
+}
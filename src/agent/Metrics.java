@@ -41,5 +41,6 @@ public enum Metrics {
     // Simulation
     FLOW_SIMU_TIME,
     TOT_SIMU_TIME,
-    NEEDED_ITERATIONS    
+    NEEDED_ITERATIONS,
+    CONTINGENCIES // number of removed links evaluated per time step, see paperSimulations.BenchmarkEvolution
 }
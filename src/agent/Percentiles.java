@@ -0,0 +1,37 @@
+/*
+ * Copyright (C) 2015 SFINA Team
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package agent;
+
+/**
+ * Percentiles logged for the phase durations.
+ */
+public enum Percentiles {
+    P50(0.5),
+    P90(0.9),
+    P99(0.99);
+
+    private final double quantile;
+
+    private Percentiles(double quantile) {
+        this.quantile = quantile;
+    }
+
+    public double getQuantile() {
+        return quantile;
+    }
+}
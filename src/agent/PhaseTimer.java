@@ -0,0 +1,85 @@
+/*
+ * Copyright (C) 2015 SFINA Team
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package agent;
+
+import java.util.EnumMap;
+import protopeer.measurement.MeasurementLog;
+
+/**
+ * Measures phase durations with System.nanoTime() and collects them in one
+ * LatencyHistogram per phase. Usage:
+ * 
+ * long start=timer.start();
+ * ...
+ * timer.stop(Phase.EVENTS, start);
+ */
+public class PhaseTimer {
+
+    private final EnumMap<Phase, LatencyHistogram> histograms;
+
+    public PhaseTimer() {
+        this.histograms = new EnumMap<>(Phase.class);
+        for (Phase phase : Phase.values()) {
+            histograms.put(phase, new LatencyHistogram());
+        }
+    }
+
+    public long start() {
+        return System.nanoTime();
+    }
+
+    /**
+     * @param phase
+     * @param start as returned by start()
+     * @return the measured duration in nanoseconds
+     */
+    public synchronized long stop(Phase phase, long start) {
+        long duration = System.nanoTime() - start;
+        histograms.get(phase).record(duration);
+        return duration;
+    }
+
+    public synchronized LatencyHistogram getHistogram(Phase phase) {
+        return histograms.get(phase);
+    }
+
+    /**
+     * Logs count, average, maximum and percentiles in nanoseconds of every
+     * phase that was measured, tagged with the phase, and resets the
+     * histograms.
+     *
+     * @param log
+     * @param simulationTime
+     */
+    public synchronized void logAndReset(MeasurementLog log, int simulationTime) {
+        for (Phase phase : Phase.values()) {
+            LatencyHistogram histogram = histograms.get(phase);
+            if (histogram.getCount() == 0) {
+                continue;
+            }
+            log.log(simulationTime, phase, Aggregates.COUNT, histogram.getCount());
+            log.log(simulationTime, phase, Aggregates.SUM, histogram.getSum());
+            log.log(simulationTime, phase, Aggregates.AVG, histogram.getAverage());
+            log.log(simulationTime, phase, Aggregates.MAX, histogram.getMax());
+            for (Percentiles percentile : Percentiles.values()) {
+                log.log(simulationTime, phase, percentile, histogram.getPercentile(percentile.getQuantile()));
+            }
+            histogram.reset();
+        }
+    }
+}
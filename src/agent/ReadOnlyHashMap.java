@@ -0,0 +1,241 @@
+/*
+ * Copyright (C) 2015 SFINA Team
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package agent;
+
+import java.util.AbstractCollection;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * Read-only HashMap backed by another map, values are converted on access.
+ * Nothing is stored in the HashMap itself, it lets the metric stores keep
+ * the HashMap signatures of the temporal metrics without copying them.
+ * Changes throw UnsupportedOperationException.
+ */
+abstract class ReadOnlyHashMap<K, V, W> extends HashMap<K, W> {
+
+    private final Map<K, V> backing;
+
+    ReadOnlyHashMap(Map<K, V> backing) {
+        this.backing = backing;
+    }
+
+    abstract W view(V value);
+
+    /**
+     * @param backing
+     * @return read-only HashMap with the values of the backing map
+     */
+    static <K, V> HashMap<K, V> of(Map<K, V> backing) {
+        return new ReadOnlyHashMap<K, V, V>(backing) {
+            @Override
+            V view(V value) {
+                return value;
+            }
+        };
+    }
+
+    @Override
+    public W get(Object key) {
+        V value = backing.get(key);
+        return (value == null) ? null : view(value);
+    }
+
+    @Override
+    public W getOrDefault(Object key, W defaultValue) {
+        W value = get(key);
+        return (value == null) ? defaultValue : value;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return backing.containsKey(key);
+    }
+
+    @Override
+    public boolean containsValue(Object value) {
+        for (W candidate : values()) {
+            if (Objects.equals(candidate, value)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public int size() {
+        return backing.size();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return backing.isEmpty();
+    }
+
+    @Override
+    public Set<K> keySet() {
+        return Collections.unmodifiableSet(backing.keySet());
+    }
+
+    @Override
+    public Collection<W> values() {
+        return new AbstractCollection<W>() {
+            @Override
+            public Iterator<W> iterator() {
+                final Iterator<Map.Entry<K, W>> entries = entrySet().iterator();
+                return new Iterator<W>() {
+                    @Override
+                    public boolean hasNext() {
+                        return entries.hasNext();
+                    }
+
+                    @Override
+                    public W next() {
+                        return entries.next().getValue();
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return backing.size();
+            }
+        };
+    }
+
+    @Override
+    public Set<Map.Entry<K, W>> entrySet() {
+        return new AbstractSet<Map.Entry<K, W>>() {
+            @Override
+            public Iterator<Map.Entry<K, W>> iterator() {
+                final Iterator<Map.Entry<K, V>> entries = backing.entrySet().iterator();
+                return new Iterator<Map.Entry<K, W>>() {
+                    @Override
+                    public boolean hasNext() {
+                        return entries.hasNext();
+                    }
+
+                    @Override
+                    public Map.Entry<K, W> next() {
+                        Map.Entry<K, V> entry = entries.next();
+                        return new AbstractMap.SimpleImmutableEntry<>(entry.getKey(), view(entry.getValue()));
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return backing.size();
+            }
+        };
+    }
+
+    @Override
+    public void forEach(BiConsumer<? super K, ? super W> action) {
+        for (Map.Entry<K, W> entry : entrySet()) {
+            action.accept(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * @return modifiable copy
+     */
+    @Override
+    public Object clone() {
+        return new HashMap<>(this);
+    }
+
+    @Override
+    public W put(K key, W value) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void putAll(Map<? extends K, ? extends W> m) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public W remove(Object key) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void clear() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public W putIfAbsent(K key, W value) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean remove(Object key, Object value) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean replace(K key, W oldValue, W newValue) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public W replace(K key, W value) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void replaceAll(BiFunction<? super K, ? super W, ? extends W> function) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public W computeIfAbsent(K key, Function<? super K, ? extends W> mappingFunction) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public W computeIfPresent(K key, BiFunction<? super K, ? super W, ? extends W> remappingFunction) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public W compute(K key, BiFunction<? super K, ? super W, ? extends W> remappingFunction) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public W merge(K key, W value, BiFunction<? super W, ? super W, ? extends W> remappingFunction) {
+        throw new UnsupportedOperationException();
+    }
+
+    private Object writeReplace() {
+        return new HashMap<>(this);
+    }
+}
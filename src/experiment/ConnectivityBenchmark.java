@@ -0,0 +1,151 @@
+/*
+ * Copyright (C) 2015 SFINA Team
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package experiment;
+
+import graph.ConnectivityTracker;
+import graph.SparseAdjacency;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Random;
+import java.util.Set;
+import network.FlowNetwork;
+import network.Link;
+import network.Node;
+import org.apache.log4j.Logger;
+
+/**
+ * Compares the ConnectivityTracker with FlowNetwork.computeIslands() on a
+ * synthetic grid: a rows x columns lattice with some random long links. In
+ * every round a few links around a random node are removed, as a cascade
+ * iteration does, and the islands are updated by both. The island counts
+ * are checked against each other.
+ *
+ * Usage: ConnectivityBenchmark [rows columns rounds linksPerRound seed]
+ */
+public class ConnectivityBenchmark {
+
+    private static final Logger logger = Logger.getLogger(ConnectivityBenchmark.class);
+
+    private static final double LONG_LINK_SHARE = 0.05;
+
+    public static void main(String[] args) {
+        int rows = (args.length > 0) ? Integer.parseInt(args[0]) : 150;
+        int columns = (args.length > 1) ? Integer.parseInt(args[1]) : 150;
+        int rounds = (args.length > 2) ? Integer.parseInt(args[2]) : 200;
+        int linksPerRound = (args.length > 3) ? Integer.parseInt(args[3]) : 4;
+        long seed = (args.length > 4) ? Long.parseLong(args[4]) : 1;
+
+        Random random = new Random(seed);
+        FlowNetwork flowNetwork = createGrid(rows, columns, random);
+        logger.info("Grid with " + flowNetwork.getNodes().size() + " nodes and " + flowNetwork.getLinks().size() + " links");
+
+        long start = System.nanoTime();
+        SparseAdjacency adjacency = new SparseAdjacency(flowNetwork);
+        ConnectivityTracker tracker = new ConnectivityTracker(adjacency);
+        long buildTime = System.nanoTime() - start;
+
+        long trackerTime = 0;
+        long computeIslandsTime = 0;
+        int splits = 0;
+        for (int round = 0; round < rounds; round++) {
+            ArrayList<Integer> removed = removeLinksAround(adjacency, random.nextInt(adjacency.getNodeCount()), linksPerRound);
+
+            start = System.nanoTime();
+            Set<Integer> split = tracker.linksRemoved(removed);
+            trackerTime += System.nanoTime() - start;
+            splits += (split == null) ? 0 : split.size();
+
+            start = System.nanoTime();
+            int islands = flowNetwork.computeIslands().size();
+            computeIslandsTime += System.nanoTime() - start;
+
+            if (islands != tracker.getIslandCount()) {
+                throw new IllegalStateException("Round " + round + ": computeIslands found " + islands + " islands, the tracker " + tracker.getIslandCount());
+            }
+        }
+        logger.info(String.format("%d rounds, %d splits, %d islands, %d rebuilds", rounds, splits, tracker.getIslandCount(), tracker.getRebuilds()));
+        logger.info(String.format("%-20s%15s", "METHOD", "TIME [ms]"));
+        logger.info(String.format("%-20s%15.3f", "tracker setup", buildTime / 1e6));
+        logger.info(String.format("%-20s%15.3f", "tracker", trackerTime / 1e6));
+        logger.info(String.format("%-20s%15.3f", "computeIslands", computeIslandsTime / 1e6));
+        logger.info(String.format("speedup %.1f", (double) computeIslandsTime / Math.max(1, trackerTime)));
+    }
+
+    /**
+     * @return lattice with links to the right and down neighbour and a share
+     * of links between random nodes
+     */
+    private static FlowNetwork createGrid(int rows, int columns, Random random) {
+        FlowNetwork flowNetwork = new FlowNetwork();
+        int nodes = rows * columns;
+        for (int i = 0; i < nodes; i++) {
+            flowNetwork.addNode(new Node(Integer.toString(i + 1), true));
+        }
+        int linkIndex = 1;
+        for (int r = 0; r < rows; r++) {
+            for (int c = 0; c < columns; c++) {
+                int node = r * columns + c;
+                if (c + 1 < columns) {
+                    addLink(flowNetwork, linkIndex++, node, node + 1);
+                }
+                if (r + 1 < rows) {
+                    addLink(flowNetwork, linkIndex++, node, node + columns);
+                }
+            }
+        }
+        int longLinks = (int) (LONG_LINK_SHARE * nodes);
+        for (int i = 0; i < longLinks; i++) {
+            addLink(flowNetwork, linkIndex++, random.nextInt(nodes), random.nextInt(nodes));
+        }
+        return flowNetwork;
+    }
+
+    private static void addLink(FlowNetwork flowNetwork, int index, int start, int end) {
+        Node startNode = flowNetwork.getNode(Integer.toString(start + 1));
+        Node endNode = flowNetwork.getNode(Integer.toString(end + 1));
+        flowNetwork.addLink(new Link(Integer.toString(index), true, startNode, endNode));
+    }
+
+    /**
+     * Deactivates up to count active links of the node and its neighbours.
+     *
+     * @return ordinals of the deactivated links
+     */
+    private static ArrayList<Integer> removeLinksAround(SparseAdjacency adjacency, int node, int count) {
+        ArrayList<Integer> candidates = new ArrayList<>();
+        for (int l = 0; l < adjacency.getLinkCount(); l++) {
+            if (adjacency.isActive(l) && isNear(adjacency, node, l)) {
+                candidates.add(l);
+            }
+        }
+        Collections.shuffle(candidates, new Random(node));
+        ArrayList<Integer> removed = new ArrayList<>();
+        for (int l : candidates.subList(0, Math.min(count, candidates.size()))) {
+            adjacency.getLink(l).setActivated(false);
+            adjacency.update(adjacency.getLink(l));
+            removed.add(l);
+        }
+        return removed;
+    }
+
+    private static boolean isNear(SparseAdjacency adjacency, int node, int link) {
+        int start = adjacency.getStartNode(link);
+        int end = adjacency.getEndNode(link);
+        return start == node || end == node || adjacency.isAdjacent(node, start) || adjacency.isAdjacent(node, end);
+    }
+}
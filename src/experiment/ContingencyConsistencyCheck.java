@@ -0,0 +1,141 @@
+/*
+ * Copyright (C) 2015 SFINA Team
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package experiment;
+
+import agents.time.TimeSteppingAgent;
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.log4j.Logger;
+import paperSimulations.BenchmarkAnalysis;
+import paperSimulations.BenchmarkEvolution;
+import power.backend.InterpssFlowDomainAgent;
+import protopeer.Experiment;
+import protopeer.Peer;
+import protopeer.PeerFactory;
+import protopeer.SimulatedExperiment;
+import protopeer.util.quantities.Time;
+
+/**
+ * Runs the N-1 analysis of an experiment serially and with parallel
+ * contingencies and checks that the per-iteration and per-contingency
+ * structures are equal. The workers use the default copies of the loaded
+ * network and flow domain agent, this check is what validates that setup
+ * for a case.
+ *
+ * With the argument "screening" it compares serial runs with and without
+ * outage screening instead, which only differ with a DC backend.
+ *
+ * Usage: ContingencyConsistencyCheck [expSeqNum [parallelism | screening]]
+ */
+public class ContingencyConsistencyCheck extends SimulatedExperiment {
+
+    private static final Logger logger = Logger.getLogger(ContingencyConsistencyCheck.class);
+
+    //Simulation Parameters
+    private final static int bootstrapTime = 2000;
+    private final static int runTime = 1000;
+    private final static int runDuration = 3;
+    private final static int N = 1;
+
+    private final static double TOLERANCE = 1e-9;
+
+    public static void main(String[] args) {
+        String expSeqNum = (args.length > 0) ? args[0] : "case57";
+        if (args.length > 1 && args[1].equals("screening")) {
+            BenchmarkAnalysis solved = run("experiment-" + expSeqNum, 1, false);
+            BenchmarkAnalysis screened = run("experiment-" + expSeqNum, 1, true);
+            compare(solved, screened);
+            logger.info("Solved and screened contingencies of " + expSeqNum + " are equal, " + solved.macroCount.size() + " contingencies");
+            return;
+        }
+        int parallelism = (args.length > 1) ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+
+        BenchmarkAnalysis serial = run("experiment-" + expSeqNum, 1, true);
+        BenchmarkAnalysis parallel = run("experiment-" + expSeqNum, parallelism, true);
+        compare(serial, parallel);
+        logger.info("Serial and parallel contingencies of " + expSeqNum + " are equal, " + serial.macroCount.size() + " contingencies");
+    }
+
+    /**
+     * Runs the experiment once.
+     *
+     * @return the agent of the peer
+     */
+    private static BenchmarkAnalysis run(final String experimentID, final int parallelism, final boolean outageScreening) {
+        Experiment.initEnvironment();
+        final ContingencyConsistencyCheck test = new ContingencyConsistencyCheck();
+        test.init();
+
+        final ArrayList<BenchmarkAnalysis> agents = new ArrayList<>();
+        PeerFactory peerFactory = new PeerFactory() {
+            public Peer createPeer(int peerIndex, Experiment experiment) {
+                Peer newPeer = new Peer(peerIndex);
+                BenchmarkEvolution agent = new BenchmarkEvolution(experimentID);
+                agent.setContingencyParallelism(parallelism);
+                agent.setOutageScreening(outageScreening);
+                agents.add(agent);
+                newPeer.addPeerlet(agent);
+                newPeer.addPeerlet(new TimeSteppingAgent(
+                        Time.inMilliseconds(bootstrapTime),
+                        Time.inMilliseconds(runTime)));
+                newPeer.addPeerlet(new InterpssFlowDomainAgent());
+                return newPeer;
+            }
+        };
+        test.initPeers(0, N, peerFactory);
+        test.startPeers(0, N);
+        test.runSimulation(Time.inSeconds(runDuration));
+        return agents.get(0);
+    }
+
+    /**
+     * @throws IllegalStateException at the first difference
+     */
+    private static void compare(BenchmarkAnalysis expected, BenchmarkAnalysis actual) {
+        compare("powerPerIteration", expected.powerPerIteration, actual.powerPerIteration);
+        compare("powerIncreasePerIteration", expected.powerIncreasePerIteration, actual.powerIncreasePerIteration);
+        compare("linkPerIteration", expected.linkPerIteration, actual.linkPerIteration);
+        compare("spectralRadius", expected.spectralRadius, actual.spectralRadius);
+        compare("linkStatusPerContingency", expected.linkStatusPerContingency, actual.linkStatusPerContingency);
+        compare("avgflowStatusPerContingency", expected.avgflowStatusPerContingency, actual.avgflowStatusPerContingency);
+        compare("avgflowIncreaseStatusPerContingency", expected.avgflowIncreaseStatusPerContingency, actual.avgflowIncreaseStatusPerContingency);
+        compare("macroCount", expected.macroCount, actual.macroCount);
+    }
+
+    private static void compare(String name, List<?> expected, List<?> actual) {
+        if (expected.size() != actual.size()) {
+            throw new IllegalStateException(name + " has " + actual.size() + " entries instead of " + expected.size());
+        }
+        for (int i = 0; i < expected.size(); i++) {
+            Object e = expected.get(i);
+            Object a = actual.get(i);
+            if (e instanceof List) {
+                compare(name + "[" + i + "]", (List<?>) e, (List<?>) a);
+            } else if (e instanceof Double) {
+                double x = (Double) e;
+                double y = (Double) a;
+                boolean equal = (Double.isNaN(x) && Double.isNaN(y)) || x == y || Math.abs(x - y) <= TOLERANCE * Math.max(1.0, Math.abs(x));
+                if (!equal) {
+                    throw new IllegalStateException(name + "[" + i + "] is " + y + " instead of " + x);
+                }
+            } else if (!e.equals(a)) {
+                throw new IllegalStateException(name + "[" + i + "] is " + a + " instead of " + e);
+            }
+        }
+    }
+}
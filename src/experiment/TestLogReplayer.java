@@ -18,6 +18,7 @@
 package experiment;
 
 import replayer.BenchmarkLogReplayer;
+import replayer.ReplayResultCache;
 import protopeer.Experiment;
 import protopeer.SimulatedExperiment;
 
@@ -34,6 +35,6 @@ public class TestLogReplayer extends SimulatedExperiment{
         Experiment.initEnvironment();
         final TestBenchmarkAgent test = new TestBenchmarkAgent();
         test.init();
-        BenchmarkLogReplayer replayer = new BenchmarkLogReplayer(expSeqNum, 0, 1000, true);
+        BenchmarkLogReplayer replayer = new BenchmarkLogReplayer(expSeqNum, 0, 1000, true, false, null, new ReplayResultCache(ReplayResultCache.DEFAULT_DIRECTORY));
     }
 }
\ No newline at end of file
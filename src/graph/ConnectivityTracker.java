@@ -0,0 +1,279 @@
+/*
+ * Copyright (C) 2015 SFINA Team
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package graph;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Islands of the active topology of a SparseAdjacency, kept up to date while
+ * links are removed. A removed link only costs searches from its end nodes
+ * which stop as soon as they meet another end node of the same island or the
+ * smaller side is exhausted. Islands which didn't split keep their number, of
+ * a split island one part keeps it and the others get new numbers. Any other
+ * change of the adjacency, like activated links, rebuilds the islands with a
+ * union-find on the next update.
+ */
+public class ConnectivityTracker {
+
+    private final SparseAdjacency adjacency;
+    private final int[] islands;
+    private final int[] islandSizes;
+    private int islandCount;
+    private long version;
+    private int rebuilds;
+
+    private final int[] parents;
+    private final int[] startQueue;
+    private final int[] endQueue;
+    private final int[] marks;
+    private int stamp;
+
+    /**
+     * @param adjacency
+     */
+    public ConnectivityTracker(SparseAdjacency adjacency) {
+        this.adjacency = adjacency;
+        int n = adjacency.getNodeCount();
+        this.islands = new int[n];
+        this.islandSizes = new int[n];
+        this.parents = new int[n];
+        this.startQueue = new int[n];
+        this.endQueue = new int[n];
+        this.marks = new int[n];
+        this.stamp = 0;
+        this.rebuilds = 0;
+        rebuild();
+    }
+
+    public SparseAdjacency getAdjacency() {
+        return adjacency;
+    }
+
+    /**
+     * Numbers the islands from scratch with a union-find over the active
+     * links.
+     */
+    public void rebuild() {
+        int n = islands.length;
+        for (int i = 0; i < n; i++) {
+            parents[i] = i;
+        }
+        for (int l = 0; l < adjacency.getLinkCount(); l++) {
+            if (adjacency.isActive(l)) {
+                int u = find(adjacency.getStartNode(l));
+                int v = find(adjacency.getEndNode(l));
+                if (u != v) {
+                    parents[u] = v;
+                }
+            }
+        }
+        Arrays.fill(islands, -1);
+        Arrays.fill(islandSizes, 0);
+        islandCount = 0;
+        for (int i = 0; i < n; i++) {
+            int root = find(i);
+            if (islands[root] < 0) {
+                islands[root] = islandCount++;
+            }
+            islands[i] = islands[root];
+            islandSizes[islands[i]]++;
+        }
+        version = adjacency.getVersion();
+        rebuilds++;
+    }
+
+    private int find(int node) {
+        while (parents[node] != node) {
+            parents[node] = parents[parents[node]];
+            node = parents[node];
+        }
+        return node;
+    }
+
+    /**
+     * Rebuilds the islands if the adjacency changed since the last update.
+     *
+     * @return true if the islands were rebuilt
+     */
+    public boolean synchronize() {
+        if (version == adjacency.getVersion()) {
+            return false;
+        }
+        rebuild();
+        return true;
+    }
+
+    /**
+     * Updates the islands after the links were deactivated in the adjacency.
+     * If the adjacency changed in other ways since the last update, the
+     * islands are rebuilt instead.
+     *
+     * @param linkOrdinals links deactivated since the last update, each once
+     * @return numbers of the islands which split, the new parts have new
+     * numbers; null if the islands were rebuilt and all numbers changed
+     */
+    public Set<Integer> linksRemoved(Collection<Integer> linkOrdinals) {
+        boolean consistent = adjacency.getVersion() - version == linkOrdinals.size();
+        for (int linkOrdinal : linkOrdinals) {
+            consistent &= !adjacency.isActive(linkOrdinal);
+        }
+        if (!consistent) {
+            rebuild();
+            return null;
+        }
+        // each part of a split island holds an end node of a removed link,
+        // comparing them with one anchor node per old island finds all parts
+        LinkedHashSet<Integer> split = new LinkedHashSet<>();
+        HashMap<Integer, Integer> anchors = new HashMap<>();
+        int firstNewIsland = islandCount;
+        for (int linkOrdinal : linkOrdinals) {
+            for (int node : new int[]{adjacency.getStartNode(linkOrdinal), adjacency.getEndNode(linkOrdinal)}) {
+                int island = islands[node];
+                if (island >= firstNewIsland) {
+                    continue;
+                }
+                Integer anchor = anchors.get(island);
+                if (anchor == null) {
+                    anchors.put(island, node);
+                } else if (separate(anchor, node)) {
+                    split.add(island);
+                    if (islands[anchor] != island) {
+                        anchors.put(island, node);
+                    }
+                }
+            }
+        }
+        version = adjacency.getVersion();
+        return split;
+    }
+
+    /**
+     * Searches from both nodes in turns until they meet or one side has no
+     * more nodes, which then becomes a new island.
+     *
+     * @return true if the nodes are no longer connected
+     */
+    private boolean separate(int start, int end) {
+        if (start == end || adjacency.isAdjacent(start, end)) {
+            return false;
+        }
+        int[] rows = adjacency.getRows();
+        int[] columns = adjacency.getColumns();
+        // marks of the start side are stamp, of the end side stamp + 1
+        int startMark = nextStamp();
+        int endMark = startMark + 1;
+        int startHead = 0;
+        int startTail = 0;
+        int endHead = 0;
+        int endTail = 0;
+        startQueue[startTail++] = start;
+        marks[start] = startMark;
+        endQueue[endTail++] = end;
+        marks[end] = endMark;
+        while (startHead < startTail && endHead < endTail) {
+            int node = startQueue[startHead++];
+            for (int k = rows[node]; k < rows[node + 1]; k++) {
+                if (!adjacency.isActiveEntry(k)) {
+                    continue;
+                }
+                int neighbour = columns[k];
+                if (marks[neighbour] == endMark) {
+                    return false;
+                }
+                if (marks[neighbour] != startMark) {
+                    marks[neighbour] = startMark;
+                    startQueue[startTail++] = neighbour;
+                }
+            }
+            node = endQueue[endHead++];
+            for (int k = rows[node]; k < rows[node + 1]; k++) {
+                if (!adjacency.isActiveEntry(k)) {
+                    continue;
+                }
+                int neighbour = columns[k];
+                if (marks[neighbour] == startMark) {
+                    return false;
+                }
+                if (marks[neighbour] != endMark) {
+                    marks[neighbour] = endMark;
+                    endQueue[endTail++] = neighbour;
+                }
+            }
+        }
+        // the exhausted side, the smaller one if both are
+        if (startHead == startTail && (endHead < endTail || startTail <= endTail)) {
+            renumber(startQueue, startTail);
+        } else {
+            renumber(endQueue, endTail);
+        }
+        return true;
+    }
+
+    private void renumber(int[] queue, int size) {
+        int island = islands[queue[0]];
+        int newIsland = islandCount++;
+        for (int i = 0; i < size; i++) {
+            islands[queue[i]] = newIsland;
+        }
+        islandSizes[island] -= size;
+        islandSizes[newIsland] = size;
+    }
+
+    private int nextStamp() {
+        stamp += 2;
+        if (stamp < 0) {
+            Arrays.fill(marks, 0);
+            stamp = 2;
+        }
+        return stamp;
+    }
+
+    /**
+     * @param nodeOrdinal
+     * @return number of the node's island
+     */
+    public int getIsland(int nodeOrdinal) {
+        return islands[nodeOrdinal];
+    }
+
+    /**
+     * @return number of islands, isolated nodes included
+     */
+    public int getIslandCount() {
+        return islandCount;
+    }
+
+    /**
+     * @param island
+     * @return number of nodes in the island
+     */
+    public int getIslandSize(int island) {
+        return islandSizes[island];
+    }
+
+    /**
+     * @return how often the islands were rebuilt
+     */
+    public int getRebuilds() {
+        return rebuilds;
+    }
+}
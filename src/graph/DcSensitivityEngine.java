@@ -0,0 +1,278 @@
+/*
+ * Copyright (C) 2015 SFINA Team
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package graph;
+
+import java.util.Arrays;
+
+/**
+ * DC power flow sensitivities of the active topology of a SparseAdjacency.
+ * The reduced susceptance matrix of the base case, without one reference
+ * node per island, is built on the pattern of the adjacency and factorized
+ * once by a sparse Cholesky in minimum degree order. Power transfer
+ * distribution factors (PTDF) and line outage distribution factors (LODF)
+ * are then formed per query by two sparse triangular solves, so the flows
+ * after a single link outage cost O(nnz(L) + m) instead of a new power flow.
+ * Flows are positive from the start to the end node unless calibrate() took
+ * over the orientations of a solver. Thread-safe once calibrated.
+ */
+public class DcSensitivityEngine {
+
+    /**
+     * Below this, 1 - PTDF of the outaged link between its own end nodes
+     * counts as zero: the link is a bridge and its outage splits an island.
+     */
+    public static final double ISLANDING_TOLERANCE = 1e-9;
+
+    private final SparseAdjacency adjacency;
+    private final double[] reactances;
+    private final boolean[] active;
+    private final int[] reduced;
+    private final SparseCholesky factor;
+    private final double[] baseFlows;
+
+    private final double[] orientations;
+
+    /**
+     * @param adjacency base case topology
+     * @param reactances per link ordinal, nonzero for active links which
+     * aren't self-loops
+     * @param injections per node ordinal, generation minus demand
+     * @param references per node ordinal, preferred reference nodes. Islands
+     * without one use their first node.
+     */
+    public DcSensitivityEngine(SparseAdjacency adjacency, double[] reactances, double[] injections, boolean[] references) {
+        this.adjacency = adjacency;
+        this.reactances = reactances.clone();
+        int n = adjacency.getNodeCount();
+        int m = adjacency.getLinkCount();
+        this.active = new boolean[m];
+        for (int l = 0; l < m; l++) {
+            active[l] = adjacency.isActive(l) && adjacency.getStartNode(l) != adjacency.getEndNode(l);
+            if (active[l] && reactances[l] == 0.0) {
+                throw new IllegalArgumentException("Link " + adjacency.getLink(l).getIndex() + " has no reactance");
+            }
+        }
+
+        // one reference per island, the others are numbered in the reduced system
+        int[] labels = new int[n];
+        int islands = adjacency.components(labels);
+        int[] islandReference = new int[islands];
+        Arrays.fill(islandReference, -1);
+        for (int i = 0; i < n; i++) {
+            if (references[i] && islandReference[labels[i]] < 0) {
+                islandReference[labels[i]] = i;
+            }
+        }
+        for (int i = 0; i < n; i++) {
+            if (islandReference[labels[i]] < 0) {
+                islandReference[labels[i]] = i;
+            }
+        }
+        this.reduced = new int[n];
+        int size = 0;
+        for (int i = 0; i < n; i++) {
+            reduced[i] = (islandReference[labels[i]] == i) ? -1 : size++;
+        }
+
+        // reduced susceptance matrix on the pattern of the adjacency
+        int[] rows = adjacency.getRows();
+        int[] columns = adjacency.getColumns();
+        double[] entries = new double[columns.length];
+        double[] diagonal = new double[size];
+        for (int l = 0; l < m; l++) {
+            if (!active[l]) {
+                continue;
+            }
+            double b = 1.0 / reactances[l];
+            entries[adjacency.getLinkEntry(l, false)] -= b;
+            entries[adjacency.getLinkEntry(l, true)] -= b;
+            int u = reduced[adjacency.getStartNode(l)];
+            int v = reduced[adjacency.getEndNode(l)];
+            if (u >= 0) {
+                diagonal[u] += b;
+            }
+            if (v >= 0) {
+                diagonal[v] += b;
+            }
+        }
+        int[] reducedRows = new int[size + 1];
+        int[] reducedColumns = new int[columns.length];
+        double[] offDiagonal = new double[columns.length];
+        int count = 0;
+        for (int i = 0; i < n; i++) {
+            if (reduced[i] < 0) {
+                continue;
+            }
+            reducedRows[reduced[i]] = count;
+            for (int k = rows[i]; k < rows[i + 1]; k++) {
+                int column = reduced[columns[k]];
+                if (column >= 0 && columns[k] != i && adjacency.isActiveEntry(k)) {
+                    reducedColumns[count] = column;
+                    offDiagonal[count++] = entries[k];
+                }
+            }
+        }
+        reducedRows[size] = count;
+        this.factor = new SparseCholesky(size, reducedRows, reducedColumns, offDiagonal, diagonal);
+
+        double[] rhs = new double[size];
+        for (int i = 0; i < n; i++) {
+            if (reduced[i] >= 0) {
+                rhs[reduced[i]] = injections[i];
+            }
+        }
+        this.baseFlows = linkFlows(factor.solve(rhs));
+
+        this.orientations = new double[m];
+        Arrays.fill(orientations, 1.0);
+    }
+
+    private double angle(double[] angles, int node) {
+        return (reduced[node] < 0) ? 0.0 : angles[reduced[node]];
+    }
+
+    private double[] linkFlows(double[] angles) {
+        double[] flows = new double[active.length];
+        for (int l = 0; l < active.length; l++) {
+            if (active[l]) {
+                flows[l] = (angle(angles, adjacency.getStartNode(l)) - angle(angles, adjacency.getEndNode(l))) / reactances[l];
+            }
+        }
+        return flows;
+    }
+
+    /**
+     * @param nodeOrdinal
+     * @return change of the flow of every link per unit injected at the node
+     * and withdrawn at the reference of its island
+     */
+    public double[] ptdf(int nodeOrdinal) {
+        double[] rhs = new double[factor.getSize()];
+        if (reduced[nodeOrdinal] >= 0) {
+            rhs[reduced[nodeOrdinal]] = 1.0;
+        }
+        return linkFlows(factor.solve(rhs));
+    }
+
+    /**
+     * @param linkOrdinal outaged link
+     * @return change of the flow of every link per unit of flow the link
+     * carried before the outage, -1 for the link itself; null if the link
+     * isn't active or its outage splits an island
+     */
+    public double[] lodf(int linkOrdinal) {
+        if (!active[linkOrdinal]) {
+            return null;
+        }
+        double[] rhs = new double[factor.getSize()];
+        int start = reduced[adjacency.getStartNode(linkOrdinal)];
+        int end = reduced[adjacency.getEndNode(linkOrdinal)];
+        if (start >= 0) {
+            rhs[start] += 1.0;
+        }
+        if (end >= 0) {
+            rhs[end] -= 1.0;
+        }
+        double[] factors = linkFlows(factor.solve(rhs));
+        double denominator = 1.0 - factors[linkOrdinal];
+        if (Math.abs(denominator) < ISLANDING_TOLERANCE) {
+            return null;
+        }
+        for (int l = 0; l < factors.length; l++) {
+            factors[l] /= denominator;
+        }
+        factors[linkOrdinal] = -1.0;
+        return factors;
+    }
+
+    /**
+     * @param linkOrdinal outaged link
+     * @return flows of all links after the outage, 0 for inactive links;
+     * null if the link isn't active or its outage splits an island
+     */
+    public double[] outageFlows(int linkOrdinal) {
+        double[] factors = lodf(linkOrdinal);
+        if (factors == null) {
+            return null;
+        }
+        double outagedFlow = baseFlows[linkOrdinal];
+        double[] flows = new double[factors.length];
+        for (int l = 0; l < flows.length; l++) {
+            if (active[l] && l != linkOrdinal) {
+                flows[l] = convert(l, baseFlows[l] + factors[l] * outagedFlow);
+            }
+        }
+        return flows;
+    }
+
+    /**
+     * @return flows of the base case, 0 for inactive links
+     */
+    public double[] getBaseFlows() {
+        double[] flows = new double[baseFlows.length];
+        for (int l = 0; l < flows.length; l++) {
+            flows[l] = convert(l, baseFlows[l]);
+        }
+        return flows;
+    }
+
+    private double convert(int linkOrdinal, double flow) {
+        return orientations[linkOrdinal] * flow;
+    }
+
+    /**
+     * Compares the magnitudes of the base case with the flows of a solver
+     * and takes over the orientation of every link from it. Flows are then
+     * positive in the direction of the solver's base flow, a negative flow
+     * after an outage means the link reversed; a solver which reports
+     * magnitudes would report its absolute value.
+     *
+     * @param flows per link ordinal, as reported by the solver
+     * @param tolerance largest difference of the magnitudes, relative to the
+     * largest flow
+     * @return false if the magnitudes differ, the engine then doesn't
+     * describe the solver's network
+     */
+    public boolean calibrate(double[] flows, double tolerance) {
+        double largest = 0.0;
+        for (int l = 0; l < baseFlows.length; l++) {
+            largest = Math.max(largest, Math.abs(flows[l]));
+        }
+        double allowed = tolerance * Math.max(largest, 1.0);
+        for (int l = 0; l < baseFlows.length; l++) {
+            if (active[l] && Math.abs(Math.abs(flows[l]) - Math.abs(baseFlows[l])) > allowed) {
+                return false;
+            }
+        }
+        for (int l = 0; l < baseFlows.length; l++) {
+            orientations[l] = (flows[l] * baseFlows[l] < 0.0) ? -1.0 : 1.0;
+        }
+        return true;
+    }
+
+    public SparseAdjacency getAdjacency() {
+        return adjacency;
+    }
+
+    /**
+     * @return number of nodes in the factorized system
+     */
+    public int getReducedSize() {
+        return factor.getSize();
+    }
+}
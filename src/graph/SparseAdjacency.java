@@ -0,0 +1,377 @@
+/*
+ * Copyright (C) 2015 SFINA Team
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package graph;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import network.FlowNetwork;
+import network.Link;
+import network.Node;
+
+/**
+ * Symmetric 0/1 adjacency of a network in CSR form, built once and updated in
+ * constant time when a link is activated or deactivated. Every pair of
+ * neighbouring nodes is one entry which counts the active links between them,
+ * so parallel links are a single 1 as in the dense adjacency matrix. The
+ * version changes with every change of the active topology, graph metrics use
+ * it to tell whether their cached results are still valid.
+ *
+ * Nodes and links are numbered in the order of the network, the arrays
+ * returned by the getters are shared and must not be modified.
+ */
+public class SparseAdjacency {
+
+    private final FlowNetwork flowNetwork;
+    private final HashMap<String, Integer> nodeOrdinals = new HashMap<>();
+    private final HashMap<String, Integer> linkOrdinals = new HashMap<>();
+    private final String[] nodeIndices;
+    private final Link[] links;
+
+    private final int[] rows;
+    private final int[] columns;
+    private final int[] activeLinks;
+    private final int[] linkNodes;
+    private final int[] linkEntries;
+    private final boolean[] linkActive;
+    private final int[] degrees;
+
+    private int activeLinkCount;
+    private long version;
+
+    /**
+     * @param flowNetwork
+     */
+    public SparseAdjacency(FlowNetwork flowNetwork) {
+        this.flowNetwork = flowNetwork;
+        int n = flowNetwork.getNodes().size();
+        this.nodeIndices = new String[n];
+        for (Node node : flowNetwork.getNodes()) {
+            nodeIndices[nodeOrdinals.size()] = node.getIndex();
+            nodeOrdinals.put(node.getIndex(), nodeOrdinals.size());
+        }
+        this.links = flowNetwork.getLinks().toArray(new Link[0]);
+
+        // all neighbours per node, sorted and without duplicates
+        int[] offsets = new int[n + 1];
+        int[] ends = new int[2 * links.length];
+        this.linkNodes = ends;
+        for (int l = 0; l < links.length; l++) {
+            linkOrdinals.put(links[l].getIndex(), l);
+            int u = nodeOrdinals.get(links[l].getStartNode().getIndex());
+            int v = nodeOrdinals.get(links[l].getEndNode().getIndex());
+            ends[2 * l] = u;
+            ends[2 * l + 1] = v;
+            offsets[u + 1]++;
+            if (u != v) {
+                offsets[v + 1]++;
+            }
+        }
+        for (int i = 0; i < n; i++) {
+            offsets[i + 1] += offsets[i];
+        }
+        int[] neighbours = new int[offsets[n]];
+        int[] fill = Arrays.copyOf(offsets, n);
+        for (int l = 0; l < links.length; l++) {
+            int u = ends[2 * l];
+            int v = ends[2 * l + 1];
+            neighbours[fill[u]++] = v;
+            if (u != v) {
+                neighbours[fill[v]++] = u;
+            }
+        }
+        this.rows = new int[n + 1];
+        int size = 0;
+        for (int i = 0; i < n; i++) {
+            Arrays.sort(neighbours, offsets[i], offsets[i + 1]);
+            rows[i] = size;
+            for (int k = offsets[i]; k < offsets[i + 1]; k++) {
+                if (k == offsets[i] || neighbours[k] != neighbours[k - 1]) {
+                    neighbours[size++] = neighbours[k];
+                }
+            }
+        }
+        rows[n] = size;
+        this.columns = Arrays.copyOf(neighbours, size);
+
+        // the two entries of every link
+        this.linkEntries = new int[2 * links.length];
+        for (int l = 0; l < links.length; l++) {
+            int u = ends[2 * l];
+            int v = ends[2 * l + 1];
+            linkEntries[2 * l] = entry(u, v);
+            linkEntries[2 * l + 1] = entry(v, u);
+        }
+        this.activeLinks = new int[size];
+        this.linkActive = new boolean[links.length];
+        this.degrees = new int[n];
+        this.activeLinkCount = 0;
+        this.version = 0;
+        for (int l = 0; l < links.length; l++) {
+            setActive(l, links[l].isActivated());
+        }
+    }
+
+    private int entry(int row, int column) {
+        return Arrays.binarySearch(columns, rows[row], rows[row + 1], column);
+    }
+
+    public FlowNetwork getFlowNetwork() {
+        return flowNetwork;
+    }
+
+    public int getNodeCount() {
+        return nodeIndices.length;
+    }
+
+    public int getLinkCount() {
+        return links.length;
+    }
+
+    public int getActiveLinkCount() {
+        return activeLinkCount;
+    }
+
+    /**
+     * @return changes with every activation or deactivation of a link
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * @param index node index
+     * @return ordinal of the node or -1
+     */
+    public int getNodeOrdinal(String index) {
+        Integer ordinal = nodeOrdinals.get(index);
+        return (ordinal == null) ? -1 : ordinal;
+    }
+
+    public String getNodeIndex(int ordinal) {
+        return nodeIndices[ordinal];
+    }
+
+    /**
+     * @param index link index
+     * @return ordinal of the link or -1
+     */
+    public int getLinkOrdinal(String index) {
+        Integer ordinal = linkOrdinals.get(index);
+        return (ordinal == null) ? -1 : ordinal;
+    }
+
+    public Link getLink(int ordinal) {
+        return links[ordinal];
+    }
+
+    public boolean isActive(int linkOrdinal) {
+        return linkActive[linkOrdinal];
+    }
+
+    /**
+     * @param linkOrdinal
+     * @return ordinal of the start node
+     */
+    public int getStartNode(int linkOrdinal) {
+        return linkNodes[2 * linkOrdinal];
+    }
+
+    /**
+     * @param linkOrdinal
+     * @return ordinal of the end node
+     */
+    public int getEndNode(int linkOrdinal) {
+        return linkNodes[2 * linkOrdinal + 1];
+    }
+
+    /**
+     * @param linkOrdinal
+     * @param fromEnd false for the entry in the row of the start node, true
+     * for the one in the row of the end node
+     * @return position of the link's entry in getColumns()
+     */
+    public int getLinkEntry(int linkOrdinal, boolean fromEnd) {
+        return linkEntries[2 * linkOrdinal + (fromEnd ? 1 : 0)];
+    }
+
+    /**
+     * @param u node ordinal
+     * @param v node ordinal
+     * @return true if at least one active link connects the two nodes
+     */
+    public boolean isAdjacent(int u, int v) {
+        int entry = entry(u, v);
+        return entry >= 0 && activeLinks[entry] > 0;
+    }
+
+    /**
+     * @param linkOrdinal
+     * @param active
+     * @return true if the link changed
+     */
+    public boolean setActive(int linkOrdinal, boolean active) {
+        if (linkActive[linkOrdinal] == active) {
+            return false;
+        }
+        linkActive[linkOrdinal] = active;
+        int change = active ? 1 : -1;
+        int first = linkEntries[2 * linkOrdinal];
+        int second = linkEntries[2 * linkOrdinal + 1];
+        updateEntry(first, linkNodes[2 * linkOrdinal], change);
+        if (second != first) {
+            updateEntry(second, linkNodes[2 * linkOrdinal + 1], change);
+        }
+        activeLinkCount += change;
+        version++;
+        return true;
+    }
+
+    private void updateEntry(int entry, int row, int change) {
+        int before = activeLinks[entry];
+        activeLinks[entry] += change;
+        if ((before == 0) != (activeLinks[entry] == 0) && columns[entry] != row) {
+            degrees[row] += change;
+        }
+    }
+
+    /**
+     * Takes over the activation of the link from the network.
+     *
+     * @param link
+     * @return true if the link changed
+     */
+    public boolean update(Link link) {
+        return setActive(linkOrdinals.get(link.getIndex()), link.isActivated());
+    }
+
+    /**
+     * Takes over the activation of all links from the network, for changes
+     * which weren't reported by update().
+     *
+     * @return number of changed links
+     */
+    public int synchronize() {
+        int changed = 0;
+        for (int l = 0; l < links.length; l++) {
+            if (setActive(l, links[l].isActivated())) {
+                changed++;
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * @return offsets of the rows in getColumns(), one more than nodes
+     */
+    public int[] getRows() {
+        return rows;
+    }
+
+    /**
+     * @return neighbour ordinals, sorted per row
+     */
+    public int[] getColumns() {
+        return columns;
+    }
+
+    /**
+     * @param entry position in getColumns()
+     * @return true if at least one link between the two nodes is active
+     */
+    public boolean isActiveEntry(int entry) {
+        return activeLinks[entry] > 0;
+    }
+
+    /**
+     * y = Ax over the active entries.
+     *
+     * @param x
+     * @param y
+     */
+    public void multiply(double[] x, double[] y) {
+        for (int i = 0; i < nodeIndices.length; i++) {
+            double sum = 0.0;
+            for (int k = rows[i]; k < rows[i + 1]; k++) {
+                if (activeLinks[k] > 0) {
+                    sum += x[columns[k]];
+                }
+            }
+            y[i] = sum;
+        }
+    }
+
+    /**
+     * @param nodeOrdinal
+     * @return number of other nodes the node has an active link to
+     */
+    public int getDegree(int nodeOrdinal) {
+        return degrees[nodeOrdinal];
+    }
+
+    public int getMaxDegree() {
+        int max = 0;
+        for (int degree : degrees) {
+            max = Math.max(max, degree);
+        }
+        return max;
+    }
+
+    public double getAverageDegree() {
+        if (degrees.length == 0) {
+            return 0.0;
+        }
+        long sum = 0;
+        for (int degree : degrees) {
+            sum += degree;
+        }
+        return (double) sum / degrees.length;
+    }
+
+    /**
+     * Labels the connected components of the active topology.
+     *
+     * @param labels component of every node, filled in
+     * @return number of components, isolated nodes included
+     */
+    public int components(int[] labels) {
+        Arrays.fill(labels, -1);
+        int[] queue = new int[nodeIndices.length];
+        int count = 0;
+        for (int start = 0; start < nodeIndices.length; start++) {
+            if (labels[start] >= 0) {
+                continue;
+            }
+            int head = 0;
+            int tail = 0;
+            queue[tail++] = start;
+            labels[start] = count;
+            while (head < tail) {
+                int node = queue[head++];
+                for (int k = rows[node]; k < rows[node + 1]; k++) {
+                    int neighbour = columns[k];
+                    if (activeLinks[k] > 0 && labels[neighbour] < 0) {
+                        labels[neighbour] = count;
+                        queue[tail++] = neighbour;
+                    }
+                }
+            }
+            count++;
+        }
+        return count;
+    }
+}
@@ -0,0 +1,226 @@
+/*
+ * Copyright (C) 2015 SFINA Team
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package graph;
+
+import java.util.Arrays;
+import java.util.PriorityQueue;
+
+/**
+ * Cholesky factorization P A P^T = L L^T of a sparse symmetric positive
+ * definite matrix. The order P is a minimum degree order of the elimination
+ * graph, which keeps the fill of L small on meshed grids, and L is stored per
+ * column with sorted row positions. A solve costs O(nnz(L)). Thread-safe.
+ */
+class SparseCholesky {
+
+    private final int size;
+    private final int[] order;
+    private final int[] positions;
+    private final int[] columnStarts;
+    private final int[] rowPositions;
+    private final double[] values;
+    private final double[] diagonal;
+
+    /**
+     * @param size number of rows
+     * @param rows offsets of the rows in columns, size + 1
+     * @param columns off-diagonal columns per row, both triangles, sorted
+     * per row
+     * @param offDiagonal values of the entries in columns
+     * @param diagonal values of the diagonal
+     * @throws IllegalArgumentException if the matrix isn't positive definite
+     */
+    SparseCholesky(int size, int[] rows, int[] columns, double[] offDiagonal, double[] diagonal) {
+        this.size = size;
+        this.order = new int[size];
+        this.positions = new int[size];
+        this.columnStarts = new int[size + 1];
+        this.rowPositions = eliminate(rows, columns);
+        this.values = new double[rowPositions.length];
+        this.diagonal = new double[size];
+
+        for (int k = 0; k < size; k++) {
+            int row = order[k];
+            this.diagonal[k] = diagonal[row];
+            for (int e = rows[row]; e < rows[row + 1]; e++) {
+                int position = positions[columns[e]];
+                if (position > k) {
+                    values[find(k, position, columnStarts[k])] += offDiagonal[e];
+                }
+            }
+        }
+        factorize();
+    }
+
+    /**
+     * Eliminates the nodes of the graph of the matrix in minimum degree
+     * order and fills in order, positions and columnStarts.
+     *
+     * @return row positions of L per column, sorted
+     */
+    private int[] eliminate(int[] rows, int[] columns) {
+        int[][] neighbours = new int[size][];
+        int[] degrees = new int[size];
+        PriorityQueue<Long> queue = new PriorityQueue<>();
+        for (int i = 0; i < size; i++) {
+            neighbours[i] = Arrays.copyOfRange(columns, rows[i], rows[i + 1]);
+            degrees[i] = neighbours[i].length;
+            queue.add(key(degrees[i], i));
+        }
+        boolean[] eliminated = new boolean[size];
+        int[] marks = new int[size];
+        int stamp = 0;
+        int nonZeros = 0;
+
+        for (int k = 0; k < size; k++) {
+            int pivot;
+            while (true) {
+                long key = queue.poll();
+                pivot = (int) key;
+                if (!eliminated[pivot] && degrees[pivot] == (int) (key >>> 32)) {
+                    break;
+                }
+            }
+            eliminated[pivot] = true;
+            order[k] = pivot;
+            positions[pivot] = k;
+
+            // the neighbours become a clique, pivot leaves their lists
+            int[] clique = Arrays.copyOf(neighbours[pivot], degrees[pivot]);
+            for (int u : clique) {
+                stamp++;
+                int[] list = neighbours[u];
+                int count = 0;
+                for (int i = 0; i < degrees[u]; i++) {
+                    if (list[i] != pivot) {
+                        marks[list[i]] = stamp;
+                        list[count++] = list[i];
+                    }
+                }
+                for (int v : clique) {
+                    if (v != u && marks[v] != stamp) {
+                        if (count == list.length) {
+                            list = Arrays.copyOf(list, Math.max(4, 2 * list.length));
+                            neighbours[u] = list;
+                        }
+                        list[count++] = v;
+                    }
+                }
+                degrees[u] = count;
+                queue.add(key(count, u));
+            }
+            neighbours[pivot] = clique;
+            columnStarts[k] = nonZeros;
+            nonZeros += clique.length;
+        }
+        columnStarts[size] = nonZeros;
+
+        // the clique of a pivot holds the rows of its column in L
+        int[] pattern = new int[nonZeros];
+        for (int k = 0; k < size; k++) {
+            int[] clique = neighbours[order[k]];
+            int start = columnStarts[k];
+            for (int i = 0; i < clique.length; i++) {
+                pattern[start + i] = positions[clique[i]];
+            }
+            Arrays.sort(pattern, start, start + clique.length);
+        }
+        return pattern;
+    }
+
+    private static long key(int degree, int node) {
+        return ((long) degree << 32) | node;
+    }
+
+    /**
+     * @return index of the row position in the column, which must exist
+     */
+    private int find(int column, int position, int from) {
+        return Arrays.binarySearch(rowPositions, from, columnStarts[column + 1], position);
+    }
+
+    /**
+     * Right-looking numeric factorization on the symbolic pattern.
+     */
+    private void factorize() {
+        for (int k = 0; k < size; k++) {
+            if (diagonal[k] <= 0.0) {
+                throw new IllegalArgumentException("Susceptance matrix is not positive definite, check the reactances");
+            }
+            double pivot = Math.sqrt(diagonal[k]);
+            diagonal[k] = pivot;
+            int end = columnStarts[k + 1];
+            for (int a = columnStarts[k]; a < end; a++) {
+                values[a] /= pivot;
+            }
+            for (int a = columnStarts[k]; a < end; a++) {
+                int i = rowPositions[a];
+                double factor = values[a];
+                diagonal[i] -= factor * factor;
+                int from = columnStarts[i];
+                for (int b = a + 1; b < end; b++) {
+                    int entry = find(i, rowPositions[b], from);
+                    values[entry] -= values[b] * factor;
+                    from = entry + 1;
+                }
+            }
+        }
+    }
+
+    /**
+     * Solves A x = rhs.
+     *
+     * @param rhs overwritten with x
+     * @return rhs
+     */
+    double[] solve(double[] rhs) {
+        double[] y = new double[size];
+        for (int k = 0; k < size; k++) {
+            y[k] = rhs[order[k]];
+        }
+        for (int k = 0; k < size; k++) {
+            double value = y[k] / diagonal[k];
+            y[k] = value;
+            for (int a = columnStarts[k]; a < columnStarts[k + 1]; a++) {
+                y[rowPositions[a]] -= values[a] * value;
+            }
+        }
+        for (int k = size - 1; k >= 0; k--) {
+            double sum = y[k];
+            for (int a = columnStarts[k]; a < columnStarts[k + 1]; a++) {
+                sum -= values[a] * y[rowPositions[a]];
+            }
+            y[k] = sum / diagonal[k];
+        }
+        for (int k = 0; k < size; k++) {
+            rhs[order[k]] = y[k];
+        }
+        return rhs;
+    }
+
+    int getSize() {
+        return size;
+    }
+
+    /**
+     * @return number of entries of L below the diagonal
+     */
+    int getNonZeros() {
+        return rowPositions.length;
+    }
+}
@@ -0,0 +1,198 @@
+/*
+ * Copyright (C) 2015 SFINA Team
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package graph;
+
+import java.util.Arrays;
+import network.FlowNetwork;
+
+/**
+ * Largest eigenvalue of the adjacency matrix of the active topology, by power
+ * iteration on a SparseAdjacency. The iteration runs on A+I, whose dominant
+ * eigenvalue is unique even for bipartite graphs, starts from the eigenvector
+ * of the previous call and is skipped if the adjacency's version didn't
+ * change since then. Not thread-safe, use one engine per thread.
+ */
+public class SpectralRadiusEngine {
+
+    public static final double DEFAULT_TOLERANCE = 1e-8;
+    public static final int DEFAULT_MAX_ITERATIONS = 100000;
+
+    /**
+     * Share of the largest entry every entry of the start vector has at
+     * least, so components which were negligible before get their weight
+     * back after a topology change.
+     */
+    private static final double WARM_START_FLOOR = 1e-3;
+
+    private final double tolerance;
+    private final int maxIterations;
+
+    private SparseAdjacency ownAdjacency;
+    private SparseAdjacency adjacency;
+    private long version;
+    private double spectralRadius;
+    private double[] eigenvector;
+    private int lastIterations;
+    private int cacheHits;
+
+    public SpectralRadiusEngine() {
+        this(DEFAULT_TOLERANCE, DEFAULT_MAX_ITERATIONS);
+    }
+
+    /**
+     * @param tolerance residual of the eigenvector, relative to the
+     * eigenvalue, at which the iteration stops
+     * @param maxIterations
+     */
+    public SpectralRadiusEngine(double tolerance, int maxIterations) {
+        this.tolerance = tolerance;
+        this.maxIterations = maxIterations;
+    }
+
+    /**
+     * For networks without a maintained adjacency. The engine keeps an
+     * adjacency of the network and synchronizes it with the links, which
+     * takes one pass over the links.
+     *
+     * @param flowNetwork
+     * @return largest eigenvalue of the symmetric 0/1 adjacency matrix of the
+     * activated links
+     */
+    public double spectralRadius(FlowNetwork flowNetwork) {
+        if (ownAdjacency == null || ownAdjacency.getFlowNetwork() != flowNetwork
+                || ownAdjacency.getNodeCount() != flowNetwork.getNodes().size()
+                || ownAdjacency.getLinkCount() != flowNetwork.getLinks().size()) {
+            ownAdjacency = new SparseAdjacency(flowNetwork);
+        } else {
+            ownAdjacency.synchronize();
+        }
+        return spectralRadius(ownAdjacency);
+    }
+
+    /**
+     * @param adjacency
+     * @return largest eigenvalue of the adjacency matrix, the cached value if
+     * the adjacency didn't change since the last call
+     */
+    public double spectralRadius(SparseAdjacency adjacency) {
+        if (adjacency == this.adjacency && adjacency.getVersion() == version) {
+            cacheHits++;
+            lastIterations = 0;
+            return spectralRadius;
+        }
+        if (adjacency != this.adjacency) {
+            reset();
+        }
+        spectralRadius = powerIteration(adjacency);
+        this.adjacency = adjacency;
+        this.version = adjacency.getVersion();
+        return spectralRadius;
+    }
+
+    private double powerIteration(SparseAdjacency adjacency) {
+        int n = adjacency.getNodeCount();
+        if (n == 0) {
+            lastIterations = 0;
+            return 0.0;
+        }
+        double[] x = startVector(n);
+        double[] y = new double[n];
+        double mu = 0.0;
+        int iteration = 0;
+        while (iteration < maxIterations) {
+            iteration++;
+            // y = (A+I)x
+            adjacency.multiply(x, y);
+            for (int i = 0; i < n; i++) {
+                y[i] += x[i];
+            }
+            mu = dot(x, y);
+            // residual ||y - mu x|| of the Rayleigh quotient
+            double residual = 0.0;
+            for (int i = 0; i < n; i++) {
+                double r = y[i] - mu * x[i];
+                residual += r * r;
+            }
+            double norm = Math.sqrt(dot(y, y));
+            for (int i = 0; i < n; i++) {
+                x[i] = y[i] / norm;
+            }
+            if (Math.sqrt(residual) <= tolerance * mu) {
+                break;
+            }
+        }
+        lastIterations = iteration;
+        eigenvector = x;
+        return mu - 1.0;
+    }
+
+    /**
+     * @return the previous eigenvector with a floor on every entry, or the
+     * normalized ones vector, with unit norm
+     */
+    private double[] startVector(int n) {
+        double[] x = new double[n];
+        if (eigenvector == null || eigenvector.length != n) {
+            Arrays.fill(x, 1.0);
+        } else {
+            double max = 0.0;
+            for (int i = 0; i < n; i++) {
+                max = Math.max(max, Math.abs(eigenvector[i]));
+            }
+            for (int i = 0; i < n; i++) {
+                x[i] = Math.max(Math.abs(eigenvector[i]), WARM_START_FLOOR * max);
+            }
+        }
+        double norm = Math.sqrt(dot(x, x));
+        for (int i = 0; i < n; i++) {
+            x[i] /= norm;
+        }
+        return x;
+    }
+
+    private static double dot(double[] a, double[] b) {
+        double sum = 0.0;
+        for (int i = 0; i < a.length; i++) {
+            sum += a[i] * b[i];
+        }
+        return sum;
+    }
+
+    /**
+     * Forgets the cached value and the eigenvector, the next call starts
+     * cold. The result then only depends on the calls after the reset.
+     */
+    public void reset() {
+        adjacency = null;
+        eigenvector = null;
+    }
+
+    /**
+     * @return power iterations of the last call, 0 if it was a cache hit
+     */
+    public int getLastIterations() {
+        return lastIterations;
+    }
+
+    /**
+     * @return number of calls answered from the cache
+     */
+    public int getCacheHits() {
+        return cacheHits;
+    }
+}
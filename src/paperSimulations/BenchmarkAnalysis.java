@@ -17,23 +17,40 @@
  */
 package paperSimulations;
 
+import agents.backend.FlowDomainAgent;
 import event.Event;
 import event.EventType;
 import event.NetworkComponent;
+import graph.ConnectivityTracker;
+import graph.DcSensitivityEngine;
+import graph.SparseAdjacency;
+import graph.SpectralRadiusEngine;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.LinkedHashMap;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import network.FlowNetwork;
 import network.Link;
 import network.LinkState;
 import network.Node;
+import network.NodeState;
+import network.State;
 import org.apache.log4j.Logger;
-import Jama.EigenvalueDecomposition;
-import Jama.Matrix;
 import agent.BenchmarkSimulationAgent;
+import agent.Phase;
 import java.util.List;
 import power.backend.PowerBackendParameter;
-import org.apache.commons.math3.stat.descriptive.rank.Max;
+import power.backend.PowerFlowType;
+import power.input.PowerLinkState;
+import power.input.PowerNodeState;
+import power.input.PowerNodeType;
 
 /**
  * Cascade if link limits violated. Domain independent.
@@ -57,223 +74,783 @@ public class BenchmarkAnalysis extends BenchmarkSimulationAgent {
 
     public ArrayList<Double> originalFlow = new ArrayList<Double>();
 
+    private int contingencyParallelism = 1;
+    private final ThreadLocal<ContingencyWorker> worker = new ThreadLocal<>();
+    private NetworkSnapshot networkSnapshot;
+    private ConnectivityTracker connectivityTracker;
+    private final SpectralRadiusEngine spectralRadiusEngine = new SpectralRadiusEngine();
+    private boolean incrementalIslands = true;
+    private DcSensitivityEngine dcSensitivity;
+    private boolean outageScreening = true;
+
+    /**
+     * Largest difference between the base case flows of the DC sensitivities
+     * and the backend, relative to the largest flow, for screening outages.
+     */
+    private static final double SCREENING_TOLERANCE = 1e-6;
+
+    /**
+     * Largest difference between the base case flows of a contingency worker
+     * and the agent, relative to the flow.
+     */
+    private static final double WORKER_FLOW_TOLERANCE = 1e-9;
+
     public BenchmarkAnalysis(String experimentID) {
         super(experimentID);
     }
 
+    /**
+     * Network, flow domain agent and events of a thread that simulates
+     * contingencies in parallel. While a worker is set, getFlowNetwork(),
+     * getFlowDomainAgent(), getEvents() and getNetworkSnapshot() return its
+     * own instances.
+     */
+    private static class ContingencyWorker {
+
+        private final FlowDomainAgent flowDomainAgent;
+        private final NetworkSnapshot snapshot;
+        private final ArrayList<Event> events = new ArrayList<>();
+        private final SpectralRadiusEngine spectralRadiusEngine = new SpectralRadiusEngine();
+        private final ConnectivityTracker connectivityTracker;
+
+        ContingencyWorker(FlowDomainAgent flowDomainAgent, NetworkSnapshot snapshot) {
+            this.flowDomainAgent = flowDomainAgent;
+            this.snapshot = snapshot;
+            this.connectivityTracker = new ConnectivityTracker(snapshot.getAdjacency());
+        }
+    }
+
+    /**
+     * Topology changes of the events of one iteration.
+     */
+    private static class TopologyChanges {
+
+        private final ArrayList<Integer> removedLinks = new ArrayList<>();
+        private boolean nodesChanged = false;
+    }
+
+    /**
+     * Everything a contingency adds to the per-contingency structures.
+     */
+    private static class ContingencyResult {
+
+        private final ArrayList<ArrayList<Double>> powerPerIteration = new ArrayList<>();
+        private final ArrayList<ArrayList<Double>> powerIncreasePerIteration = new ArrayList<>();
+        private final ArrayList<ArrayList<Double>> linkPerIteration = new ArrayList<>();
+        private final ArrayList<Double> spectralRadius = new ArrayList<>();
+        private final ArrayList<Double> linkStatus = new ArrayList<>();
+        private final ArrayList<Double> avgflowStatus = new ArrayList<>();
+        private final ArrayList<Double> avgflowIncreaseStatus = new ArrayList<>();
+        private final LinkedHashMap<FlowNetwork, Boolean> islandStatus = new LinkedHashMap<>();
+        // copies of a worker's network per iteration, saved when merged
+        private final ArrayList<FlowNetwork> iterationNetworks = new ArrayList<>();
+        private int iterations = 0;
+    }
+
     /**
      * Implements cascade as a result of overloaded links. Continues until
      * system stabilizes, i.e. no more link overloads occur. Calls
      * mitigateOverload method before finally calling linkOverload method,
      * therefore mitigation strategies can be implemented. Variable int iter =
      * getIteration()-1
+     *
+     * Every link is removed once (N-1). With a contingency parallelism above
+     * 1 the contingencies run on worker threads, each with its own network and
+     * flow domain agent from createWorkerNetwork() and
+     * createWorkerDomainAgent(), and are merged in the order of the links,
+     * so the per-contingency structures are the same as in a serial run. The
+     * workers copy their network at every iteration and the copies are saved
+     * from the agent's network when the contingency is merged, so the output
+     * data is the same as well.
+     *
+     * Between contingencies the network is restored from a NetworkSnapshot,
+     * the input data is only reloaded once at the end.
+     *
+     * With a DC backend the flows right after an outage are screened with
+     * line outage distribution factors of the base case instead of a flow
+     * analysis, see setOutageScreening() and adjustScreenedIsland().
      */
     @Override
     public void runFlowAnalysis() {
+        long start = getPhaseTimer().start();
 
-        int globalCount = 0;
-        int localCount = 0;
-
-        for (int j = 1; j < getFlowNetwork().getLinks().size() + 1; j++) {
+        int contingencies = getFlowNetwork().getLinks().size();
+        if (contingencyParallelism > 1 && contingencies > 1) {
+            runParallelContingencies(contingencies);
+        } else {
+            runSerialContingencies(contingencies);
+        }
 
-            //Sets the capacity before executing simulation
-            this.setCapacityByToleranceParameter();
+        logger.debug("Length of spectral radius " + spectralRadius.size());
+        getPhaseTimer().stop(Phase.FLOW_ANALYSIS, start);
 
-            getFlowNetwork().deactivateLink(Integer.toString(j));
+    }
 
-            //ArrayList<ArrayList<FlowNetwork>> flownetworkBuffer = new ArrayList<>();
-            int iter = 0;
-            temporalIslandStatus.put(getSimulationTime(), new LinkedHashMap());
+    private void runSerialContingencies(int contingencies) {
+        //Sets the capacity before executing simulation
+        this.setCapacityByToleranceParameter();
+
+        networkSnapshot = new NetworkSnapshot(getFlowNetwork());
+        connectivityTracker = new ConnectivityTracker(networkSnapshot.getAdjacency());
+        dcSensitivity = createDcSensitivity(networkSnapshot.getAdjacency());
+        try {
+            for (int j = 1; j < contingencies + 1; j++) {
+                restoreNetwork(networkSnapshot);
+                mergeContingency(runContingency(Integer.toString(j)));
+            }
+        } finally {
+            networkSnapshot = null;
+            connectivityTracker = null;
+            dcSensitivity = null;
+        }
 
-            // This list keeps track of islands where overloads happened
-            ArrayList<FlowNetwork> islandBuffer = new ArrayList<>();
-            islandBuffer.add(getFlowNetwork());
+        //restoring the network
+        loadInputData("time_1");
+    }
 
-            while (!islandBuffer.isEmpty()) {
-                logger.info("----> Iteration " + (getIteration()) + " <----");
+    private void runParallelContingencies(int contingencies) {
+        //Sets the capacity once, the workers take it over from the agent's network
+        this.setCapacityByToleranceParameter();
+        SparseAdjacency baseAdjacency = new SparseAdjacency(getFlowNetwork());
+        // shared by the workers, their networks have the same link and node ordinals
+        dcSensitivity = createDcSensitivity(baseAdjacency);
+
+        int threads = Math.min(contingencyParallelism, contingencies);
+        final ConcurrentLinkedQueue<ContingencyWorker> idleWorkers = new ConcurrentLinkedQueue<>();
+        for (int i = 0; i < threads; i++) {
+            idleWorkers.add(createWorker(baseAdjacency));
+        }
 
-                // Extract islands from the networks where link/node overloads happened
-                ArrayList<FlowNetwork> currentIterationIslands = new ArrayList<>();
-                for (FlowNetwork net : islandBuffer) {
-                    for (FlowNetwork subnet : net.computeIslands()) {
-                        currentIterationIslands.add(subnet);
-                    }
-                }
-                islandBuffer.clear();
-
-                // Go through all disconnected components (i.e. islands) of current iteration and perform flow analysis
-                for (FlowNetwork currentIsland : currentIterationIslands) {
-                    logger.info("treating island with " + currentIsland.getNodes().size() + " nodes");
-                    boolean converged = flowConvergenceStrategy(currentIsland);
-                    if (converged) {
-                        mitigateOverload(currentIsland);
-                        boolean linkOverloaded = linkOverload(currentIsland);
-                        boolean nodeOverloaded = nodeOverload(currentIsland);
-                        if (linkOverloaded || nodeOverloaded) {
-                            islandBuffer.add(currentIsland);
-                        } else {
-                            temporalIslandStatus.get(getSimulationTime()).put(currentIsland, true);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        ArrayList<Future<ContingencyResult>> futures = new ArrayList<>();
+        try {
+            for (int j = 1; j < contingencies + 1; j++) {
+                final String linkIndex = Integer.toString(j);
+                futures.add(executor.submit(new Callable<ContingencyResult>() {
+                    @Override
+                    public ContingencyResult call() {
+                        ContingencyWorker current = worker.get();
+                        if (current == null) {
+                            // one worker per pool thread
+                            current = idleWorkers.poll();
+                            worker.set(current);
                         }
-                    } else {
-                        updateNonConvergedIsland(currentIsland);
-                        temporalIslandStatus.get(getSimulationTime()).put(currentIsland, false);
+                        current.events.clear();
+                        restoreNetwork(current.snapshot);
+                        return runContingency(linkIndex);
                     }
-                }
+                }));
+            }
+            for (Future<ContingencyResult> future : futures) {
+                ContingencyResult result = future.get();
+                saveIterations(result);
+                mergeContingency(result);
+            }
+        } catch (ExecutionException ex) {
+            throw new IllegalStateException("Contingency analysis failed", ex.getCause());
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Contingency analysis interrupted", ex);
+        } finally {
+            executor.shutdownNow();
+            dcSensitivity = null;
+        }
 
-                //add new array to store power for the next iteration
-                powerPerIteration.add(new ArrayList<Double>());
+        //restoring the network
+        loadInputData("time_1");
+    }
 
-                for (Link lin : getFlowNetwork().getLinks()) {
-                    if (lin.getFlow() > lin.getCapacity()) {
-                        powerPerIteration.get(globalCount).add(lin.getCapacity());
-                    } else {
-                        powerPerIteration.get(globalCount).add(lin.getFlow());
+    /**
+     * Reverts the changes of the previous contingency, including the flows
+     * of the intact network.
+     *
+     * @param snapshot
+     */
+    private void restoreNetwork(NetworkSnapshot snapshot) {
+        snapshot.restore();
+    }
+
+    /**
+     * Removes the link and runs the cascade on getFlowNetwork(), which is the
+     * network of the worker if called on a worker thread.
+     *
+     * With incremental islands, islands whose removed links didn't split them
+     * according to the ConnectivityTracker are treated again as they are,
+     * only the others are recomputed by computeIslands(). This stops once a
+     * node changes its status, the tracker only follows the links.
+     *
+     * If the outage leaves the network in one island, the DC sensitivities
+     * give the flows of the first iteration. A flow analysis only runs if
+     * they overload links and the cascade goes on.
+     *
+     * @param linkIndex
+     * @return what the contingency adds to the per-contingency structures
+     */
+    private ContingencyResult runContingency(String linkIndex) {
+        ContingencyWorker current = worker.get();
+        ContingencyResult result = new ContingencyResult();
+        FlowNetwork flowNetwork = getFlowNetwork();
+        NetworkSnapshot snapshot = getNetworkSnapshot();
+        SparseAdjacency adjacency = snapshot.getAdjacency();
+
+        snapshot.deactivateLink(linkIndex);
+        // warm starts only within the contingency, so the result doesn't depend on the thread
+        getSpectralRadiusEngine().reset();
+
+        ConnectivityTracker tracker = null;
+        if (incrementalIslands) {
+            tracker = (current == null) ? connectivityTracker : current.connectivityTracker;
+            tracker.synchronize();
+        }
+        IdentityHashMap<FlowNetwork, Integer> islandNumbers = new IdentityHashMap<>();
+        Set<Integer> splitIslands = null;
+
+        int outagedLink = adjacency.getLinkOrdinal(linkIndex);
+        double[] screenedFlows = (dcSensitivity == null) ? null : dcSensitivity.outageFlows(outagedLink);
+        if (screenedFlows != null && !keepsDirections(adjacency, screenedFlows)) {
+            screenedFlows = null;
+        }
+
+        // This list keeps track of islands where overloads happened
+        ArrayList<FlowNetwork> islandBuffer = new ArrayList<>();
+        islandBuffer.add(flowNetwork);
+
+        while (!islandBuffer.isEmpty()) {
+            logger.info("----> Contingency " + linkIndex + ", iteration " + (result.iterations + 1) + " <----");
+
+            // Extract islands from the networks where link/node overloads happened
+            ArrayList<FlowNetwork> currentIterationIslands = new ArrayList<>();
+            long islandStart = getPhaseTimer().start();
+            for (FlowNetwork net : islandBuffer) {
+                Integer island = islandNumbers.get(net);
+                if (tracker != null && island != null && splitIslands != null && !splitIslands.contains(island)) {
+                    // the removed links didn't split the island, it keeps its identity
+                    currentIterationIslands.add(net);
+                    continue;
+                }
+                for (FlowNetwork subnet : net.computeIslands()) {
+                    currentIterationIslands.add(subnet);
+                    if (tracker != null && !subnet.getNodes().isEmpty()) {
+                        String nodeIndex = subnet.getNodes().iterator().next().getIndex();
+                        islandNumbers.put(subnet, tracker.getIsland(adjacency.getNodeOrdinal(nodeIndex)));
                     }
                 }
+            }
+            getPhaseTimer().stop(Phase.ISLANDS, islandStart);
+            islandBuffer.clear();
+
+            boolean screened = result.iterations == 0 && screenedFlows != null && currentIterationIslands.size() == 1;
+            if (screened) {
+                long screeningStart = getPhaseTimer().start();
+                // like a flow analysis of the island, which doesn't touch inactive links
+                for (int l = 0; l < screenedFlows.length; l++) {
+                    Link screenedLink = adjacency.getLink(l);
+                    if (screenedLink.isActivated() && screenedLink.getFlow() != screenedFlows[l]) {
+                        snapshot.setFlow(screenedLink, screenedFlows[l]);
+                    }
+                }
+                getPhaseTimer().stop(Phase.OUTAGE_SCREENING, screeningStart);
+            }
 
-                //add new array to store power increase for the next iteration
-                powerIncreasePerIteration.add(new ArrayList<Double>());
-                System.out.println("SIZE of original flow....." + originalFlow.size());
-                for (Link lin : getFlowNetwork().getLinks()) {
-                    if (lin.getFlow() > lin.getCapacity()) {
-                        powerIncreasePerIteration.get(globalCount).add(1.0);
+            // Go through all disconnected components (i.e. islands) of current iteration and perform flow analysis
+            for (FlowNetwork currentIsland : currentIterationIslands) {
+                logger.info("treating island with " + currentIsland.getNodes().size() + " nodes");
+                long convergenceStart = getPhaseTimer().start();
+                boolean converged = screened && adjustScreenedIsland(currentIsland);
+                if (!converged) {
+                    snapshot.recordFlowAnalysis(currentIsland);
+                    converged = flowConvergenceStrategy(currentIsland);
+                }
+                getPhaseTimer().stop(Phase.FLOW_CONVERGENCE, convergenceStart);
+                if (converged) {
+                    mitigateOverload(currentIsland);
+                    boolean linkOverloaded = linkOverload(currentIsland);
+                    boolean nodeOverloaded = nodeOverload(currentIsland);
+                    if (linkOverloaded || nodeOverloaded) {
+                        islandBuffer.add(currentIsland);
                     } else {
-                        powerIncreasePerIteration.get(globalCount).add((lin.getFlow() - originalFlow.get(Integer.parseInt(lin.getIndex()) - 1)) / (lin.getCapacity() - originalFlow.get(Integer.parseInt(lin.getIndex()) - 1)));
+                        result.islandStatus.put(currentIsland, true);
                     }
+                } else {
+                    updateNonConvergedIsland(currentIsland);
+                    result.islandStatus.put(currentIsland, false);
                 }
+            }
 
-                //add new array to store link for next iteration
-                linkPerIteration.add(new ArrayList<Double>());
-
-                for (Link lin : getFlowNetwork().getLinks()) {
-
-                    linkPerIteration.get(globalCount).add((lin.isActivated()) ? 1.0 : 0.0);
-
+            //store power, power increase and link status for this iteration
+            ArrayList<Double> power = new ArrayList<>();
+            ArrayList<Double> powerIncrease = new ArrayList<>();
+            ArrayList<Double> link = new ArrayList<>();
+            for (Link lin : flowNetwork.getLinks()) {
+                double flow = originalFlow.get(Integer.parseInt(lin.getIndex()) - 1);
+                if (lin.getFlow() > lin.getCapacity()) {
+                    power.add(lin.getCapacity());
+                    powerIncrease.add(1.0);
+                } else {
+                    power.add(lin.getFlow());
+                    powerIncrease.add((lin.getFlow() - flow) / (lin.getCapacity() - flow));
                 }
+                link.add((lin.isActivated()) ? 1.0 : 0.0);
+            }
+            result.powerPerIteration.add(power);
+            result.powerIncreasePerIteration.add(powerIncrease);
+            result.linkPerIteration.add(link);
 
-                //store spectral radius in each iteration
-                spectralRadius.add(getSpectralRadius());
+            //store spectral radius in each iteration
+            result.spectralRadius.add(getSpectralRadius());
 
-                globalCount++;
+            // Go to next iteration if there were islands added to it
+            result.iterations++;
 
+            TopologyChanges changes = new TopologyChanges();
+            if (current == null) {
                 // Output data at current iteration and go to next one
                 // Hacking the iterations to work with new SFINA core without need
                 // to change much here
-                setIteration(getIteration()+1);
+                setIteration(getIteration() + 1);
                 saveOutputData();
 
-                // Go to next iteration if there were islands added to it
-                iter++;
-
                 // deactivate all overloaded nodes/links
+                List<State> changedElements = recordEvents(snapshot, getEvents());
                 this.executeAllEvents();
+                for (State element : changedElements) {
+                    if (element instanceof Link) {
+                        updateAdjacency(adjacency, (Link) element, changes);
+                    } else {
+                        changes.nodesChanged = true;
+                    }
+                }
+            } else {
+                result.iterationNetworks.add(NetworkSnapshot.copy(flowNetwork));
+                executeWorkerEvents(current, changes);
+            }
 
+            if (tracker != null) {
+                if (changes.nodesChanged) {
+                    tracker = null;
+                } else {
+                    splitIslands = tracker.linksRemoved(changes.removedLinks);
+                }
             }
 
-            //get link sttaus
-            getLinkStatus(localCount);
+        }
 
-            localCount++;
+        //get link status
+        for (Link lin : flowNetwork.getLinks()) {
+            result.linkStatus.add((lin.isActivated()) ? 1.0 : 0.0);
+            if (lin.isActivated() == false) {
+                result.avgflowStatus.add(1.0);
+                result.avgflowIncreaseStatus.add(1.0);
+            } else {
+                double flow = originalFlow.get(Integer.parseInt(lin.getIndex()) - 1);
+                result.avgflowStatus.add(lin.getFlow() / lin.getCapacity());
+                result.avgflowIncreaseStatus.add((lin.getFlow() - flow) / (lin.getCapacity() - flow));
+            }
+        }
+        return result;
+    }
 
-            logFinalIslands();
+    /**
+     * Saves the output data of every iteration of a contingency simulated by
+     * a worker, as the serial run does, by putting the worker's copies on the
+     * agent's network. Called in the order of the links.
+     *
+     * @param result
+     */
+    private void saveIterations(ContingencyResult result) {
+        for (FlowNetwork iterationNetwork : result.iterationNetworks) {
+            NetworkSnapshot.copyState(iterationNetwork, getFlowNetwork());
+            setIteration(getIteration() + 1);
+            saveOutputData();
+        }
+        result.iterationNetworks.clear();
+    }
 
-            macroCount.add(iter);
+    /**
+     * Appends the contingency to the per-contingency structures, called in
+     * the order of the links.
+     *
+     * @param result
+     */
+    private void mergeContingency(ContingencyResult result) {
+        powerPerIteration.addAll(result.powerPerIteration);
+        powerIncreasePerIteration.addAll(result.powerIncreasePerIteration);
+        linkPerIteration.addAll(result.linkPerIteration);
+        spectralRadius.addAll(result.spectralRadius);
+        linkStatusPerContingency.add(result.linkStatus);
+        avgflowStatusPerContingency.add(result.avgflowStatus);
+        avgflowIncreaseStatusPerContingency.add(result.avgflowIncreaseStatus);
+        macroCount.add(result.iterations);
+        temporalIslandStatus.put(getSimulationTime(), result.islandStatus);
+        logFinalIslands();
+    }
 
-            //restoring the network
-            loadInputData("time_1");
+    /**
+     * Records what the events of the current simulation time are going to
+     * change, so the snapshot can revert it after executeAllEvents().
+     *
+     * @param snapshot
+     * @param events
+     * @return the links and nodes the events activate or deactivate
+     */
+    private List<State> recordEvents(NetworkSnapshot snapshot, List<Event> events) {
+        ArrayList<State> elements = new ArrayList<>();
+        for (Event event : events) {
+            if (event.getTime() != getSimulationTime()) {
+                continue;
+            }
+            State element = getEventElement(snapshot.getFlowNetwork(), event);
+            if (event.getParameter() == LinkState.STATUS || event.getParameter() == NodeState.STATUS) {
+                snapshot.recordActivation(element);
+                elements.add(element);
+            } else {
+                snapshot.recordProperty(element, event.getParameter());
+            }
+        }
+        return elements;
+    }
 
+    /**
+     * Takes over the activation of a link changed by executeAllEvents().
+     */
+    private static void updateAdjacency(SparseAdjacency adjacency, Link link, TopologyChanges changes) {
+        int ordinal = adjacency.getLinkOrdinal(link.getIndex());
+        if (adjacency.update(link) && !link.isActivated()) {
+            changes.removedLinks.add(ordinal);
         }
-        System.out.print("Length of Spectral Radius...." + spectralRadius.size() + "..");
+    }
 
+    /**
+     * Applies the events the worker's contingency created to its network, in
+     * the same way executeAllEvents() applies them to the agent's network.
+     * Workers only execute status changes of links and nodes and flow events
+     * of the current time step, other events stop the contingency analysis.
+     *
+     * @param current
+     * @param changes filled with the removed links and node changes
+     * @throws UnsupportedOperationException for any other event
+     */
+    private void executeWorkerEvents(ContingencyWorker current, TopologyChanges changes) {
+        long start = getPhaseTimer().start();
+        for (Event event : current.events) {
+            if (event.getTime() != getSimulationTime()) {
+                throw new UnsupportedOperationException("Contingency workers only execute events of the current time step, not at " + event.getTime() + ", use setContingencyParallelism(1)");
+            }
+            State element = getEventElement(current.snapshot.getFlowNetwork(), event);
+            if (event.getEventType() == EventType.TOPOLOGY && event.getParameter() == LinkState.STATUS && element instanceof Link) {
+                Link link = (Link) element;
+                boolean removed = link.isActivated() && !(Boolean) event.getValue();
+                current.snapshot.setActivated(link, (Boolean) event.getValue());
+                if (removed) {
+                    changes.removedLinks.add(current.snapshot.getAdjacency().getLinkOrdinal(link.getIndex()));
+                }
+            } else if (event.getEventType() == EventType.TOPOLOGY && event.getParameter() == NodeState.STATUS && element instanceof Node) {
+                current.snapshot.setActivated((Node) element, (Boolean) event.getValue());
+                changes.nodesChanged = true;
+            } else if (event.getEventType() == EventType.FLOW && element != null) {
+                current.snapshot.replacePropertyElement(element, event.getParameter(), event.getValue());
+            } else {
+                throw new UnsupportedOperationException("Contingency workers don't execute " + event.getEventType() + " events of " + event.getParameter() + " on " + event.getNetworkComponent() + " " + event.getComponentID() + ", use setContingencyParallelism(1)");
+            }
+        }
+        current.events.clear();
+        getPhaseTimer().stop(Phase.EVENTS, start);
     }
 
-    public double getSpectralRadius() {
-        final int N = getFlowNetwork().getNodes().size();
-        EigenvalueDecomposition E
-                = new EigenvalueDecomposition(calculateAdjacencyMatrix());
-        double[] d = E.getRealEigenvalues();
-
-        Max maximum = new Max();
-        double maxEigen = maximum.evaluate(d, 0, d.length);
-        //double maxEigen = d[N - 1];
-        return maxEigen;
-        //return 0.0;
-    }
-
-public Matrix calculateAdjacencyMatrix(){
-        
-        
-        List<Integer> fromNode = new ArrayList<Integer>();
-        List<Integer> toNode = new ArrayList<Integer>();
-        
-        for(Link link:this.getFlowNetwork().getLinks()){
-            if (link.isActivated()==true){
-                fromNode.add(Integer.parseInt(link.getStartNode().getIndex())-1);
-                toNode.add(Integer.parseInt(link.getEndNode().getIndex())-1);
-                
+    private static State getEventElement(FlowNetwork flowNetwork, Event event) {
+        if (event.getNetworkComponent() == NetworkComponent.LINK) {
+            return flowNetwork.getLink(event.getComponentID());
+        }
+        return flowNetwork.getNode(event.getComponentID());
+    }
+
+    /**
+     * Creates the network of a worker thread for parallel contingencies, by
+     * default a copy of the agent's network. The capacities are taken over
+     * from the agent's network afterwards.
+     *
+     * @return a network which is only used by one worker
+     */
+    protected FlowNetwork createWorkerNetwork() {
+        return NetworkSnapshot.copy(getFlowNetwork());
+    }
+
+    /**
+     * Creates the flow domain agent of a worker thread for parallel
+     * contingencies, by default a new instance of the class of the agent's
+     * flow domain agent with a copy of its domain parameters. The workers run
+     * their flow analyses concurrently, so it must not share state with the
+     * agent's or other workers' flow domain agents.
+     *
+     * @return a flow domain agent which is only used by one worker
+     */
+    protected FlowDomainAgent createWorkerDomainAgent() {
+        FlowDomainAgent domainAgent = getFlowDomainAgent();
+        try {
+            FlowDomainAgent workerAgent = domainAgent.getClass().newInstance();
+            workerAgent.setDomainParameters(new HashMap<>(domainAgent.getDomainParameters()));
+            return workerAgent;
+        } catch (InstantiationException | IllegalAccessException ex) {
+            throw new IllegalStateException("Can't create a " + domainAgent.getClass().getSimpleName() + " for a contingency worker, override createWorkerDomainAgent()", ex);
+        }
+    }
+
+    /**
+     * Creates a worker and checks that its network has the links and nodes
+     * of the agent's network in the same order and that its flow analysis
+     * gives the same flows.
+     *
+     * @param baseAdjacency adjacency of the agent's network with solved
+     * flows and set capacities
+     * @return the worker with solved flows
+     */
+    private ContingencyWorker createWorker(SparseAdjacency baseAdjacency) {
+        FlowNetwork baseNetwork = baseAdjacency.getFlowNetwork();
+        FlowNetwork network = createWorkerNetwork();
+        FlowDomainAgent domainAgent = createWorkerDomainAgent();
+        if (network == baseNetwork || domainAgent == getFlowDomainAgent()) {
+            throw new IllegalStateException("Contingency workers need their own network and flow domain agent");
+        }
+        SparseAdjacency adjacency = new SparseAdjacency(network);
+        if (adjacency.getNodeCount() != baseAdjacency.getNodeCount() || adjacency.getLinkCount() != baseAdjacency.getLinkCount()) {
+            throw new IllegalStateException("The worker network has " + adjacency.getNodeCount() + " nodes and " + adjacency.getLinkCount() + " links instead of " + baseAdjacency.getNodeCount() + " and " + baseAdjacency.getLinkCount());
+        }
+        for (int i = 0; i < adjacency.getNodeCount(); i++) {
+            if (!adjacency.getNodeIndex(i).equals(baseAdjacency.getNodeIndex(i))) {
+                throw new IllegalStateException("The worker network has node " + adjacency.getNodeIndex(i) + " where the agent's network has " + baseAdjacency.getNodeIndex(i));
             }
         }
-        int[] fromNodeArray=toIntegerArray(fromNode);
-        int[] toNodeArray=toIntegerArray(toNode);
-               
-    
-        //final int n = 30;
-         final int N = getFlowNetwork().getNodes().size();
-     
-        // adjacency matrix initialized
-        int[][] adjacencyMatrix = new int[N][N];
-     
-        // create symmetric adjacency matrix by exploring the topology of the outputted flowNetwork
-        int fromNodeLength = fromNodeArray.length;
-        for(int i=0; i<fromNodeLength; i++){
-            int u_axis = fromNodeArray[i];
-            int v_axis = toNodeArray[i];
-            adjacencyMatrix[u_axis][v_axis] = 1;
-            adjacencyMatrix[v_axis][u_axis] = 1; //to make it symmetric
-        }
-        
-        //converting into a type suitable for Jama
-        double[][] doubleAdjacencyMatrix = new double[adjacencyMatrix.length][adjacencyMatrix[0].length];
-
-        for(int i = 0; i < adjacencyMatrix.length; i++)
-        {
-            for(int j = 0; j < adjacencyMatrix[0].length; j++)
-                doubleAdjacencyMatrix[i][j] = (double) adjacencyMatrix[i][j];
-        }
-    
-     
-         Matrix M = new Matrix(doubleAdjacencyMatrix);
-         
-         return M;
-    }
-    
-    public void getLinkStatus(int total_it) {
-        //linkStatusPerContingencyBool.add(new ArrayList<Boolean>());
-        linkStatusPerContingency.add(new ArrayList<Double>());
-        avgflowStatusPerContingency.add(new ArrayList<Double>());
-        avgflowIncreaseStatusPerContingency.add(new ArrayList<Double>());
-
-        for (Link lin : getFlowNetwork().getLinks()) {
-            //linkStatusPerContingencyBool.get(index).add(lin.isActivated());
-            linkStatusPerContingency.get(total_it).add((lin.isActivated()) ? 1.0 : 0.0);
-            if (lin.isActivated() == false) {
+        for (int l = 0; l < adjacency.getLinkCount(); l++) {
+            Link link = adjacency.getLink(l);
+            Link baseLink = baseAdjacency.getLink(l);
+            if (!link.getIndex().equals(baseLink.getIndex()) || link.isActivated() != baseLink.isActivated()) {
+                throw new IllegalStateException("The worker network differs from the agent's network at link " + baseLink.getIndex());
+            }
+            link.setCapacity(baseLink.getCapacity());
+        }
+        domainAgent.flowAnalysis(network);
+        for (int l = 0; l < adjacency.getLinkCount(); l++) {
+            double flow = adjacency.getLink(l).getFlow();
+            double baseFlow = baseAdjacency.getLink(l).getFlow();
+            if (Math.abs(flow - baseFlow) > WORKER_FLOW_TOLERANCE * Math.max(1.0, Math.abs(baseFlow))) {
+                throw new IllegalStateException("The flow analysis of a worker gives " + flow + " instead of " + baseFlow + " at link " + baseAdjacency.getLink(l).getIndex());
+            }
+        }
+        return new ContingencyWorker(domainAgent, new NetworkSnapshot(network));
+    }
 
-                avgflowStatusPerContingency.get(total_it).add(1.0);
-                avgflowIncreaseStatusPerContingency.get(total_it).add(1.0);
-            } else {
-                avgflowStatusPerContingency.get(total_it).add(lin.getFlow() / lin.getCapacity());
-                avgflowIncreaseStatusPerContingency.get(total_it).add((lin.getFlow() - originalFlow.get(Integer.parseInt(lin.getIndex()) - 1)) / (lin.getCapacity() - originalFlow.get(Integer.parseInt(lin.getIndex()) - 1)));
-                //System.out.println("Plese output array of original flow.."+avgflowIncreaseStatusPerContingency);
-                //System.out.println("Plese output array of original flow increase.."+avgflowStatusPerContingency);
+    @Override
+    public FlowNetwork getFlowNetwork() {
+        ContingencyWorker current = worker.get();
+        return (current == null) ? super.getFlowNetwork() : current.snapshot.getFlowNetwork();
+    }
+
+    @Override
+    public FlowDomainAgent getFlowDomainAgent() {
+        ContingencyWorker current = worker.get();
+        return (current == null) ? super.getFlowDomainAgent() : current.flowDomainAgent;
+    }
+
+    @Override
+    public ArrayList<Event> getEvents() {
+        ContingencyWorker current = worker.get();
+        return (current == null) ? super.getEvents() : current.events;
+    }
+
+    /**
+     * @return the snapshot the network is restored to after the current
+     * contingency, null outside of runFlowAnalysis()
+     */
+    protected NetworkSnapshot getNetworkSnapshot() {
+        ContingencyWorker current = worker.get();
+        return (current == null) ? networkSnapshot : current.snapshot;
+    }
+
+    /**
+     * @return adjacency of the active topology, kept up to date while the
+     * contingencies run, for graph metrics. Null outside of
+     * runFlowAnalysis().
+     */
+    protected SparseAdjacency getSparseAdjacency() {
+        NetworkSnapshot snapshot = getNetworkSnapshot();
+        return (snapshot == null) ? null : snapshot.getAdjacency();
+    }
+
+    /**
+     * Changes a property of a link or node so that it is reverted before the
+     * next contingency. Use it instead of State.replacePropertyElement in
+     * strategies called during the cascade.
+     *
+     * @param element link or node
+     * @param property
+     * @param value
+     */
+    protected void replacePropertyElement(State element, Enum property, Object value) {
+        NetworkSnapshot snapshot = getNetworkSnapshot();
+        if (snapshot == null) {
+            element.replacePropertyElement(property, value);
+        } else {
+            snapshot.replacePropertyElement(element, property, value);
+        }
+    }
+
+    /**
+     * Changes the capacity of a link so that it is reverted before the next
+     * contingency.
+     *
+     * @param link
+     * @param capacity
+     */
+    protected void setCapacity(Link link, double capacity) {
+        NetworkSnapshot snapshot = getNetworkSnapshot();
+        if (snapshot == null) {
+            link.setCapacity(capacity);
+        } else {
+            snapshot.setCapacity(link, capacity);
+        }
+    }
+
+    public boolean isIncrementalIslands() {
+        return incrementalIslands;
+    }
+
+    /**
+     * @param incrementalIslands true to only recompute islands which were
+     * split by the removed links, false to call computeIslands() on every
+     * overloaded island
+     */
+    public void setIncrementalIslands(boolean incrementalIslands) {
+        this.incrementalIslands = incrementalIslands;
+    }
+
+    public boolean isOutageScreening() {
+        return outageScreening;
+    }
+
+    /**
+     * @param outageScreening true to take the flows right after an outage
+     * from the DC sensitivities of the base case if the backend solves DC
+     * power flows, false to always run a flow analysis
+     */
+    public void setOutageScreening(boolean outageScreening) {
+        this.outageScreening = outageScreening;
+    }
+
+    /**
+     * DC sensitivities of the base case, if the backend solves DC power flows
+     * and the sensitivities reproduce its flows.
+     *
+     * @param adjacency of the base case
+     * @return the sensitivities or null if the outages need a flow analysis
+     */
+    private DcSensitivityEngine createDcSensitivity(SparseAdjacency adjacency) {
+        if (!outageScreening || !supportsScreening() || !PowerFlowType.DC.equals(getFlowDomainAgent().getDomainParameters().get(PowerBackendParameter.FLOW_TYPE))) {
+            return null;
+        }
+        double[] reactances = new double[adjacency.getLinkCount()];
+        double[] flows = new double[adjacency.getLinkCount()];
+        for (int l = 0; l < adjacency.getLinkCount(); l++) {
+            Link link = adjacency.getLink(l);
+            Object reactance = link.getProperty(PowerLinkState.REACTANCE);
+            reactances[l] = (reactance == null) ? 0.0 : (Double) reactance;
+            flows[l] = link.getFlow();
+        }
+        double[] injections = new double[adjacency.getNodeCount()];
+        boolean[] references = new boolean[adjacency.getNodeCount()];
+        for (int i = 0; i < adjacency.getNodeCount(); i++) {
+            Node node = adjacency.getFlowNetwork().getNode(adjacency.getNodeIndex(i));
+            if (node.isActivated()) {
+                injections[i] = getPower(node, PowerNodeState.POWER_GENERATION_REAL) - getPower(node, PowerNodeState.POWER_DEMAND_REAL);
             }
+            references[i] = PowerNodeType.SLACK_BUS.equals(node.getProperty(PowerNodeState.TYPE));
+        }
+        DcSensitivityEngine engine;
+        try {
+            engine = new DcSensitivityEngine(adjacency, reactances, injections, references);
+        } catch (IllegalArgumentException ex) {
+            logger.info("No outage screening: " + ex.getMessage());
+            return null;
+        }
+        if (!engine.calibrate(flows, SCREENING_TOLERANCE)) {
+            logger.info("No outage screening, the DC sensitivities don't reproduce the flows of the backend");
+            return null;
+        }
+        return engine;
+    }
+
+    /**
+     * The backend may report signed flows or magnitudes, both agree with the
+     * screened flows only while no link reverses its direction. Links whose
+     * base flow is within the screening tolerance of zero have no direction
+     * and are ignored.
+     *
+     * @param adjacency of the restored base case
+     * @param flows screened flows per link ordinal
+     * @return true if every active link keeps the direction of its base flow
+     */
+    private static boolean keepsDirections(SparseAdjacency adjacency, double[] flows) {
+        double largest = 0.0;
+        for (int l = 0; l < flows.length; l++) {
+            largest = Math.max(largest, Math.abs(adjacency.getLink(l).getFlow()));
+        }
+        double negligible = SCREENING_TOLERANCE * Math.max(largest, 1.0);
+        for (int l = 0; l < flows.length; l++) {
+            Link link = adjacency.getLink(l);
+            double baseFlow = link.getFlow();
+            if (link.isActivated() && Math.abs(baseFlow) > negligible && flows[l] * baseFlow < 0.0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static double getPower(Node node, PowerNodeState property) {
+        Object power = node.getProperty(property);
+        return (power == null) ? 0.0 : (Double) power;
+    }
 
+    public int getContingencyParallelism() {
+        return contingencyParallelism;
+    }
+
+    /**
+     * @param contingencyParallelism number of threads simulating
+     * contingencies, 1 (the default) runs them serially on the agent's
+     * network.
+     */
+    public void setContingencyParallelism(int contingencyParallelism) {
+        if (contingencyParallelism < 1) {
+            throw new IllegalArgumentException("Contingency parallelism must be at least 1: " + contingencyParallelism);
         }
+        this.contingencyParallelism = contingencyParallelism;
+    }
+
+    /**
+     * @return largest eigenvalue of the adjacency matrix of the active
+     * topology, computed by the sparse SpectralRadiusEngine of the network
+     */
+    public double getSpectralRadius() {
+        SparseAdjacency adjacency = getSparseAdjacency();
+        if (adjacency == null) {
+            return getSpectralRadiusEngine().spectralRadius(getFlowNetwork());
+        }
+        return getSpectralRadiusEngine().spectralRadius(adjacency);
+    }
+
+    private SpectralRadiusEngine getSpectralRadiusEngine() {
+        ContingencyWorker current = worker.get();
+        return (current == null) ? spectralRadiusEngine : current.spectralRadiusEngine;
     }
 
     /**
      * Domain specific strategy and/or necessary adjustments before backend is
      * executed.
      *
+     * Subclasses which override this either return false from
+     * supportsScreening() or repeat their adjustments in
+     * adjustScreenedIsland(). Flow analyses must only solve the given island,
+     * the snapshot records its links and nodes before the call.
+     *
      * @param flowNetwork
      * @return true if flow analysis finally converged, else false
      */
@@ -281,6 +858,28 @@ public Matrix calculateAdjacencyMatrix(){
         return getFlowDomainAgent().flowAnalysis(flowNetwork);
     }
 
+    /**
+     * @return false if the outages must always go through
+     * flowConvergenceStrategy(), e.g. because it changes the network in ways
+     * adjustScreenedIsland() doesn't repeat
+     */
+    protected boolean supportsScreening() {
+        return true;
+    }
+
+    /**
+     * Takes the place of flowConvergenceStrategy() for an island whose flows
+     * after the outage were screened, so they are not solved again. Applies
+     * the adjustments the strategy makes after a converged flow analysis.
+     *
+     * @param flowNetwork island with the screened flows
+     * @return true if the screened flows stand as converged, false to run
+     * flowConvergenceStrategy() on the island
+     */
+    protected boolean adjustScreenedIsland(FlowNetwork flowNetwork) {
+        return true;
+    }
+
     /**
      * Method to mitigate overload. Strategy to respond to (possible)
      * overloading can be implemented here. This method is called before the
@@ -413,11 +1012,4 @@ public Matrix calculateAdjacencyMatrix(){
         return (Double) this.getFlowDomainAgent().getDomainParameters().get(PowerBackendParameter.TOLERANCE_PARAMETER);
     }
 
-    private int[] toIntegerArray(List<Integer> fromNode) {
-        int[] NodeArray = new int[fromNode.size()];
-        for(int i=0;i<NodeArray.length;i++)
-            NodeArray[i] = fromNode.get(i);
-        return NodeArray;
-    }
-
 }
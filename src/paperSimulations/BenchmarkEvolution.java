@@ -17,14 +17,16 @@
  */
 package paperSimulations;
 
+import agent.ContingencyMetric;
+import agent.MetricFrame;
 import agent.Metrics;
+import agent.Phase;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.PrintStream;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
-import java.util.HashMap;
 import java.util.HashSet;
 import network.FlowNetwork;
 import network.Link;
@@ -36,7 +38,6 @@ import power.input.PowerNodeType;
 import power.backend.PowerFlowType;
 import power.backend.PowerBackendParameter;
 import power.input.PowerNodeState;
-import protopeer.measurement.MeasurementFileDumper;
 import protopeer.measurement.MeasurementLog;
 import protopeer.measurement.MeasurementLoggerListener;
 import protopeer.util.quantities.Time;
@@ -54,6 +55,8 @@ public class BenchmarkEvolution extends BenchmarkAnalysis {
 
     public BenchmarkEvolution(String experimentID) {
         super(experimentID);
+        getFlowMetricCollector().disable(Metrics.OVERLOADED_LINKS);
+        getFlowMetricCollector().disable(Metrics.OVERLOADED_NODES);
     }
 
     @Override
@@ -78,10 +81,7 @@ public class BenchmarkEvolution extends BenchmarkAnalysis {
             }
         }
         // inherited from BenchmarkSFINAAgent
-        this.calculateActivationStatus();
-        this.calculateFlow();
-        this.calculateUtilization();
-        this.calculateTotalNumber();
+        this.collectMetrics();
         this.saveSimuTime();
         this.saveIterationNumber();
     }
@@ -213,15 +213,12 @@ public class BenchmarkEvolution extends BenchmarkAnalysis {
 
             // or for example to get all generators and the slack bus if it exists
             ArrayList<Node> generators = new ArrayList();
-            Node slack = null;
             for (Node node : flowNetwork.getNodes()) {
                 if (node.getProperty(PowerNodeState.TYPE).equals(PowerNodeType.GENERATOR)) {
                     generators.add(node);
                 }
-                if (node.getProperty(PowerNodeState.TYPE).equals(PowerNodeType.SLACK_BUS)) {
-                    slack = node;
-                }
             }
+            Node slack = getSlack(flowNetwork);
 
             // To sort generators by max power output
             Collections.sort(generators, new Comparator<Node>() {
@@ -238,7 +235,7 @@ public class BenchmarkEvolution extends BenchmarkAnalysis {
                 } else {
                     slack = generators.get(0);
                     // this is how one changes node/link properties
-                    slack.replacePropertyElement(PowerNodeState.TYPE, PowerNodeType.SLACK_BUS);
+                    replacePropertyElement(slack, PowerNodeState.TYPE, PowerNodeType.SLACK_BUS);
                     generators.remove(0);
                 }
             }
@@ -260,7 +257,7 @@ public class BenchmarkEvolution extends BenchmarkAnalysis {
                         converged = false;
                         if (generators.size() > 0) { // make next bus a slack
                             slack = generators.get(0);
-                            slack.replacePropertyElement(PowerNodeState.TYPE, PowerNodeType.SLACK_BUS);
+                            replacePropertyElement(slack, PowerNodeState.TYPE, PowerNodeType.SLACK_BUS);
                             generators.remove(0);
                         } else {
                             logger.info("....no more generators");
@@ -277,17 +274,45 @@ public class BenchmarkEvolution extends BenchmarkAnalysis {
         return converged;
     }
 
+    /**
+     * Same adjustments as flowConvergenceStrategy() after a converged DC flow
+     * analysis: the slack is balanced and turned back into a generator.
+     */
+    @Override
+    protected boolean adjustScreenedIsland(FlowNetwork flowNetwork) {
+        Node slack = getSlack(flowNetwork);
+        if (flowNetwork.getNodes().size() == 1 || slack == null) {
+            return false;
+        }
+        GenerationBalancing(flowNetwork, slack);
+        return true;
+    }
+
+    /**
+     * @param flowNetwork
+     * @return the last slack bus of the island or null
+     */
+    private Node getSlack(FlowNetwork flowNetwork) {
+        Node slack = null;
+        for (Node node : flowNetwork.getNodes()) {
+            if (node.getProperty(PowerNodeState.TYPE).equals(PowerNodeType.SLACK_BUS)) {
+                slack = node;
+            }
+        }
+        return slack;
+    }
+
     private boolean GenerationBalancing(FlowNetwork flowNetwork, Node slack) {
         boolean limViolation = false;
         if ((Double) slack.getProperty(PowerNodeState.POWER_GENERATION_REAL) > (Double) slack.getProperty(PowerNodeState.POWER_MAX_REAL)) {
-            slack.replacePropertyElement(PowerNodeState.POWER_GENERATION_REAL, slack.getProperty(PowerNodeState.POWER_MAX_REAL));
+            replacePropertyElement(slack, PowerNodeState.POWER_GENERATION_REAL, slack.getProperty(PowerNodeState.POWER_MAX_REAL));
             limViolation = true;
         }
         if ((Double) slack.getProperty(PowerNodeState.POWER_GENERATION_REAL) < (Double) slack.getProperty(PowerNodeState.POWER_MIN_REAL)) {
-            slack.replacePropertyElement(PowerNodeState.POWER_GENERATION_REAL, slack.getProperty(PowerNodeState.POWER_MIN_REAL));
+            replacePropertyElement(slack, PowerNodeState.POWER_GENERATION_REAL, slack.getProperty(PowerNodeState.POWER_MIN_REAL));
             limViolation = true;
         }
-        slack.replacePropertyElement(PowerNodeState.TYPE, PowerNodeType.GENERATOR);
+        replacePropertyElement(slack, PowerNodeState.TYPE, PowerNodeType.GENERATOR);
         if (limViolation) {
             logger.info("....generator limit violated at node " + slack.getIndex());
         } else {
@@ -304,8 +329,8 @@ public class BenchmarkEvolution extends BenchmarkAnalysis {
         while (!converged && loadIter < maxLoadShedIterations) {
             logger.info("....Doing load shedding at iteration " + loadIter);
             for (Node node : flowNetwork.getNodes()) {
-                node.replacePropertyElement(PowerNodeState.POWER_DEMAND_REAL, (Double) node.getProperty(PowerNodeState.POWER_DEMAND_REAL) * (1.0 - loadReductionFactor));
-                node.replacePropertyElement(PowerNodeState.POWER_DEMAND_REACTIVE, (Double) node.getProperty(PowerNodeState.POWER_DEMAND_REACTIVE) * (1.0 - loadReductionFactor));
+                replacePropertyElement(node, PowerNodeState.POWER_DEMAND_REAL, (Double) node.getProperty(PowerNodeState.POWER_DEMAND_REAL) * (1.0 - loadReductionFactor));
+                replacePropertyElement(node, PowerNodeState.POWER_DEMAND_REACTIVE, (Double) node.getProperty(PowerNodeState.POWER_DEMAND_REACTIVE) * (1.0 - loadReductionFactor));
             }
             converged = getFlowDomainAgent().flowAnalysis(flowNetwork);
             loadIter++;
@@ -315,31 +340,45 @@ public class BenchmarkEvolution extends BenchmarkAnalysis {
 
     @Override
     public void scheduleMeasurements() {
-        setMeasurementDumper(new MeasurementFileDumper(getPeersLogDirectory() + this.getExperimentID() + "/peer-" + getPeer().getIndexNumber()));
+        setMeasurementLogFile(getPeersLogDirectory() + this.getExperimentID() + "/peer-" + getPeer().getIndexNumber());
         getPeer().getMeasurementLogger().addMeasurementLoggerListener(new MeasurementLoggerListener() {
             public void measurementEpochEnded(MeasurementLog log, int epochNumber) {
+                long start = getPhaseTimer().start();
                 int simulationTime = getSimulationTime();
                 if (simulationTime >= 1) {
                     log.logTagSet(simulationTime, new HashSet(getFlowNetwork().getLinks()), simulationTime);
                     //before 0 to 42 or 114
+                    MetricFrame linkFrame = getLinkMetricStore().getFrame(simulationTime, getIteration());
+                    log.log(simulationTime, Metrics.CONTINGENCIES, getFlowNetwork().getLinks().size());
                     for (int i = 0; i < getFlowNetwork().getLinks().size(); i++) { 
+                        // packed tags of the contingency, the values cover the whole time step
+                        Long utilizationTag = ContingencyMetric.UTILIZATION.tag(i, ContingencyMetric.TIME_STEP);
+                        Long powerTag = ContingencyMetric.POWER.tag(i, ContingencyMetric.TIME_STEP);
+                        Long powerIncreaseTag = ContingencyMetric.POWER_INCREASE.tag(i, ContingencyMetric.TIME_STEP);
+                        Long linkTag = ContingencyMetric.LINK.tag(i, ContingencyMetric.TIME_STEP);
                         for (Link link : getFlowNetwork().getLinks()) {
-                            HashMap<Metrics, Object> linkMetrics = getTemporalLinkMetrics().get(simulationTime).get(getIteration()).get(link.getIndex());
-                            log.log(simulationTime, "utilization" + Integer.toString(i), ((Double) powerPerIteration.get(i).get(Integer.parseInt(link.getIndex()) - 1)) / link.getCapacity());
-                            log.log(simulationTime, "power" + Integer.toString(i), ((Double) powerPerIteration.get(i).get(Integer.parseInt(link.getIndex()) - 1)));
-                            log.log(simulationTime, "powerincrease" + Integer.toString(i), ((Double) powerIncreasePerIteration.get(i).get(Integer.parseInt(link.getIndex()) - 1)));
-                            log.log(simulationTime, "link" + Integer.toString(i), ((Double) linkPerIteration.get(i).get(Integer.parseInt(link.getIndex()) - 1)));
-                            log.log(simulationTime, Metrics.TOTAL_LINKS, ((Double) linkMetrics.get(Metrics.TOTAL_LINKS)));
+                            log.log(simulationTime, utilizationTag, ((Double) powerPerIteration.get(i).get(Integer.parseInt(link.getIndex()) - 1)) / link.getCapacity());
+                            log.log(simulationTime, powerTag, ((Double) powerPerIteration.get(i).get(Integer.parseInt(link.getIndex()) - 1)));
+                            log.log(simulationTime, powerIncreaseTag, ((Double) powerIncreasePerIteration.get(i).get(Integer.parseInt(link.getIndex()) - 1)));
+                            log.log(simulationTime, linkTag, ((Double) linkPerIteration.get(i).get(Integer.parseInt(link.getIndex()) - 1)));
+                            log.log(simulationTime, Metrics.TOTAL_LINKS, linkFrame.get(Metrics.TOTAL_LINKS, getLinkMetricStore().ordinalOf(link.getIndex())));
                         }
-                        log.log(simulationTime, "linkremoved" + Integer.toString(i), ((Integer) linktoIterations.get(i)));
-                        log.log(simulationTime, "spectralRadius" + Integer.toString(i), ((Double) spectralRadius.get(i)));
+                        log.log(simulationTime, ContingencyMetric.LINK_REMOVED.tag(i, ContingencyMetric.TIME_STEP), ((Integer) linktoIterations.get(i)));
+                        log.log(simulationTime, ContingencyMetric.SPECTRAL_RADIUS.tag(i, ContingencyMetric.TIME_STEP), ((Double) spectralRadius.get(i)));
+                    }
+                    MetricFrame systemFrame = getSystemMetricStore().getFrame(simulationTime, getIteration());
+                    if (systemFrame != null && systemFrame.isPresent(TOT_SIMU_TIME, SYSTEM)) {
+                        log.log(simulationTime, Metrics.TOT_SIMU_TIME, systemFrame.getDouble(TOT_SIMU_TIME, SYSTEM));
+                    }
+                    if (systemFrame != null && systemFrame.isPresent(NEEDED_ITERATIONS, SYSTEM)) {
+                        log.log(simulationTime, Metrics.NEEDED_ITERATIONS, systemFrame.getInt(NEEDED_ITERATIONS, SYSTEM, 0));
                     }
-                    HashMap<Metrics, Object> sysMetrics = getTemporalSystemMetrics().get(getIteration()).get(simulationTime);
-                    log.log(simulationTime, Metrics.TOT_SIMU_TIME, ((Double) sysMetrics.get(Metrics.TOT_SIMU_TIME)));
-                    log.log(simulationTime, Metrics.NEEDED_ITERATIONS, ((Integer) sysMetrics.get(Metrics.NEEDED_ITERATIONS)));
+                    getPhaseTimer().logAndReset(log, simulationTime);
                 }
-                getMeasurementDumper().measurementEpochEnded(log, simulationTime);
+                dumpMeasurements(log, simulationTime);
                 log.shrink(simulationTime, simulationTime + 1);
+                evictTemporalMetrics(simulationTime);
+                getPhaseTimer().stop(Phase.MEASUREMENT, start);
 
             }
         });
@@ -5,6 +5,7 @@
 
 package paperSimulations;
 
+import agent.ContingencyMetric;
 import agent.Metrics;
 import java.io.BufferedWriter;
 import java.io.File;
@@ -12,8 +13,13 @@ import java.io.FileWriter;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 import org.apache.log4j.Logger;
+import protopeer.measurement.Aggregate;
 import protopeer.measurement.LogReplayer;
+import replayer.PeerLogLoader;
 import protopeer.measurement.MeasurementLog;
 import protopeer.measurement.MeasurementLoggerListener;
 
@@ -31,6 +37,8 @@ public class LogReplayerPerIteration {
 
     private LogReplayer replayer;
     private final String coma=",";
+    private final ArrayList<ContingencyTags> packedTags=new ArrayList<>();
+    private final ArrayList<ContingencyTags> stringTags=new ArrayList<>();
 
     private PrintWriter lineLossOut;
     private PrintWriter flowOut;
@@ -67,27 +75,9 @@ public class LogReplayerPerIteration {
     }
 
     public void loadLogs(String directory, int minLoad, int maxLoad){
-        try{
-            File folder = new File(directory);
-            File[] listOfFiles = folder.listFiles();
-            for (int i = 0; i < listOfFiles.length; i++) {
-                if (listOfFiles[i].isFile()&&!listOfFiles[i].isHidden()) {
-                    MeasurementLog loadedLog=replayer.loadLogFromFile(directory+listOfFiles[i].getName());
-                    MeasurementLog replayedLog=this.getMemorySupportedLog(loadedLog, minLoad, maxLoad);
-                    replayer.mergeLog(replayedLog);
-                }
-                else
-                    if (listOfFiles[i].isDirectory()) {
-                        //do sth else
-                    }
-            }
-        }
-        catch(IOException io){
-
-        }
-        catch(ClassNotFoundException ex){
-
-        }
+        MeasurementLog mergedLog=new PeerLogLoader(minLoad, maxLoad).load(PeerLogLoader.listPeerLogs(directory));
+        if(mergedLog!=null)
+            replayer.mergeLog(mergedLog);
     }
     
     private void prepareResultOutput(){
@@ -176,49 +166,162 @@ public class LogReplayerPerIteration {
         
     }
 
-    private void calculateEpochResults(MeasurementLog log, int epochNumber){
-        
-        //tags.add("a1");tags.add("a2");tags.add("a3");
-        //BenchmarkAnalysis smh = new BenchmarkAnalysis(expID, 0, 1000);
-        //smh.powerPerIteration;
-                
-        for (int i=0;i<203;i++){ //42 or 114 is the total number of iterations, 41 is total number of lines
+    /**
+     * @param log
+     * @param epochNumber
+     * @param packed
+     * @return the number of contingencies logged by BenchmarkEvolution,
+     * counted from the tags for logs written before it was logged
+     */
+    private int getContingencies(MeasurementLog log, int epochNumber, boolean packed){
+        Aggregate count=log.getAggregateByEpochNumber(epochNumber, Metrics.CONTINGENCIES);
+        if(count.getNumValues()>0)
+            return (int)count.getMax();
+        int contingencies=0;
+        while(log.getAggregateByEpochNumber(epochNumber, getTags(packed, contingencies).linkRemoved).getNumValues()>0)
+            contingencies++;
+        return contingencies;
+    }
+    
+    /**
+     * @param log
+     * @param epochNumber
+     * @return false for logs written before the tags were packed
+     */
+    private boolean isPacked(MeasurementLog log, int epochNumber){
+        return log.getAggregateByEpochNumber(epochNumber, ContingencyMetric.LINK_REMOVED.tag(0, ContingencyMetric.TIME_STEP)).getNumValues()>0;
+    }
+    
+    private ContingencyTags getTags(boolean packed, int contingency){
+        ArrayList<ContingencyTags> tags=packed ? packedTags : stringTags;
+        while(tags.size()<=contingency)
+            tags.add(new ContingencyTags(tags.size(), packed));
+        return tags.get(contingency);
+    }
+
+    private void calculateEpochResults(final MeasurementLog log, final int epochNumber){
+        // the same for all contingencies of the epoch
         double epochNum=epochNumber;
         double avgLineLossesPerEpoch=1-(log.getAggregateByEpochNumber(epochNumber, Metrics.ACTIVATED_LINKS).getSum()/log.getAggregateByEpochNumber(epochNumber, Metrics.TOTAL_LINKS).getSum());
-        double avgFlowPerEpoch=log.getAggregateByEpochNumber(epochNumber, "power"+Integer.toString(i)).getAverage();
-        double avgUtilizationPerEpoch=log.getAggregateByEpochNumber(epochNumber, "utilization"+Integer.toString(i)).getAverage();
         double relPowerLossBetweenEpochs = 1.0-log.getAggregateByEpochNumber(epochNumber, Metrics.NODE_FINAL_LOADING).getSum()/log.getAggregateByEpochNumber(epochNumber, Metrics.NODE_INIT_LOADING).getSum();
         double relPowerLossSinceEpoch1 = 1.0-log.getAggregateByEpochNumber(epochNumber, Metrics.NODE_FINAL_LOADING).getSum()/log.getAggregateByEpochNumber(1, Metrics.NODE_INIT_LOADING).getSum();
         double simuTimePerEpoch = log.getAggregateByEpochNumber(epochNumber, Metrics.TOT_SIMU_TIME).getMax();
-        double neededIterations = log.getAggregateByEpochNumber(epochNumber, "linkremoved"+Integer.toString(i)).getMax();
-        double spectralRadiusPerIteration = log.getAggregateByEpochNumber(epochNumber, "spectralRadius"+Integer.toString(i)).getMax();
         double islands = log.getAggregateByEpochNumber(epochNumber, Metrics.ISLANDS).getMax();
         double isolNodes = log.getAggregateByEpochNumber(epochNumber, Metrics.ISOLATED_NODES).getMax();
-        double linkStatusPerIteration = log.getAggregateByEpochNumber(epochNumber, "link"+Integer.toString(i)).getAverage();
-        double powerIncreasePerIteration = log.getAggregateByEpochNumber(epochNumber, "powerincrease"+Integer.toString(i)).getAverage();
         
-        if(writeToFile){
-            lineLossOut.print(avgLineLossesPerEpoch + coma);
-            flowOut.print(avgFlowPerEpoch + coma);
-            utilizationOut.print(avgUtilizationPerEpoch + coma);
-            epochPowerLossOut.print(relPowerLossBetweenEpochs + coma);
-            totalPowerLossOut.print(relPowerLossSinceEpoch1 + coma);
-            totalTimeOut.print(simuTimePerEpoch + coma);
-            iterations.print(neededIterations + coma);
-            islandNum.print(islands + coma);
-            isolatedNodes.print(isolNodes + coma);
-            spectralRadius.print(spectralRadiusPerIteration + coma);
-            linkStatus.print(linkStatusPerIteration + coma);
-            powerIncrease.print(powerIncreasePerIteration + coma);
-            
+        boolean packed=isPacked(log, epochNumber);
+        int contingencies=getContingencies(log, epochNumber, packed);
+        getTags(packed, contingencies);
+        final ContingencyResult[] results=new ContingencyResult[contingencies];
+        ForkJoinPool.commonPool().invoke(new ContingencyTask(log, epochNumber, packed ? packedTags : stringTags, results, 0, contingencies));
+        
+        for (int i=0;i<contingencies;i++){
+            ContingencyResult result=results[i];
+            if(writeToFile){
+                lineLossOut.print(avgLineLossesPerEpoch + coma);
+                flowOut.print(result.flow + coma);
+                utilizationOut.print(result.utilization + coma);
+                epochPowerLossOut.print(relPowerLossBetweenEpochs + coma);
+                totalPowerLossOut.print(relPowerLossSinceEpoch1 + coma);
+                totalTimeOut.print(simuTimePerEpoch + coma);
+                iterations.print(result.linkRemoved + coma);
+                islandNum.print(islands + coma);
+                isolatedNodes.print(isolNodes + coma);
+                spectralRadius.print(result.spectralRadius + coma);
+                linkStatus.print(result.linkStatus + coma);
+                powerIncrease.print(result.powerIncrease + coma);
+            }
+            if(logger.isInfoEnabled())
+                logger.info(String.format("%20.0f%20.2f%20.2f%20.2f%20.0f%20.0f%20.4f%20.4f%20.0f%20.0f\n",epochNum, avgLineLossesPerEpoch, result.flow, result.utilization, result.powerIncrease, result.spectralRadius, result.linkStatus, simuTimePerEpoch, result.linkRemoved, relPowerLossBetweenEpochs, relPowerLossSinceEpoch1, islands, isolNodes));
         }
-        logger.info(String.format("%20.0f%20.2f%20.2f%20.2f%20.0f%20.0f%20.4f%20.4f%20.0f%20.0f\n",epochNum, avgLineLossesPerEpoch, avgFlowPerEpoch, avgUtilizationPerEpoch,powerIncreasePerIteration, spectralRadiusPerIteration, linkStatusPerIteration,simuTimePerEpoch, neededIterations, relPowerLossBetweenEpochs, relPowerLossSinceEpoch1, islands, isolNodes));
-          //logger.info(String.format("%20.0f%20.2f%20.2f%20.2f%20.0f%20.0f%20.4f%20.4f%20.0f%20.0f\n",epochNum, avgFlowPerEpoch));
-
     }
+    
+    /**
+     * Tags logged by BenchmarkEvolution for one contingency, built once.
+     * Either packed ContingencyMetric tags or the strings of older logs.
+     */
+    private static class ContingencyTags{
+        
+        final Object power;
+        final Object utilization;
+        final Object linkRemoved;
+        final Object spectralRadius;
+        final Object link;
+        final Object powerIncrease;
+        
+        ContingencyTags(int contingency, boolean packed){
+            if(packed){
+                this.power=ContingencyMetric.POWER.tag(contingency, ContingencyMetric.TIME_STEP);
+                this.utilization=ContingencyMetric.UTILIZATION.tag(contingency, ContingencyMetric.TIME_STEP);
+                this.linkRemoved=ContingencyMetric.LINK_REMOVED.tag(contingency, ContingencyMetric.TIME_STEP);
+                this.spectralRadius=ContingencyMetric.SPECTRAL_RADIUS.tag(contingency, ContingencyMetric.TIME_STEP);
+                this.link=ContingencyMetric.LINK.tag(contingency, ContingencyMetric.TIME_STEP);
+                this.powerIncrease=ContingencyMetric.POWER_INCREASE.tag(contingency, ContingencyMetric.TIME_STEP);
+                return;
+            }
+            String i=Integer.toString(contingency);
+            this.power="power"+i;
+            this.utilization="utilization"+i;
+            this.linkRemoved="linkremoved"+i;
+            this.spectralRadius="spectralRadius"+i;
+            this.link="link"+i;
+            this.powerIncrease="powerincrease"+i;
+        }
+    }
+    
+    private static class ContingencyResult{
+        
+        double flow;
+        double utilization;
+        double linkRemoved;
+        double spectralRadius;
+        double linkStatus;
+        double powerIncrease;
     }
-    private MeasurementLog getMemorySupportedLog(MeasurementLog log, int minLoad, int maxLoad){
-        return log.getSubLog(minLoad, maxLoad);
+    
+    /**
+     * Reads the aggregates of a range of contingencies, split in halves on
+     * the fork-join pool. The log is only read.
+     */
+    private static class ContingencyTask extends RecursiveAction{
+        
+        private static final int THRESHOLD=16;
+        
+        private final MeasurementLog log;
+        private final int epochNumber;
+        private final ArrayList<ContingencyTags> tags;
+        private final ContingencyResult[] results;
+        private final int from;
+        private final int to;
+        
+        ContingencyTask(MeasurementLog log, int epochNumber, ArrayList<ContingencyTags> tags, ContingencyResult[] results, int from, int to){
+            this.log=log;
+            this.epochNumber=epochNumber;
+            this.tags=tags;
+            this.results=results;
+            this.from=from;
+            this.to=to;
+        }
+        
+        @Override
+        protected void compute(){
+            if(to-from>THRESHOLD){
+                int middle=(from+to)>>>1;
+                invokeAll(new ContingencyTask(log, epochNumber, tags, results, from, middle), new ContingencyTask(log, epochNumber, tags, results, middle, to));
+                return;
+            }
+            for(int i=from; i<to; i++){
+                ContingencyTags tag=tags.get(i);
+                ContingencyResult result=new ContingencyResult();
+                result.flow=log.getAggregateByEpochNumber(epochNumber, tag.power).getAverage();
+                result.utilization=log.getAggregateByEpochNumber(epochNumber, tag.utilization).getAverage();
+                result.linkRemoved=log.getAggregateByEpochNumber(epochNumber, tag.linkRemoved).getMax();
+                result.spectralRadius=log.getAggregateByEpochNumber(epochNumber, tag.spectralRadius).getMax();
+                result.linkStatus=log.getAggregateByEpochNumber(epochNumber, tag.link).getAverage();
+                result.powerIncrease=log.getAggregateByEpochNumber(epochNumber, tag.powerIncrease).getAverage();
+                results[i]=result;
+            }
+        }
     }
 
     public void printGlobalMetricsTags(){
@@ -0,0 +1,288 @@
+/*
+ * Copyright (C) 2015 SFINA Team
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package paperSimulations;
+
+import graph.SparseAdjacency;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+import network.FlowNetwork;
+import network.Link;
+import network.Node;
+import network.State;
+
+/**
+ * In-memory snapshot of a network with an undo log. Changes made through the
+ * snapshot are recorded and restore() reverts them in reverse order, so
+ * going back to the snapshot costs as much as what was changed instead of
+ * reloading the network from disk. What a flow analysis writes, the flows
+ * and properties of the links and nodes it solves, is recorded by
+ * recordFlowAnalysis() before it runs and put back by restore(), so the
+ * network needn't be solved again. The snapshot keeps a SparseAdjacency of
+ * the network up to date with the link activations it changes.
+ */
+public class NetworkSnapshot {
+
+    /**
+     * Changes which aren't a property of the element.
+     */
+    private enum Field {
+        ACTIVATION,
+        CAPACITY,
+        FLOW,
+        SOLVED_STATE
+    }
+
+    /**
+     * Old value of a property, activation, capacity or flow of a link or
+     * node.
+     */
+    private static class Change {
+
+        private final State element;
+        private final Enum property;
+        private final Object value;
+
+        Change(State element, Enum property, Object value) {
+            this.element = element;
+            this.property = property;
+            this.value = value;
+        }
+    }
+
+    /**
+     * Properties and flow of a link or node before a flow analysis.
+     */
+    private static class SolvedState {
+
+        private final HashMap<Enum, Object> properties;
+        private final double flow;
+
+        SolvedState(HashMap<Enum, Object> properties, double flow) {
+            this.properties = properties;
+            this.flow = flow;
+        }
+    }
+
+    private final FlowNetwork flowNetwork;
+    private final SparseAdjacency adjacency;
+    private final ArrayList<Change> changes = new ArrayList<>();
+    // elements whose solved state is in the changes
+    private final Set<State> solvedElements = Collections.newSetFromMap(new IdentityHashMap<State, Boolean>());
+
+    /**
+     * @param flowNetwork the network in the state it is restored to, with
+     * solved flows
+     */
+    public NetworkSnapshot(FlowNetwork flowNetwork) {
+        this.flowNetwork = flowNetwork;
+        this.adjacency = new SparseAdjacency(flowNetwork);
+    }
+
+    public FlowNetwork getFlowNetwork() {
+        return flowNetwork;
+    }
+
+    /**
+     * @return adjacency of the network, call update(link) on it after
+     * activating or deactivating a link elsewhere
+     */
+    public SparseAdjacency getAdjacency() {
+        return adjacency;
+    }
+
+    /**
+     * @return number of changes since the snapshot or the last restore
+     */
+    public int getChanges() {
+        return changes.size();
+    }
+
+    public void deactivateLink(String index) {
+        setActivated(flowNetwork.getLink(index), false);
+    }
+
+    public void activateLink(String index) {
+        setActivated(flowNetwork.getLink(index), true);
+    }
+
+    public void setActivated(Link link, boolean activated) {
+        recordActivation(link);
+        link.setActivated(activated);
+        adjacency.update(link);
+    }
+
+    public void setActivated(Node node, boolean activated) {
+        recordActivation(node);
+        node.setActivated(activated);
+    }
+
+    public void setCapacity(Link link, double capacity) {
+        changes.add(new Change(link, Field.CAPACITY, link.getCapacity()));
+        link.setCapacity(capacity);
+    }
+
+    public void setFlow(Link link, double flow) {
+        changes.add(new Change(link, Field.FLOW, link.getFlow()));
+        link.setFlow(flow);
+    }
+
+    /**
+     * Records the properties and flows of the links and nodes a flow analysis
+     * is about to solve, once per element between two restores.
+     *
+     * @param flowNetwork the network or the island which is solved next
+     */
+    public void recordFlowAnalysis(FlowNetwork flowNetwork) {
+        for (Node node : flowNetwork.getNodes()) {
+            recordSolvedState(node);
+        }
+        for (Link link : flowNetwork.getLinks()) {
+            recordSolvedState(link);
+        }
+    }
+
+    private void recordSolvedState(State element) {
+        if (solvedElements.add(element)) {
+            double flow = (element instanceof Link) ? ((Link) element).getFlow() : 0.0;
+            changes.add(new Change(element, Field.SOLVED_STATE, new SolvedState(new HashMap<>(element.getProperties()), flow)));
+        }
+    }
+
+    public void replacePropertyElement(State element, Enum property, Object value) {
+        recordProperty(element, property);
+        element.replacePropertyElement(property, value);
+    }
+
+    /**
+     * Records the activation of a link or node which is about to be changed
+     * elsewhere, e.g. by executing an event.
+     *
+     * @param element link or node
+     */
+    public void recordActivation(State element) {
+        boolean activated = (element instanceof Link) ? ((Link) element).isActivated() : ((Node) element).isActivated();
+        changes.add(new Change(element, Field.ACTIVATION, activated));
+    }
+
+    /**
+     * Records a property which is about to be changed elsewhere.
+     *
+     * @param element link or node
+     * @param property
+     */
+    public void recordProperty(State element, Enum property) {
+        changes.add(new Change(element, property, element.getProperty(property)));
+    }
+
+    /**
+     * Reverts all changes in reverse order, including the properties and
+     * flows recorded before flow analyses.
+     *
+     * @return number of reverted changes
+     */
+    public int restore() {
+        int reverted = changes.size();
+        for (int i = changes.size() - 1; i >= 0; i--) {
+            Change change = changes.get(i);
+            if (change.property == Field.ACTIVATION) {
+                if (change.element instanceof Link) {
+                    ((Link) change.element).setActivated((Boolean) change.value);
+                    adjacency.update((Link) change.element);
+                } else {
+                    ((Node) change.element).setActivated((Boolean) change.value);
+                }
+            } else if (change.property == Field.CAPACITY) {
+                ((Link) change.element).setCapacity((Double) change.value);
+            } else if (change.property == Field.FLOW) {
+                ((Link) change.element).setFlow((Double) change.value);
+            } else if (change.property == Field.SOLVED_STATE) {
+                SolvedState state = (SolvedState) change.value;
+                change.element.getProperties().clear();
+                change.element.getProperties().putAll(state.properties);
+                if (change.element instanceof Link) {
+                    ((Link) change.element).setFlow(state.flow);
+                }
+            } else if (change.value == null) {
+                change.element.getProperties().remove(change.property);
+            } else {
+                change.element.replacePropertyElement(change.property, change.value);
+            }
+        }
+        changes.clear();
+        solvedElements.clear();
+        return reverted;
+    }
+
+    /**
+     * @param flowNetwork
+     * @return a network with copies of the nodes and links and their
+     * properties
+     */
+    public static FlowNetwork copy(FlowNetwork flowNetwork) {
+        FlowNetwork copy = new FlowNetwork();
+        for (Node node : flowNetwork.getNodes()) {
+            Node nodeCopy = new Node(node.getIndex(), node.isActivated());
+            for (Map.Entry<Enum, Object> property : node.getProperties().entrySet()) {
+                nodeCopy.addProperty(property.getKey(), property.getValue());
+            }
+            copy.addNode(nodeCopy);
+        }
+        for (Link link : flowNetwork.getLinks()) {
+            Link linkCopy = new Link(link.getIndex(), link.isActivated(), copy.getNode(link.getStartNode().getIndex()), copy.getNode(link.getEndNode().getIndex()));
+            for (Map.Entry<Enum, Object> property : link.getProperties().entrySet()) {
+                linkCopy.addProperty(property.getKey(), property.getValue());
+            }
+            copy.addLink(linkCopy);
+        }
+        copyState(flowNetwork, copy);
+        return copy;
+    }
+
+    /**
+     * Takes over the activation, properties, capacities and flows of the
+     * links and nodes of one network to those with the same index in the
+     * other.
+     *
+     * @param from
+     * @param to a network with the same links and nodes
+     */
+    public static void copyState(FlowNetwork from, FlowNetwork to) {
+        for (Node node : from.getNodes()) {
+            Node target = to.getNode(node.getIndex());
+            target.setActivated(node.isActivated());
+            if (!target.getProperties().equals(node.getProperties())) {
+                target.getProperties().clear();
+                target.getProperties().putAll(node.getProperties());
+            }
+        }
+        for (Link link : from.getLinks()) {
+            Link target = to.getLink(link.getIndex());
+            target.setActivated(link.isActivated());
+            if (!target.getProperties().equals(link.getProperties())) {
+                target.getProperties().clear();
+                target.getProperties().putAll(link.getProperties());
+            }
+            target.setCapacity(link.getCapacity());
+            target.setFlow(link.getFlow());
+        }
+    }
+}
@@ -0,0 +1,235 @@
+/*
+ * Copyright (C) 2015 SFINA Team
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package replayer;
+
+import agent.AggregateTag;
+import agent.Aggregates;
+import agent.MetricAggregate;
+import agent.Metrics;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.DoubleBuffer;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.TreeMap;
+import protopeer.measurement.Aggregate;
+import protopeer.measurement.MeasurementLog;
+
+/**
+ * Aggregates of link, node and system metrics by epoch, iteration and
+ * metric. Each cell is read from the logs once, all result columns are then
+ * answered from the cube. Cubes of different peers are combined with
+ * mergeWith.
+ */
+public class AggregateCube implements Serializable {
+
+    /**
+     * Iteration of metrics which are logged once per epoch, e.g.
+     * NEEDED_ITERATIONS.
+     */
+    public static final int EPOCH = 0;
+
+    // Epoch, Iteration, Metric, Aggregate
+    private final TreeMap<Integer, TreeMap<Integer, EnumMap<Metrics, MetricAggregate>>> cells;
+
+    public AggregateCube() {
+        this.cells = new TreeMap<>();
+    }
+
+    /**
+     * @param epoch
+     * @param iteration
+     * @param metric
+     * @return the aggregate, a new empty one if nothing was logged
+     */
+    public MetricAggregate get(int epoch, int iteration, Metrics metric) {
+        MetricAggregate aggregate = find(epoch, iteration, metric);
+        return (aggregate == null) ? new MetricAggregate() : aggregate;
+    }
+
+    /**
+     * @param epoch
+     * @param iteration
+     * @param metric
+     * @return true if the cell was read
+     */
+    public boolean contains(int epoch, int iteration, Metrics metric) {
+        return find(epoch, iteration, metric) != null;
+    }
+
+    private MetricAggregate find(int epoch, int iteration, Metrics metric) {
+        TreeMap<Integer, EnumMap<Metrics, MetricAggregate>> iterations = cells.get(epoch);
+        if (iterations == null) {
+            return null;
+        }
+        EnumMap<Metrics, MetricAggregate> metrics = iterations.get(iteration);
+        return (metrics == null) ? null : metrics.get(metric);
+    }
+
+    private MetricAggregate cell(int epoch, int iteration, Metrics metric) {
+        TreeMap<Integer, EnumMap<Metrics, MetricAggregate>> iterations = cells.get(epoch);
+        if (iterations == null) {
+            iterations = new TreeMap<>();
+            cells.put(epoch, iterations);
+        }
+        EnumMap<Metrics, MetricAggregate> metrics = iterations.get(iteration);
+        if (metrics == null) {
+            metrics = new EnumMap<>(Metrics.class);
+            iterations.put(iteration, metrics);
+        }
+        MetricAggregate aggregate = metrics.get(metric);
+        if (aggregate == null) {
+            aggregate = new MetricAggregate();
+            metrics.put(metric, aggregate);
+        }
+        return aggregate;
+    }
+
+    /**
+     * Adds a single value to the cell.
+     */
+    public void add(int epoch, int iteration, Metrics metric, double value) {
+        cell(epoch, iteration, metric).add(value);
+    }
+
+    /**
+     * Merges the aggregate into the cell.
+     */
+    public void add(int epoch, int iteration, Metrics metric, MetricAggregate aggregate) {
+        cell(epoch, iteration, metric).merge(aggregate);
+    }
+
+    /**
+     * Merges all cells of the other cube into this one.
+     *
+     * @param other
+     */
+    public void mergeWith(AggregateCube other) {
+        for (Integer epoch : other.cells.keySet()) {
+            for (Integer iteration : other.cells.get(epoch).keySet()) {
+                for (Map.Entry<Metrics, MetricAggregate> entry : other.cells.get(epoch).get(iteration).entrySet()) {
+                    add(epoch, iteration, entry.getKey(), entry.getValue());
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the epochs with at least one cell
+     */
+    public NavigableSet<Integer> getEpochs() {
+        return cells.navigableKeySet();
+    }
+
+    /**
+     * @param epoch
+     * @return the number of iterations of the epoch, the maximum of
+     * NEEDED_ITERATIONS
+     */
+    public int getIterations(int epoch) {
+        return (int) get(epoch, EPOCH, Metrics.NEEDED_ITERATIONS).getMax();
+    }
+
+    /**
+     * Reads the cells of the epoch from the log: NEEDED_ITERATIONS once, then
+     * each of the given metrics once per iteration. Cells which are already in
+     * the cube are kept.
+     *
+     * @param log
+     * @param elements per element values of binary logs or null
+     * @param epoch
+     * @param metrics
+     */
+    public void read(MeasurementLog log, AggregateCube elements, int epoch, Metrics... metrics) {
+        if (!contains(epoch, EPOCH, Metrics.NEEDED_ITERATIONS)) {
+            add(epoch, EPOCH, Metrics.NEEDED_ITERATIONS, toMetricAggregate(log.getAggregateByEpochNumber(epoch, Metrics.NEEDED_ITERATIONS)));
+        }
+        int iterations = getIterations(epoch);
+        for (int iteration = 1; iteration <= iterations; iteration++) {
+            read(log, elements, epoch, iteration, metrics);
+        }
+    }
+
+    /**
+     * Reads the given metrics of one iteration from the log. Uses the
+     * summaries logged by BenchmarkSimulationAgent if the log has them, the
+     * per element entries of the log and of the binary logs otherwise.
+     *
+     * @param log
+     * @param elements per element values of binary logs or null
+     * @param epoch
+     * @param iteration
+     * @param metrics
+     */
+    public void read(MeasurementLog log, AggregateCube elements, int epoch, int iteration, Metrics... metrics) {
+        for (Metrics metric : metrics) {
+            if (contains(epoch, iteration, metric)) {
+                continue;
+            }
+            Integer iterationTag = iteration;
+            Aggregate count = log.getAggregateByEpochNumber(epoch, iterationTag, AggregateTag.of(metric, Aggregates.COUNT));
+            if (count.getNumValues() > 0) {
+                add(epoch, iteration, metric, new MetricAggregate(
+                        (int) count.getSum(),
+                        log.getAggregateByEpochNumber(epoch, iterationTag, AggregateTag.of(metric, Aggregates.SUM)).getSum(),
+                        log.getAggregateByEpochNumber(epoch, iterationTag, AggregateTag.of(metric, Aggregates.MIN)).getMin(),
+                        log.getAggregateByEpochNumber(epoch, iterationTag, AggregateTag.of(metric, Aggregates.MAX)).getMax()));
+            } else {
+                add(epoch, iteration, metric, toMetricAggregate(log.getAggregateByEpochNumber(epoch, iterationTag, metric)));
+                if (elements != null) {
+                    add(epoch, iteration, metric, elements.get(epoch, iteration, metric));
+                }
+            }
+        }
+    }
+
+    private static MetricAggregate toMetricAggregate(Aggregate aggregate) {
+        if (aggregate.getNumValues() == 0) {
+            return new MetricAggregate();
+        }
+        return new MetricAggregate(aggregate.getNumValues(), aggregate.getSum(), aggregate.getMin(), aggregate.getMax());
+    }
+
+    /**
+     * Adds all columns of the binary log in the epoch range in one pass. Binary
+     * logs only hold per element values, keep them in their own cube and pass
+     * it to read(MeasurementLog, ...).
+     * Columns which aren't tagged with an iteration and a Metrics constant are
+     * skipped.
+     *
+     * @param reader
+     * @param minEpoch
+     * @param maxEpoch exclusive
+     * @throws IOException
+     */
+    public void read(BinaryLogReader reader, int minEpoch, int maxEpoch) throws IOException {
+        reader.read(minEpoch, maxEpoch, new BinaryLogReader.ColumnVisitor() {
+            @Override
+            public void column(int epoch, Object[] tags, DoubleBuffer values) {
+                if (tags.length != 2 || !(tags[0] instanceof Integer) || !(tags[1] instanceof Metrics)) {
+                    return;
+                }
+                MetricAggregate aggregate = cell(epoch, (Integer) tags[0], (Metrics) tags[1]);
+                while (values.hasRemaining()) {
+                    aggregate.add(values.get());
+                }
+            }
+        });
+    }
+}
@@ -0,0 +1,235 @@
+/*
+ * Copyright (C) 2015 SFINA Team
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package replayer;
+
+import java.io.File;
+import java.nio.file.FileSystems;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.apache.log4j.Logger;
+
+/**
+ * Replays several experiments concurrently, each with its own
+ * BenchmarkLogReplayer writing to its own results folder, and logs a timing
+ * summary at the end.
+ *
+ * Usage: BatchLogReplayer parallelism minLoad maxLoad experiment...
+ * where an experiment is a sequence number ("01"), a directory name
+ * ("experiment-01") or a glob over the directories in peerlets-log
+ * ("experiment-0*").
+ */
+public class BatchLogReplayer {
+
+    private static final Logger logger = Logger.getLogger(BatchLogReplayer.class);
+
+    public static final String PEERLETS_LOG_DIRECTORY = "peerlets-log";
+    public static final String EXPERIMENT_PREFIX = "experiment-";
+
+    /**
+     * Outcome of replaying one experiment.
+     */
+    public static class Result {
+
+        private final String experimentSequenceNumber;
+        private final long replayTime;
+        private final Throwable failure;
+
+        Result(String experimentSequenceNumber, long replayTime, Throwable failure) {
+            this.experimentSequenceNumber = experimentSequenceNumber;
+            this.replayTime = replayTime;
+            this.failure = failure;
+        }
+
+        public String getExperimentSequenceNumber() {
+            return experimentSequenceNumber;
+        }
+
+        /**
+         * @return replay time in milliseconds
+         */
+        public long getReplayTime() {
+            return replayTime;
+        }
+
+        /**
+         * @return the exception or null if the experiment was replayed
+         */
+        public Throwable getFailure() {
+            return failure;
+        }
+
+        public boolean isFailed() {
+            return failure != null;
+        }
+    }
+
+    private final int parallelism;
+    private final int minLoad;
+    private final int maxLoad;
+    private final boolean writeToFile;
+
+    /**
+     * @param parallelism maximum number of experiments replayed at the same
+     * time
+     * @param minLoad
+     * @param maxLoad
+     * @param writeToFile
+     */
+    public BatchLogReplayer(int parallelism, int minLoad, int maxLoad, boolean writeToFile) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be at least 1: " + parallelism);
+        }
+        this.parallelism = parallelism;
+        this.minLoad = minLoad;
+        this.maxLoad = maxLoad;
+        this.writeToFile = writeToFile;
+    }
+
+    /**
+     * Resolves sequence numbers, directory names and globs to the sequence
+     * numbers of experiments, sorted and without duplicates.
+     *
+     * @param experiments
+     * @return the sequence numbers
+     */
+    public static List<String> resolveExperiments(List<String> experiments) {
+        TreeSet<String> sequenceNumbers = new TreeSet<>();
+        for (String experiment : experiments) {
+            if (!isGlob(experiment)) {
+                sequenceNumbers.add(experiment.startsWith(EXPERIMENT_PREFIX) ? experiment.substring(EXPERIMENT_PREFIX.length()) : experiment);
+                continue;
+            }
+            PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + experiment);
+            File[] directories = new File(PEERLETS_LOG_DIRECTORY).listFiles();
+            if (directories == null) {
+                logger.error("Peer log directory " + PEERLETS_LOG_DIRECTORY + " doesn't exist");
+                continue;
+            }
+            boolean matched = false;
+            for (File directory : directories) {
+                String name = directory.getName();
+                if (directory.isDirectory() && name.startsWith(EXPERIMENT_PREFIX) && matcher.matches(Paths.get(name))) {
+                    sequenceNumbers.add(name.substring(EXPERIMENT_PREFIX.length()));
+                    matched = true;
+                }
+            }
+            if (!matched) {
+                logger.warn("No experiment matches " + experiment);
+            }
+        }
+        return new ArrayList<>(sequenceNumbers);
+    }
+
+    private static boolean isGlob(String experiment) {
+        for (char c : "*?[{".toCharArray()) {
+            if (experiment.indexOf(c) >= 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Replays the experiments and logs the timing summary. Failed experiments
+     * don't stop the others.
+     *
+     * @param experimentSequenceNumbers
+     * @return the results in the order of the experiments
+     */
+    public List<Result> replay(List<String> experimentSequenceNumbers) {
+        long start = System.currentTimeMillis();
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+        ArrayList<Future<Result>> futures = new ArrayList<>();
+        try {
+            for (final String experimentSequenceNumber : experimentSequenceNumbers) {
+                futures.add(executor.submit(new Callable<Result>() {
+                    @Override
+                    public Result call() {
+                        return replay(experimentSequenceNumber);
+                    }
+                }));
+            }
+            ArrayList<Result> results = new ArrayList<>();
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    results.add(futures.get(i).get());
+                } catch (ExecutionException ex) {
+                    results.add(new Result(experimentSequenceNumbers.get(i), 0, ex.getCause()));
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    results.add(new Result(experimentSequenceNumbers.get(i), 0, ex));
+                }
+            }
+            logSummary(results, System.currentTimeMillis() - start);
+            return results;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private Result replay(String experimentSequenceNumber) {
+        long start = System.currentTimeMillis();
+        try {
+            logger.info("Replaying " + EXPERIMENT_PREFIX + experimentSequenceNumber);
+            new BenchmarkLogReplayer(experimentSequenceNumber, minLoad, maxLoad, writeToFile);
+            return new Result(experimentSequenceNumber, System.currentTimeMillis() - start, null);
+        } catch (RuntimeException ex) {
+            logger.error("Could not replay " + EXPERIMENT_PREFIX + experimentSequenceNumber, ex);
+            return new Result(experimentSequenceNumber, System.currentTimeMillis() - start, ex);
+        }
+    }
+
+    private void logSummary(List<Result> results, long wallTime) {
+        long totalTime = 0;
+        int failed = 0;
+        logger.info(String.format("%-30s%15s%10s", "EXPERIMENT", "TIME [ms]", "STATUS"));
+        for (Result result : results) {
+            totalTime += result.getReplayTime();
+            if (result.isFailed()) {
+                failed++;
+            }
+            logger.info(String.format("%-30s%15d%10s", EXPERIMENT_PREFIX + result.getExperimentSequenceNumber(), result.getReplayTime(), result.isFailed() ? "failed" : "ok"));
+        }
+        logger.info(String.format("%d experiments, %d failed, %d ms wall time, %d ms replay time, parallelism %d",
+                results.size(), failed, wallTime, totalTime, parallelism));
+    }
+
+    public static void main(String[] args) {
+        if (args.length < 4) {
+            System.err.println("Usage: BatchLogReplayer parallelism minLoad maxLoad experiment...");
+            System.exit(1);
+        }
+        List<String> experiments = resolveExperiments(Arrays.asList(args).subList(3, args.length));
+        BatchLogReplayer batch = new BatchLogReplayer(Integer.parseInt(args[0]), Integer.parseInt(args[1]), Integer.parseInt(args[2]), true);
+        List<Result> results = batch.replay(experiments);
+        for (Result result : results) {
+            if (result.isFailed()) {
+                System.exit(2);
+            }
+        }
+    }
+}
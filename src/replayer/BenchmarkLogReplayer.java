@@ -5,12 +5,18 @@
 
 package replayer;
 
+import agent.BinaryLogFormat;
 import agent.Metrics;
-import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 import org.apache.log4j.Logger;
 import protopeer.measurement.LogReplayer;
 import protopeer.measurement.MeasurementLog;
@@ -20,9 +26,12 @@ import protopeer.measurement.MeasurementLoggerListener;
  * Loads logs, calculates and prints measurement results.
  * Features:
  * - Computes per iteration and per time step
- * - Writes results to files for further processing: Each metric to its own file
- *   with one line per time step and a value for each iteration.
- * - Does a pretty overview of all the metrics, also saves it to allMetrics.txt
+ * - Hands one ResultRow per time step and iteration to the result sinks:
+ *   each metric to its own file with one line per time step and a value for
+ *   each iteration, a pretty overview in allMetrics.txt and on the console,
+ *   and all results in columns in results.bin
+ * - Optionally keeps the aggregates of each peer in a ReplayResultCache,
+ *   peers whose logs didn't change aren't loaded again (not in streaming mode)
  * - Plays together with BenchmarkSimulationAgent
  * 
  * @author Evangelos
@@ -36,290 +45,301 @@ public class BenchmarkLogReplayer {
     private String resultID;
 
     private LogReplayer replayer;
-    private final String coma=",";
+    private final AggregateCube cube;
+    private final AggregateCube binaryElements;
+    private Double initialLoading;
+    private final boolean streaming;
+    private final ArrayList<File> streamedLogs;
+    private final ReplayResultCache cache;
+    private boolean cubeComplete;
+    private int minLoad;
+    private int maxLoad;
     private boolean writeToFile;
     private String experimentToken = "experiment-";
     private String resultToken = "results";
     private String peerletsLogToken = "peerlets-log";
 
-    private PrintWriter allMetricsOut;
-    
-    private PrintWriter linkLossOut;
-    private PrintWriter linkFlowOut;
-    private PrintWriter linkUtilizationOut;
-    private PrintWriter epochPowerLossOut;
-    private PrintWriter totalPowerLossOut;
-    private PrintWriter totalTimeOut;
-    private PrintWriter iterations;
-    private PrintWriter islandNum;
-    private PrintWriter isolatedNodes;
-    private PrintWriter nodeLossOut;
-    private PrintWriter nodeFlowOut;
-    private PrintWriter nodeUtilizationOut;
-    private PrintWriter linkOverloadOut;
-    private PrintWriter nodeOverloadOut;
+    private final ArrayList<ResultSink> sinks;
 
     public BenchmarkLogReplayer(String experimentSequenceNumber, int minLoad, int maxLoad, boolean writeToFile){
+        this(experimentSequenceNumber, minLoad, maxLoad, writeToFile, false);
+    }
+    
+    /**
+     * @param experimentSequenceNumber
+     * @param minLoad
+     * @param maxLoad
+     * @param writeToFile
+     * @param streaming replays the peer logs epoch by epoch instead of loading
+     * them completely, for logs which don't fit into memory
+     */
+    public BenchmarkLogReplayer(String experimentSequenceNumber, int minLoad, int maxLoad, boolean writeToFile, boolean streaming){
+        this(experimentSequenceNumber, minLoad, maxLoad, writeToFile, streaming, null);
+    }
+    
+    /**
+     * @param experimentSequenceNumber
+     * @param minLoad
+     * @param maxLoad
+     * @param writeToFile
+     * @param streaming
+     * @param sinks receive the results, null for the console and, if
+     * writeToFile is set, the result files
+     */
+    public BenchmarkLogReplayer(String experimentSequenceNumber, int minLoad, int maxLoad, boolean writeToFile, boolean streaming, List<ResultSink> sinks){
+        this(experimentSequenceNumber, minLoad, maxLoad, writeToFile, streaming, sinks, null);
+    }
+    
+    /**
+     * @param experimentSequenceNumber
+     * @param minLoad
+     * @param maxLoad
+     * @param writeToFile
+     * @param streaming
+     * @param sinks
+     * @param cache per peer aggregates of earlier replays, null to load all
+     * peer logs
+     * @throws IllegalArgumentException if a cache is given in streaming mode
+     */
+    public BenchmarkLogReplayer(String experimentSequenceNumber, int minLoad, int maxLoad, boolean writeToFile, boolean streaming, List<ResultSink> sinks, ReplayResultCache cache){
+        if(streaming && cache!=null)
+            throw new IllegalArgumentException("The replay cache can't be used in streaming mode");
         this.expSeqNum=experimentSequenceNumber;
+        this.streaming=streaming;
+        this.streamedLogs=new ArrayList<>();
         this.writeToFile=writeToFile;
         this.expID=experimentToken+expSeqNum+"/";
         this.resultID=resultToken+"/"+expID+"/";
         
         this.replayer=new LogReplayer();
+        this.cube=new AggregateCube();
+        this.binaryElements=new AggregateCube();
+        this.cache=cache;
+        this.cubeComplete=false;
         this.loadLogs(peerletsLogToken+"/"+expID, minLoad, maxLoad);
         
-        if(writeToFile)
-            this.prepareResultOutput();
+        this.sinks=new ArrayList<>();
+        if(sinks==null)
+            this.sinks.addAll(createResultSinks(resultID, writeToFile));
+        else
+            this.sinks.addAll(sinks);
         
         this.replayResults();
         
-        if(writeToFile)
-            this.closeFiles();
+        this.closeSinks();
     }
 
     public void loadLogs(String directory, int minLoad, int maxLoad){
-        try{
-            File folder = new File(directory);
-            File[] listOfFiles = folder.listFiles();
-            for (int i = 0; i < listOfFiles.length; i++) {
-                if (listOfFiles[i].isFile()&&!listOfFiles[i].isHidden()) {
-                    MeasurementLog loadedLog=replayer.loadLogFromFile(directory+listOfFiles[i].getName());
-                    MeasurementLog replayedLog=this.getMemorySupportedLog(loadedLog, minLoad, maxLoad);
-                    replayer.mergeLog(replayedLog);
+        this.minLoad=minLoad;
+        this.maxLoad=maxLoad;
+        List<File> files=PeerLogLoader.listPeerLogs(directory);
+        if(cache!=null){
+            loadPeerCubes(files);
+            return;
+        }
+        ArrayList<File> peerLogs=new ArrayList<>();
+        for(File file:files){
+            if(!BinaryLogReader.isBinaryLog(file)){
+                peerLogs.add(file);
+                continue;
+            }
+            try(BinaryLogReader reader=new BinaryLogReader(file)){
+                binaryElements.read(reader, minLoad, maxLoad);
+            }
+            catch(IOException ex){
+                logger.error("Could not load binary log " + file.getPath(), ex);
+            }
+        }
+        if(streaming){
+            streamedLogs.addAll(peerLogs);
+            return;
+        }
+        MeasurementLog mergedLog=new PeerLogLoader(minLoad, maxLoad).load(peerLogs);
+        if(mergedLog!=null)
+            replayer.mergeLog(mergedLog);
+    }
+    
+    /**
+     * Builds the cube from one cube per peer. A peer are its serialized log and
+     * the binary log of the same name. Peers are read in parallel, the cubes
+     * of peers whose files didn't change are taken from the cache.
+     * @param files 
+     */
+    private void loadPeerCubes(List<File> files){
+        LinkedHashMap<String, List<File>> peers=new LinkedHashMap<>();
+        for(File file:files){
+            String peer=file.getPath();
+            if(BinaryLogReader.isBinaryLog(file))
+                peer=peer.substring(0, peer.length()-BinaryLogFormat.FILE_EXTENSION.length());
+            List<File> peerFiles=peers.get(peer);
+            if(peerFiles==null){
+                peerFiles=new ArrayList<>();
+                peers.put(peer, peerFiles);
+            }
+            peerFiles.add(file);
+        }
+        ArrayList<Callable<AggregateCube>> tasks=new ArrayList<>();
+        for(final List<File> peerFiles:peers.values()){
+            tasks.add(new Callable<AggregateCube>(){
+                public AggregateCube call(){
+                    return loadPeerCube(peerFiles);
                 }
-                else
-                    if (listOfFiles[i].isDirectory()) {
-                        //do sth else
+            });
+        }
+        for(Future<AggregateCube> peerCube:ForkJoinPool.commonPool().invokeAll(tasks)){
+            try{
+                if(peerCube.get()!=null)
+                    cube.mergeWith(peerCube.get());
+            }
+            catch(InterruptedException | ExecutionException ex){
+                logger.error("Could not load peer cube", ex);
+            }
+        }
+        cubeComplete=true;
+        logger.info(cache.getHits() + " of " + peers.size() + " peers taken from the replay cache");
+    }
+    
+    /**
+     * @param peerFiles
+     * @return the cube of the peer, null if its logs can't be read
+     */
+    private AggregateCube loadPeerCube(List<File> peerFiles){
+        String key=null;
+        try{
+            key=cache.key(peerFiles, minLoad, maxLoad, Arrays.toString(ResultCalculator.REPLAYED_METRICS));
+            AggregateCube peerCube=cache.get(key);
+            if(peerCube!=null)
+                return peerCube;
+        }
+        catch(IOException ex){
+            logger.error("Could not hash peer logs " + peerFiles, ex);
+        }
+        AggregateCube peerCube=new AggregateCube();
+        AggregateCube elements=new AggregateCube();
+        MeasurementLog log=null;
+        MeasurementLog baseline=null;
+        try{
+            for(File file:peerFiles){
+                if(BinaryLogReader.isBinaryLog(file)){
+                    try(BinaryLogReader reader=new BinaryLogReader(file)){
+                        elements.read(reader, minLoad, maxLoad);
+                        if(minLoad>1)
+                            elements.read(reader, 1, 2);
                     }
+                }
+                else{
+                    log=SerializedLogReader.load(file, minLoad, maxLoad);
+                    // NODE_INIT_LOADING of epoch 1 is the baseline of all epochs
+                    baseline=(minLoad>1) ? SerializedLogReader.load(file, 1, 2) : log;
+                }
             }
         }
-        catch(IOException io){
-
+        catch(IOException | ClassNotFoundException ex){
+            logger.error("Could not load peer logs " + peerFiles, ex);
+            return null;
         }
-        catch(ClassNotFoundException ex){
-
+        if(log!=null){
+            for(int epoch=log.getMinEpochNumber(); epoch<=log.getMaxEpochNumber(); epoch++)
+                peerCube.read(log, elements, epoch, ResultCalculator.REPLAYED_METRICS);
+            peerCube.read(baseline, elements, 1, 1, Metrics.NODE_INIT_LOADING);
         }
+        if(key!=null)
+            cache.put(key, peerCube);
+        return peerCube;
     }
     
-    private void prepareResultOutput(){
-        try{
+    /**
+     * @param resultID result directory, cleared if writeToFile is set
+     * @param writeToFile
+     * @return the console sink if enabled and the result file sinks
+     */
+    static List<ResultSink> createResultSinks(String resultID, boolean writeToFile){
+        ArrayList<ResultSink> sinks=new ArrayList<>();
+        ConsoleResultSink console=ConsoleResultSink.create();
+        if(console!=null)
+            sinks.add(console);
+        if(writeToFile){
             File resultLocation = new File(resultID);
             clearOutputFiles(resultLocation);
             resultLocation.mkdirs();
-            
-            allMetricsOut = new PrintWriter(new BufferedWriter(new FileWriter(resultID+"allMetrics.txt", true)));
-            // links
-            linkLossOut = new PrintWriter(new BufferedWriter(new FileWriter(resultID+"linkLoss.txt", true)));
-            linkFlowOut = new PrintWriter(new BufferedWriter(new FileWriter(resultID+"linkFlow.txt", true)));
-            linkUtilizationOut = new PrintWriter(new BufferedWriter(new FileWriter(resultID+"linkUtilization.txt", true)));
-            linkOverloadOut = new PrintWriter(new BufferedWriter(new FileWriter(resultID+"linkOverload.txt", true)));
-            // nodes
-            nodeLossOut = new PrintWriter(new BufferedWriter(new FileWriter(resultID+"nodeLoss.txt", true)));
-            nodeFlowOut = new PrintWriter(new BufferedWriter(new FileWriter(resultID+"nodeFlow.txt", true)));
-            nodeUtilizationOut = new PrintWriter(new BufferedWriter(new FileWriter(resultID+"nodeUtilization.txt", true)));
-            nodeOverloadOut = new PrintWriter(new BufferedWriter(new FileWriter(resultID+"nodeOverload.txt", true)));
-            epochPowerLossOut = new PrintWriter(new BufferedWriter(new FileWriter(resultID+"nodeEpochPowLoss.txt", true)));
-            totalPowerLossOut = new PrintWriter(new BufferedWriter(new FileWriter(resultID+"nodeTotPowLoss.txt", true)));
-            islandNum  = new PrintWriter(new BufferedWriter(new FileWriter(resultID+"nodesIslands.txt", true)));
-            isolatedNodes  = new PrintWriter(new BufferedWriter(new FileWriter(resultID+"nodesIsolated.txt", true)));
-            // system
-            totalTimeOut = new PrintWriter(new BufferedWriter(new FileWriter(resultID+"totalTime.txt", true)));
-            iterations  = new PrintWriter(new BufferedWriter(new FileWriter(resultID+"iterations.txt", true)));
-        }
-        catch (IOException e) {
-            logger.debug(e);
+            sinks.add(new TableResultSink(resultID+"allMetrics.txt"));
+            sinks.add(new CsvResultSink(resultID));
+            sinks.add(new BinaryResultSink(resultID+"results.bin"));
         }
+        return sinks;
     }
     
-    
-    private void closeFiles(){
-        allMetricsOut.print("\n");
-        // links
-        linkLossOut.print("\n");
-        linkFlowOut.print("\n");
-        linkUtilizationOut.print("\n");
-        linkOverloadOut.print("\n");
-        // nodes
-        nodeLossOut.print("\n");
-        nodeFlowOut.print("\n");
-        nodeUtilizationOut.print("\n");
-        nodeOverloadOut.print("\n");
-        epochPowerLossOut.print("\n");
-        totalPowerLossOut.print("\n");
-        islandNum.print("\n");
-        isolatedNodes.print("\n");
-        // system
-        totalTimeOut.print("\n");
-        iterations.print("\n");
-        
-        allMetricsOut.close();
-        
-        linkLossOut.close();
-        linkFlowOut.close();
-        linkUtilizationOut.close();
-        linkOverloadOut.close();
-        
-        nodeLossOut.close();
-        nodeFlowOut.close();
-        nodeUtilizationOut.close();
-        nodeOverloadOut.close();
-        epochPowerLossOut.close();
-        totalPowerLossOut.close();
-        islandNum.close();
-        isolatedNodes.close();
-        
-        totalTimeOut.close();
-        iterations.close();
+    private void closeSinks(){
+        for(ResultSink sink:sinks)
+            sink.close();
     }
 
     public void replayResults(){
         this.printGlobalMetricsTags();
 //        this.calculatePeerResults(replayer.getCompleteLog());
         this.printLocalMetricsTags();
-        replayer.replayTo(new MeasurementLoggerListener(){
+        if(cubeComplete){
+            if(cube.contains(1, 1, Metrics.NODE_INIT_LOADING))
+                initialLoading=cube.get(1, 1, Metrics.NODE_INIT_LOADING).getSum();
+            for(Integer epochNumber:cube.getEpochs().subSet(minLoad, true, maxLoad, false)){
+                calculateEpochResults(epochNumber);
+                calculateIterationResults(epochNumber);
+            }
+            return;
+        }
+        MeasurementLoggerListener listener=new MeasurementLoggerListener(){
             public void measurementEpochEnded(MeasurementLog log, int epochNumber){
-                calculateEpochResults(log, epochNumber);
-                calculateIterationResults(log, epochNumber);
+                cube.read(log, binaryElements, epochNumber, ResultCalculator.REPLAYED_METRICS);
+                // A streamed log only holds its own epoch
+                if(initialLoading==null && (!streaming || epochNumber==1)){
+                    cube.read(log, binaryElements, 1, 1, Metrics.NODE_INIT_LOADING);
+                    initialLoading=cube.get(1, 1, Metrics.NODE_INIT_LOADING).getSum();
+                }
+                calculateEpochResults(epochNumber);
+                calculateIterationResults(epochNumber);
             }
-        });
+        };
+        if(streaming)
+            new StreamingLogReplayer(streamedLogs, minLoad, maxLoad).replayTo(listener);
+        else
+            replayer.replayTo(listener);
+    }
+
+    /**
+     * @return NODE_INIT_LOADING of epoch 1, NaN if it wasn't replayed
+     */
+    private double getInitialLoading(){
+        return (initialLoading==null) ? Double.NaN : initialLoading;
     }
 
     private void calculatePeerResults(MeasurementLog globalLog){
         
     }
 
-    private void calculateEpochResults(MeasurementLog log, Integer epochNumber){
-        Integer totalIterations = (int) log.getAggregateByEpochNumber(epochNumber, Metrics.NEEDED_ITERATIONS).getMax();
-        // links
-        double avgLinkLosses = 1-(log.getAggregateByEpochNumber(epochNumber, totalIterations, Metrics.ACTIVATED_LINKS).getSum()/log.getAggregateByEpochNumber(epochNumber, totalIterations, Metrics.TOTAL_LINKS).getSum());
-        double avgLinkFlow = log.getAggregateByEpochNumber(epochNumber, totalIterations, Metrics.LINK_FLOW).getAverage();
-        double avgLinkUtilization = log.getAggregateByEpochNumber(epochNumber, totalIterations, Metrics.LINK_UTILIZATION).getAverage();
-        double avgLinkOverload = 1-(log.getAggregateByEpochNumber(epochNumber, totalIterations, Metrics.OVERLOADED_LINKS).getSum()/log.getAggregateByEpochNumber(epochNumber, totalIterations, Metrics.TOTAL_LINKS).getSum());
-        // nodes
-        double avgNodeLosses = 1-(log.getAggregateByEpochNumber(epochNumber, totalIterations, Metrics.ACTIVATED_NODES).getSum()/log.getAggregateByEpochNumber(epochNumber, totalIterations, Metrics.TOTAL_NODES).getSum());
-        double avgNodeFlow = log.getAggregateByEpochNumber(epochNumber, totalIterations, Metrics.NODE_FLOW).getAverage();
-        double avgNodeUtilization = log.getAggregateByEpochNumber(epochNumber, totalIterations, Metrics.NODE_UTILIZATION).getAverage();
-        double avgNodeOverload = 1-(log.getAggregateByEpochNumber(epochNumber, totalIterations, Metrics.OVERLOADED_NODES).getSum()/log.getAggregateByEpochNumber(epochNumber, totalIterations, Metrics.TOTAL_NODES).getSum());
-        double relNodePowerLoss = 1.0-log.getAggregateByEpochNumber(epochNumber, totalIterations, Metrics.NODE_FINAL_LOADING).getSum()/log.getAggregateByEpochNumber(epochNumber, totalIterations, Metrics.NODE_INIT_LOADING).getSum();
-        double relNodePowerLossSinceEpoch1 = 1.0-log.getAggregateByEpochNumber(epochNumber, totalIterations, Metrics.NODE_FINAL_LOADING).getSum()/log.getAggregateByEpochNumber(1, new Integer(1), Metrics.NODE_INIT_LOADING).getSum();
-        double islands = log.getAggregateByEpochNumber(epochNumber, totalIterations, Metrics.ISLANDS).getMax();
-        double isolNodes = log.getAggregateByEpochNumber(epochNumber, totalIterations, Metrics.ISOLATED_NODES).getMax();
-        // system
-        double simuTime = 0; // total time = sum(iteration times)
-        for(Integer i=1; i<=totalIterations; i++)
-            simuTime += log.getAggregateByEpochNumber(epochNumber, i, Metrics.TOT_SIMU_TIME).getSum(); 
-        
-        String delimiter = "";
-        int length = 200;
-        for(int i = 0; i<length; i++)
-            delimiter = delimiter+"-";
-        logger.info(String.format("%s\n",delimiter));
-        logger.info(String.format("%10d%10s%20.2f%20.2f%20.2f%20.0f%20d%20.4f%20.4f%20.0f%20.0f\n",epochNumber,"total", avgLinkLosses, avgLinkFlow, avgLinkUtilization, simuTime, totalIterations, relNodePowerLoss, relNodePowerLossSinceEpoch1, islands, isolNodes));
-        
-        if(writeToFile){
-            allMetricsOut.format("%s\n",delimiter);
-            allMetricsOut.format("%10d%10s%20.2f%20.2f%20.2f%20.0f%20d%20.4f%20.4f%20.0f%20.0f\n",epochNumber,"total", avgLinkLosses, avgLinkFlow, avgLinkUtilization, simuTime, totalIterations, relNodePowerLoss, relNodePowerLossSinceEpoch1, islands, isolNodes);
-        }
+    private void calculateEpochResults(Integer epochNumber){
+        ResultRow row=ResultCalculator.epochRow(cube, epochNumber, getInitialLoading());
+        for(ResultSink sink:sinks)
+            sink.row(row);
     }
     
-    private void calculateIterationResults(MeasurementLog log, int epochNumber){
-        Integer totalIterations = (int) log.getAggregateByEpochNumber(epochNumber, Metrics.NEEDED_ITERATIONS).getMax();
-        
+    private void calculateIterationResults(int epochNumber){
+        Integer totalIterations = cube.getIterations(epochNumber);
         for(Integer i=1; i<=totalIterations; i++){
-            // links
-            double avgLinkLosses = 1.0-(log.getAggregateByEpochNumber(epochNumber, i, Metrics.ACTIVATED_LINKS).getSum()/log.getAggregateByEpochNumber(epochNumber, i, Metrics.TOTAL_LINKS).getSum());
-            double avgLinkFlow = log.getAggregateByEpochNumber(epochNumber, i, Metrics.LINK_FLOW).getAverage();
-            double avgLinkUtilization = log.getAggregateByEpochNumber(epochNumber, i, Metrics.LINK_UTILIZATION).getAverage();
-            double avgLinkOverload = log.getAggregateByEpochNumber(epochNumber, i, Metrics.OVERLOADED_LINKS).getSum()/log.getAggregateByEpochNumber(epochNumber, i, Metrics.TOTAL_LINKS).getSum();
-            // nodes
-            double avgNodeLosses = 1.0-(log.getAggregateByEpochNumber(epochNumber, i, Metrics.ACTIVATED_NODES).getSum()/log.getAggregateByEpochNumber(epochNumber, i, Metrics.TOTAL_NODES).getSum());
-            double avgNodeFlow = log.getAggregateByEpochNumber(epochNumber, i, Metrics.NODE_FLOW).getAverage();
-            double avgNodeUtilization = log.getAggregateByEpochNumber(epochNumber, i, Metrics.NODE_UTILIZATION).getAverage();
-            double avgNodeOverload = log.getAggregateByEpochNumber(epochNumber, i, Metrics.OVERLOADED_NODES).getSum()/log.getAggregateByEpochNumber(epochNumber, i, Metrics.TOTAL_NODES).getSum();
-            double relNodePowerLoss = 1.0-log.getAggregateByEpochNumber(epochNumber, i, Metrics.NODE_FINAL_LOADING).getSum()/log.getAggregateByEpochNumber(epochNumber, i, Metrics.NODE_INIT_LOADING).getSum();
-            double relNodePowerLossSinceEpoch1 = 1.0-log.getAggregateByEpochNumber(epochNumber, i, Metrics.NODE_FINAL_LOADING).getSum()/log.getAggregateByEpochNumber(1, new Integer(1), Metrics.NODE_INIT_LOADING).getSum();
-            double islands = log.getAggregateByEpochNumber(epochNumber, i, Metrics.ISLANDS).getMax();
-            double isolNodes = log.getAggregateByEpochNumber(epochNumber, i, Metrics.ISOLATED_NODES).getMax();
-            // system
-            double simuTime = log.getAggregateByEpochNumber(epochNumber, i, Metrics.TOT_SIMU_TIME).getSum(); // This metric measures time of each iteration => total time = sum(iteration times)
-
-            logger.info(String.format("%10s%10d%20.2f%20.2f%20.2f%20.0f%20s%20.4f%20.4f%20.0f%20.0f\n","", i, avgLinkLosses, avgLinkFlow, avgLinkUtilization, simuTime, "-", relNodePowerLoss, relNodePowerLossSinceEpoch1, islands, isolNodes));            
-            
-            if(writeToFile){
-                allMetricsOut.format("%10s%10d%20.2f%20.2f%20.2f%20.0f%20s%20.4f%20.4f%20.0f%20.0f\n","", i, avgLinkLosses, avgLinkFlow, avgLinkUtilization, simuTime, "-", relNodePowerLoss, relNodePowerLossSinceEpoch1, islands, isolNodes);
-                
-                linkLossOut.print(avgLinkLosses);
-                linkFlowOut.print(avgLinkFlow);
-                linkUtilizationOut.print(avgLinkUtilization);
-                linkOverloadOut.print(avgLinkOverload);
-                
-                nodeLossOut.print(avgNodeLosses);
-                nodeFlowOut.print(avgNodeFlow);
-                nodeUtilizationOut.print(avgNodeUtilization);
-                nodeOverloadOut.print(avgNodeOverload);
-                epochPowerLossOut.print(relNodePowerLoss);
-                totalPowerLossOut.print(relNodePowerLossSinceEpoch1);
-                islandNum.print(islands);
-                isolatedNodes.print(isolNodes);
-                
-                totalTimeOut.print(simuTime);
-                
-                if(i!=totalIterations){
-                    linkLossOut.print(coma);
-                    linkFlowOut.print(coma);
-                    linkUtilizationOut.print(coma);
-                    linkOverloadOut.print(coma);
-                    
-                    nodeLossOut.print(coma);
-                    nodeFlowOut.print(coma);
-                    nodeUtilizationOut.print(coma);
-                    nodeOverloadOut.print(coma);
-                    epochPowerLossOut.print(coma);
-                    totalPowerLossOut.print(coma);
-                    islandNum.print(coma);
-                    isolatedNodes.print(coma);
-                    
-                    totalTimeOut.print(coma);
-
-                }
-            }
-        }   
-        if(writeToFile){
-            linkLossOut.print("\n");
-            linkFlowOut.print("\n");
-            linkUtilizationOut.print("\n");
-            linkOverloadOut.print("\n");
-            
-            nodeLossOut.print("\n");
-            nodeFlowOut.print("\n");
-            nodeUtilizationOut.print("\n");
-            nodeOverloadOut.print("\n");
-            
-            epochPowerLossOut.print("\n");
-            totalPowerLossOut.print("\n");
-            islandNum.print("\n");
-            isolatedNodes.print("\n");
-            
-            totalTimeOut.print("\n");
-            iterations.print(totalIterations + "\n");
+            ResultRow row=ResultCalculator.iterationRow(cube, epochNumber, i, getInitialLoading());
+            for(ResultSink sink:sinks)
+                sink.row(row);
         }
+        for(ResultSink sink:sinks)
+            sink.epochEnded(epochNumber, totalIterations);
     }
     
-    private MeasurementLog getMemorySupportedLog(MeasurementLog log, int minLoad, int maxLoad){
-        return log.getSubLog(minLoad, maxLoad);
-    }
-
     public void printGlobalMetricsTags(){
         logger.info("*** RESULTS PER PEER ***\n");
     }
 
     public void printLocalMetricsTags(){
-        logger.info(String.format("*** RESULTS PER TIME STEP AND ITERATION  FOR EXPERIMENT %s ***\n", expID));
-        logger.info(String.format("%10s%10s%20s%20s%20s%20s%20s%20s%20s%20s%20s\n", "TIME STEP","ITERATION","AVG links failed","AVG link flow","AVG link utilization","Simu Time [ms]", "# iterations", "Node pow Loss epoch", "Node Pow Loss total", "# islands", "# isolated nodes"));
-        if(writeToFile){
-            allMetricsOut.format("*** RESULTS PER TIME STEP AND ITERATION FOR EXPERIMENT %s ***\n", expID);
-            allMetricsOut.format("%10s%10s%20s%20s%20s%20s%20s%20s%20s%20s%20s\n", "TIME STEP","ITERATION","AVG links failed","AVG link flow","AVG link utilization","Simu Time [ms]", "# iterations", "Node pow Loss epoch", "Node Pow Loss total", "# islands", "# isolated nodes");
-        }
+        for(ResultSink sink:sinks)
+            sink.begin(expID);
     }
     
     private static void clearOutputFiles(File experiment){
@@ -0,0 +1,277 @@
+/*
+ * Copyright (C) 2015 SFINA Team
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package replayer;
+
+import agent.BinaryLogFormat;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import protopeer.measurement.MeasurementLog;
+
+/**
+ * Reads measurement logs written by agent.BinaryLogWriter. Segments are
+ * memory mapped one at a time, the values of a column are handed out as a
+ * DoubleBuffer on the mapped memory.
+ */
+public class BinaryLogReader implements Closeable {
+
+    /**
+     * Receives the columns of a segment.
+     */
+    public interface ColumnVisitor {
+
+        public void column(int epoch, Object[] tags, DoubleBuffer values);
+    }
+
+    private final File file;
+    private final FileChannel channel;
+    private final ArrayList<Integer> epochs;
+    private final ArrayList<Long> offsets;
+    private final ArrayList<Integer> lengths;
+    private final ArrayList<Object> tags;
+    private int dictionarySegments;
+
+    public BinaryLogReader(File file) throws IOException {
+        this.file = file;
+        this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        this.epochs = new ArrayList<>();
+        this.offsets = new ArrayList<>();
+        this.lengths = new ArrayList<>();
+        this.tags = new ArrayList<>();
+        this.dictionarySegments = 0;
+        try {
+            readHeader();
+            readIndex();
+        } catch (IOException ex) {
+            channel.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * @param file
+     * @return true if the file is a binary log data file
+     */
+    public static boolean isBinaryLog(File file) {
+        return file.getName().endsWith(BinaryLogFormat.FILE_EXTENSION);
+    }
+
+    /**
+     * @param file
+     * @return true if the file is the index of a binary log
+     */
+    public static boolean isBinaryLogIndex(File file) {
+        return file.getName().endsWith(BinaryLogFormat.FILE_EXTENSION + BinaryLogFormat.INDEX_EXTENSION);
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * @return the epochs of all segments in file order
+     */
+    public List<Integer> getEpochs() {
+        return epochs;
+    }
+
+    public int getSegmentCount() {
+        return epochs.size();
+    }
+
+    /**
+     * Visits all columns of the segment.
+     *
+     * @param segment position of the segment in the file
+     * @param visitor
+     * @throws IOException
+     */
+    public void readSegment(int segment, ColumnVisitor visitor) throws IOException {
+        while (dictionarySegments < segment) {
+            readTags(map(dictionarySegments));
+            dictionarySegments++;
+        }
+        ByteBuffer buffer = map(segment);
+        if (dictionarySegments == segment) {
+            readTags(buffer);
+            dictionarySegments++;
+        } else {
+            skipTags(buffer);
+        }
+        int epoch = epochs.get(segment);
+        int columnCount = buffer.getInt();
+        for (int c = 0; c < columnCount; c++) {
+            Object[] columnTags = new Object[buffer.get()];
+            for (int t = 0; t < columnTags.length; t++) {
+                columnTags[t] = tags.get(buffer.getInt());
+            }
+            int valueCount = buffer.getInt();
+            ByteBuffer values = buffer.slice();
+            values.limit(valueCount * 8);
+            visitor.column(epoch, columnTags, values.asDoubleBuffer());
+            buffer.position(buffer.position() + valueCount * 8);
+        }
+    }
+
+    /**
+     * Visits the columns of all segments with minEpoch &lt;= epoch &lt; maxEpoch.
+     *
+     * @param minEpoch
+     * @param maxEpoch
+     * @param visitor
+     * @throws IOException
+     */
+    public void read(int minEpoch, int maxEpoch, ColumnVisitor visitor) throws IOException {
+        for (int segment = 0; segment < epochs.size(); segment++) {
+            int epoch = epochs.get(segment);
+            if (epoch >= minEpoch && epoch < maxEpoch) {
+                readSegment(segment, visitor);
+            }
+        }
+    }
+
+    /**
+     * Converts the selected epochs to a MeasurementLog with one entry per
+     * value, as they would have been logged by the agent.
+     *
+     * @param minEpoch
+     * @param maxEpoch exclusive
+     * @return the log
+     * @throws IOException
+     */
+    public MeasurementLog toMeasurementLog(int minEpoch, int maxEpoch) throws IOException {
+        final MeasurementLog log = new MeasurementLog();
+        read(minEpoch, maxEpoch, new ColumnVisitor() {
+            @Override
+            public void column(int epoch, Object[] tags, DoubleBuffer values) {
+                if (tags.length == 1) {
+                    while (values.hasRemaining()) {
+                        log.log(epoch, tags[0], values.get());
+                    }
+                } else {
+                    while (values.hasRemaining()) {
+                        log.log(epoch, tags[0], tags[1], values.get());
+                    }
+                }
+            }
+        });
+        return log;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private void readHeader() throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(BinaryLogFormat.HEADER_LENGTH);
+        readFully(header, 0);
+        if (header.getInt() != BinaryLogFormat.MAGIC) {
+            throw new IOException(file + " is not a binary measurement log");
+        }
+        short version = header.getShort();
+        if (version < 1 || version > BinaryLogFormat.VERSION) {
+            throw new IOException(file + " has unsupported version " + version);
+        }
+    }
+
+    /**
+     * Takes the segments from the index file if it exists, otherwise walks
+     * the segment headers of the data file.
+     */
+    private void readIndex() throws IOException {
+        File indexFile = new File(file.getPath() + BinaryLogFormat.INDEX_EXTENSION);
+        long size = channel.size();
+        if (indexFile.isFile()) {
+            try (FileChannel index = FileChannel.open(indexFile.toPath(), StandardOpenOption.READ)) {
+                long records = index.size() / BinaryLogFormat.INDEX_RECORD_LENGTH;
+                if (records > 0) {
+                    MappedByteBuffer buffer = index.map(FileChannel.MapMode.READ_ONLY, 0, records * BinaryLogFormat.INDEX_RECORD_LENGTH);
+                    for (long r = 0; r < records; r++) {
+                        int epoch = buffer.getInt();
+                        long offset = buffer.getLong();
+                        int length = buffer.getInt();
+                        if (offset + length > size) {
+                            break; // segment not completely written yet
+                        }
+                        addSegment(epoch, offset, length);
+                    }
+                }
+            }
+            return;
+        }
+        long offset = BinaryLogFormat.HEADER_LENGTH;
+        ByteBuffer header = ByteBuffer.allocate(BinaryLogFormat.SEGMENT_HEADER_LENGTH);
+        while (offset + BinaryLogFormat.SEGMENT_HEADER_LENGTH <= size) {
+            header.clear();
+            readFully(header, offset);
+            int epoch = header.getInt();
+            int length = BinaryLogFormat.SEGMENT_HEADER_LENGTH + header.getInt();
+            if (offset + length > size) {
+                break;
+            }
+            addSegment(epoch, offset, length);
+            offset += length;
+        }
+    }
+
+    private void addSegment(int epoch, long offset, int length) {
+        epochs.add(epoch);
+        offsets.add(offset);
+        lengths.add(length);
+    }
+
+    /**
+     * @return the mapped body of the segment
+     */
+    private ByteBuffer map(int segment) throws IOException {
+        long offset = offsets.get(segment) + BinaryLogFormat.SEGMENT_HEADER_LENGTH;
+        int length = lengths.get(segment) - BinaryLogFormat.SEGMENT_HEADER_LENGTH;
+        return channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+    }
+
+    private void readTags(ByteBuffer buffer) throws IOException {
+        int newTagCount = buffer.getInt();
+        for (int t = 0; t < newTagCount; t++) {
+            tags.add(BinaryLogFormat.readTag(buffer));
+        }
+    }
+
+    private void skipTags(ByteBuffer buffer) throws IOException {
+        int newTagCount = buffer.getInt();
+        for (int t = 0; t < newTagCount; t++) {
+            BinaryLogFormat.readTag(buffer);
+        }
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of " + file);
+            }
+        }
+        buffer.flip();
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright (C) 2015 SFINA Team
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package replayer;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import org.apache.log4j.Logger;
+
+/**
+ * Collects the results in columns and writes them in one go when closed.
+ * Big endian, like the binary measurement log:
+ * - header: MAGIC, VERSION (short)
+ * - column count, column names (UTF) in ResultColumn order
+ * - row count, epochs (int), iterations (int, AggregateCube.EPOCH for the
+ *   time step totals), total iterations (int)
+ * - one block of row count values (double) per column
+ */
+public class BinaryResultSink implements ResultSink {
+
+    private static final Logger logger = Logger.getLogger(BinaryResultSink.class);
+
+    public static final int MAGIC = 0x53465252; // SFRR
+    public static final short VERSION = 1;
+
+    private static final ResultColumn[] COLUMNS = ResultColumn.values();
+
+    private final String fileName;
+    private int rows;
+    private int[] epochs;
+    private int[] iterations;
+    private int[] totalIterations;
+    private double[][] values;
+
+    /**
+     * @param fileName result file, overwritten
+     */
+    public BinaryResultSink(String fileName) {
+        this.fileName = fileName;
+        this.rows = 0;
+        this.epochs = new int[64];
+        this.iterations = new int[64];
+        this.totalIterations = new int[64];
+        this.values = new double[COLUMNS.length][64];
+    }
+
+    @Override
+    public void begin(String experimentID) {
+    }
+
+    @Override
+    public void row(ResultRow row) {
+        if (rows == epochs.length) {
+            int capacity = rows * 2;
+            epochs = Arrays.copyOf(epochs, capacity);
+            iterations = Arrays.copyOf(iterations, capacity);
+            totalIterations = Arrays.copyOf(totalIterations, capacity);
+            for (int c = 0; c < COLUMNS.length; c++) {
+                values[c] = Arrays.copyOf(values[c], capacity);
+            }
+        }
+        epochs[rows] = row.getEpoch();
+        iterations[rows] = row.getIteration();
+        totalIterations[rows] = row.getTotalIterations();
+        for (int c = 0; c < COLUMNS.length; c++) {
+            values[c][rows] = row.get(COLUMNS[c]);
+        }
+        rows++;
+    }
+
+    @Override
+    public void epochEnded(int epoch, int totalIterations) {
+    }
+
+    @Override
+    public void close() {
+        if (values == null) {
+            return;
+        }
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(fileName, false), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeShort(VERSION);
+            out.writeInt(COLUMNS.length);
+            for (ResultColumn column : COLUMNS) {
+                out.writeUTF(column.name());
+            }
+            out.writeInt(rows);
+            for (int r = 0; r < rows; r++) {
+                out.writeInt(epochs[r]);
+            }
+            for (int r = 0; r < rows; r++) {
+                out.writeInt(iterations[r]);
+            }
+            for (int r = 0; r < rows; r++) {
+                out.writeInt(totalIterations[r]);
+            }
+            for (int c = 0; c < COLUMNS.length; c++) {
+                for (int r = 0; r < rows; r++) {
+                    out.writeDouble(values[c][r]);
+                }
+            }
+        } catch (IOException ex) {
+            logger.error("Could not write " + fileName, ex);
+        }
+        values = null;
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright (C) 2015 SFINA Team
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package replayer;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Logs the results table at info level. Use create() to get the sink only if
+ * its logger is enabled, so that no row is formatted for nothing.
+ */
+public class ConsoleResultSink extends TableResultSink {
+
+    private static final Logger logger = Logger.getLogger(ConsoleResultSink.class);
+
+    private ConsoleResultSink() {
+        super(null);
+    }
+
+    /**
+     * @return the sink or null if info logging of this class is disabled
+     */
+    public static ConsoleResultSink create() {
+        return logger.isInfoEnabled() ? new ConsoleResultSink() : null;
+    }
+
+    @Override
+    protected boolean open() {
+        return true;
+    }
+
+    @Override
+    protected void line(String format, Object... args) {
+        logger.info(String.format(format, args));
+    }
+
+    @Override
+    public void close() {
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright (C) 2015 SFINA Team
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package replayer;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.EnumMap;
+import java.util.Map;
+import org.apache.log4j.Logger;
+
+/**
+ * Writes each result to its own file with one line per time step and a comma
+ * separated value for each iteration, plus the number of iterations per time
+ * step to iterations.txt.
+ */
+public class CsvResultSink implements ResultSink {
+
+    private static final Logger logger = Logger.getLogger(CsvResultSink.class);
+
+    private static final char SEPARATOR = ',';
+
+    private final String directory;
+    private final EnumMap<ResultColumn, Writer> writers;
+    private Writer iterations;
+
+    /**
+     * @param directory result directory, ending with a separator
+     */
+    public CsvResultSink(String directory) {
+        this.directory = directory;
+        this.writers = new EnumMap<>(ResultColumn.class);
+    }
+
+    @Override
+    public void begin(String experimentID) {
+        try {
+            for (ResultColumn column : ResultColumn.values()) {
+                writers.put(column, open(column.getFileName()));
+            }
+            iterations = open("iterations");
+        } catch (IOException ex) {
+            logger.error("Could not open result files in " + directory, ex);
+            close();
+        }
+    }
+
+    private Writer open(String fileName) throws IOException {
+        return new BufferedWriter(new FileWriter(directory + fileName + ".txt", true));
+    }
+
+    @Override
+    public void row(ResultRow row) {
+        if (row.isEpochTotal() || iterations == null) {
+            return;
+        }
+        try {
+            for (Map.Entry<ResultColumn, Writer> entry : writers.entrySet()) {
+                Writer writer = entry.getValue();
+                if (row.getIteration() > 1) {
+                    writer.write(SEPARATOR);
+                }
+                writer.write(Double.toString(row.get(entry.getKey())));
+            }
+        } catch (IOException ex) {
+            logger.error("Could not write results of time step " + row.getEpoch(), ex);
+        }
+    }
+
+    @Override
+    public void epochEnded(int epoch, int totalIterations) {
+        if (iterations == null) {
+            return;
+        }
+        try {
+            for (Writer writer : writers.values()) {
+                writer.write('\n');
+            }
+            iterations.write(totalIterations + "\n");
+        } catch (IOException ex) {
+            logger.error("Could not write results of time step " + epoch, ex);
+        }
+    }
+
+    @Override
+    public void flush() {
+        try {
+            for (Writer writer : writers.values()) {
+                writer.flush();
+            }
+            if (iterations != null) {
+                iterations.flush();
+            }
+        } catch (IOException ex) {
+            logger.error("Could not flush result files in " + directory, ex);
+        }
+    }
+
+    @Override
+    public void close() {
+        for (Writer writer : writers.values()) {
+            close(writer);
+        }
+        writers.clear();
+        if (iterations != null) {
+            close(iterations);
+            iterations = null;
+        }
+    }
+
+    private void close(Writer writer) {
+        try {
+            writer.write('\n');
+            writer.close();
+        } catch (IOException ex) {
+            logger.error("Could not close result file in " + directory, ex);
+        }
+    }
+}
@@ -0,0 +1,425 @@
+/*
+ * Copyright (C) 2015 SFINA Team
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package replayer;
+
+import agent.BinaryLogFormat;
+import agent.Metrics;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import org.apache.log4j.Logger;
+import protopeer.measurement.MeasurementLog;
+
+/**
+ * Produces results while the simulation is still running. Follows the epoch
+ * indices (agent.EpochIndexWriter) of the serialized peer logs, reads the
+ * chunks dumped since the last poll and hands the rows of an epoch to the
+ * result sinks as soon as every peer has dumped it. Every byte of the logs is
+ * read once.
+ *
+ * Only the summaries of the serialized logs are used, per element values of
+ * binary logs are not followed.
+ *
+ * LiveLogReplayer live = new LiveLogReplayer("01", true);
+ * live.start(1000);
+ * ... run the simulation ...
+ * live.stop();
+ */
+public class LiveLogReplayer {
+
+    private static final Logger logger = Logger.getLogger(LiveLogReplayer.class);
+
+    private final String directory;
+    private final String experimentID;
+    private final List<ResultSink> sinks;
+    private final LinkedHashMap<File, PeerTail> peers;
+    private final TreeMap<Integer, MeasurementLog> pendingEpochs;
+    private double initialLoading;
+    private boolean begun;
+    private Thread thread;
+    private volatile boolean running;
+
+    /**
+     * Follows peerlets-log/experiment-XX/ and writes to results/experiment-XX/.
+     *
+     * @param experimentSequenceNumber
+     * @param writeToFile
+     */
+    public LiveLogReplayer(String experimentSequenceNumber, boolean writeToFile) {
+        this("peerlets-log/experiment-" + experimentSequenceNumber + "/", "experiment-" + experimentSequenceNumber + "/",
+                BenchmarkLogReplayer.createResultSinks("results/experiment-" + experimentSequenceNumber + "/", writeToFile));
+    }
+
+    /**
+     * @param directory peer log directory
+     * @param experimentID
+     * @param sinks
+     */
+    public LiveLogReplayer(String directory, String experimentID, List<ResultSink> sinks) {
+        this.directory = directory;
+        this.experimentID = experimentID;
+        this.sinks = new ArrayList<>(sinks);
+        this.peers = new LinkedHashMap<>();
+        this.pendingEpochs = new TreeMap<>();
+        this.initialLoading = Double.NaN;
+        this.begun = false;
+    }
+
+    /**
+     * Polls on a background thread until stop is called.
+     *
+     * @param pollInterval milliseconds between two polls
+     */
+    public synchronized void start(final long pollInterval) {
+        if (thread != null) {
+            return;
+        }
+        running = true;
+        thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                while (running) {
+                    poll();
+                    try {
+                        Thread.sleep(pollInterval);
+                    } catch (InterruptedException ex) {
+                        return;
+                    }
+                }
+            }
+        }, "live-log-replayer");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stops the background thread, replays what was dumped since the last
+     * poll including incomplete epochs and closes the sinks.
+     */
+    public void stop() {
+        Thread polling;
+        synchronized (this) {
+            polling = thread;
+            thread = null;
+        }
+        if (polling != null) {
+            // not interrupted, that would close the file channels
+            running = false;
+            try {
+                polling.join();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        finish();
+    }
+
+    /**
+     * Reads what the peers dumped since the last poll and replays the epochs
+     * which all peers have dumped.
+     *
+     * @return number of replayed epochs
+     */
+    public synchronized int poll() {
+        discoverPeers();
+        int completeEpoch = Integer.MAX_VALUE;
+        for (PeerTail peer : peers.values()) {
+            try {
+                peer.poll();
+            } catch (IOException | ClassNotFoundException ex) {
+                logger.error("Could not follow peer log " + peer.log.getPath(), ex);
+            }
+            completeEpoch = Math.min(completeEpoch, peer.lastEpoch);
+        }
+        if (peers.isEmpty()) {
+            return 0;
+        }
+        return replayUpTo(completeEpoch);
+    }
+
+    /**
+     * Polls once more, replays all pending epochs and closes the sinks.
+     */
+    public synchronized void finish() {
+        poll();
+        replayUpTo(Integer.MAX_VALUE);
+        for (PeerTail peer : peers.values()) {
+            peer.close();
+        }
+        peers.clear();
+        for (ResultSink sink : sinks) {
+            sink.close();
+        }
+        sinks.clear();
+    }
+
+    private void discoverPeers() {
+        File[] files = new File(directory).listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            if (peers.containsKey(file) || SerializedLogReader.isIndex(file) || BinaryLogReader.isBinaryLog(file) || file.isHidden()) {
+                continue;
+            }
+            if (file.isFile()) {
+                try {
+                    peers.put(file, new PeerTail(file));
+                    logger.debug("Following " + file.getPath());
+                } catch (IOException ex) {
+                    logger.error("Could not follow peer log " + file.getPath(), ex);
+                }
+            }
+        }
+    }
+
+    private int replayUpTo(int completeEpoch) {
+        if (!begun) {
+            for (ResultSink sink : sinks) {
+                sink.begin(experimentID);
+            }
+            begun = true;
+        }
+        int replayed = 0;
+        while (!pendingEpochs.isEmpty() && pendingEpochs.firstKey() <= completeEpoch) {
+            Map.Entry<Integer, MeasurementLog> epoch = pendingEpochs.pollFirstEntry();
+            replay(epoch.getKey(), epoch.getValue());
+            replayed++;
+        }
+        if (replayed > 0) {
+            for (ResultSink sink : sinks) {
+                sink.flush();
+            }
+        }
+        return replayed;
+    }
+
+    private void replay(int epoch, MeasurementLog log) {
+        AggregateCube cube = new AggregateCube();
+        cube.read(log, null, epoch, ResultCalculator.REPLAYED_METRICS);
+        if (epoch == 1) {
+            initialLoading = cube.get(1, 1, Metrics.NODE_INIT_LOADING).getSum();
+        }
+        ResultRow total = ResultCalculator.epochRow(cube, epoch, initialLoading);
+        for (ResultSink sink : sinks) {
+            sink.row(total);
+        }
+        int totalIterations = cube.getIterations(epoch);
+        for (int i = 1; i <= totalIterations; i++) {
+            ResultRow row = ResultCalculator.iterationRow(cube, epoch, i, initialLoading);
+            for (ResultSink sink : sinks) {
+                sink.row(row);
+            }
+        }
+        for (ResultSink sink : sinks) {
+            sink.epochEnded(epoch, totalIterations);
+        }
+    }
+
+    private void add(MeasurementLog chunk) {
+        for (int epoch = chunk.getMinEpochNumber(); epoch <= chunk.getMaxEpochNumber(); epoch++) {
+            MeasurementLog epochLog = chunk.getSubLog(epoch, epoch + 1);
+            MeasurementLog pending = pendingEpochs.get(epoch);
+            if (pending == null) {
+                pendingEpochs.put(epoch, epochLog);
+            } else {
+                pending.mergeWith(epochLog);
+            }
+        }
+    }
+
+    /**
+     * Read position in the log and index of one peer. The log is read as one
+     * object stream, only up to the end of the last indexed chunk. The index
+     * is written with the first dump, until then the peer holds back all
+     * epochs.
+     */
+    private class PeerTail implements Closeable {
+
+        private final File log;
+        private final File indexFile;
+        private FileChannel index;
+        private final GrowingInputStream data;
+        private final ByteBuffer record;
+        private ObjectInputStream in;
+        private int lastEpoch;
+
+        PeerTail(File log) throws IOException {
+            this.log = log;
+            this.indexFile = new File(log.getPath() + BinaryLogFormat.INDEX_EXTENSION);
+            this.data = new GrowingInputStream(FileChannel.open(log.toPath(), StandardOpenOption.READ));
+            this.record = ByteBuffer.allocate(BinaryLogFormat.INDEX_RECORD_LENGTH);
+            this.lastEpoch = Integer.MIN_VALUE;
+        }
+
+        void poll() throws IOException, ClassNotFoundException {
+            if (index == null) {
+                if (!indexFile.isFile()) {
+                    return;
+                }
+                index = FileChannel.open(indexFile.toPath(), StandardOpenOption.READ);
+            }
+            while (index.size() - index.position() >= BinaryLogFormat.INDEX_RECORD_LENGTH) {
+                record.clear();
+                while (record.hasRemaining()) {
+                    index.read(record);
+                }
+                record.flip();
+                int epoch = record.getInt();
+                long offset = record.getLong();
+                int length = record.getInt();
+                data.setLimit(offset + length);
+                lastEpoch = epoch;
+            }
+            if (in == null) {
+                if (data.available() == 0) {
+                    return;
+                }
+                in = new ObjectInputStream(data);
+            }
+            while (data.available() > 0) {
+                Object object;
+                try {
+                    object = in.readObject();
+                } catch (EOFException eof) {
+                    return; // only a stream reset left
+                }
+                if (object instanceof MeasurementLog) {
+                    MeasurementLog chunk = (MeasurementLog) object;
+                    if (chunk.getMinEpochNumber() <= chunk.getMaxEpochNumber()) {
+                        add(chunk);
+                    }
+                }
+            }
+        }
+
+        @Override
+        public void close() {
+            try {
+                if (index != null) {
+                    index.close();
+                }
+                data.close();
+            } catch (IOException ex) {
+                logger.debug("Could not close " + log.getPath(), ex);
+            }
+        }
+    }
+
+    /**
+     * Reads a file which is still being written, up to a limit which is raised
+     * when more of the file is known to be complete.
+     */
+    private static class GrowingInputStream extends InputStream {
+
+        private final FileChannel channel;
+        private final ByteBuffer buffer;
+        private long position;
+        private long limit;
+
+        GrowingInputStream(FileChannel channel) {
+            this.channel = channel;
+            this.buffer = ByteBuffer.allocate(1 << 16);
+            this.buffer.flip();
+            this.position = 0;
+            this.limit = 0;
+        }
+
+        void setLimit(long limit) {
+            this.limit = Math.max(this.limit, limit);
+        }
+
+        private boolean fill() throws IOException {
+            if (buffer.hasRemaining()) {
+                return true;
+            }
+            if (position >= limit) {
+                return false;
+            }
+            buffer.clear();
+            buffer.limit((int) Math.min(buffer.capacity(), limit - position));
+            int read = channel.read(buffer, position);
+            buffer.flip();
+            if (read <= 0) {
+                return false;
+            }
+            position += read;
+            return true;
+        }
+
+        @Override
+        public int read() throws IOException {
+            return fill() ? (buffer.get() & 0xFF) : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (!fill()) {
+                return -1;
+            }
+            int n = Math.min(len, buffer.remaining());
+            buffer.get(b, off, n);
+            return n;
+        }
+
+        @Override
+        public int available() {
+            return (int) Math.min(Integer.MAX_VALUE, buffer.remaining() + (limit - position));
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+
+    /**
+     * Follows an experiment until the process is stopped.
+     *
+     * Usage: LiveLogReplayer experimentSequenceNumber [pollInterval]
+     */
+    public static void main(String[] args) throws InterruptedException {
+        if (args.length < 1) {
+            System.err.println("Usage: LiveLogReplayer experimentSequenceNumber [pollInterval]");
+            System.exit(1);
+        }
+        final LiveLogReplayer live = new LiveLogReplayer(args[0], true);
+        Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+            @Override
+            public void run() {
+                live.stop();
+            }
+        }, "live-log-replayer-shutdown"));
+        live.start(args.length > 1 ? Long.parseLong(args[1]) : 1000);
+        Thread.currentThread().join();
+    }
+}
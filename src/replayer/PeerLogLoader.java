@@ -0,0 +1,218 @@
+/*
+ * Copyright (C) 2015 SFINA Team
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package replayer;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import org.apache.log4j.Logger;
+import protopeer.measurement.MeasurementLog;
+
+/**
+ * Loads peer logs in parallel on a fork-join pool. Each file is read by its
+ * own task, only the part in the epoch range if the log has an epoch index,
+ * and cut to the range. The logs are then merged
+ * pairwise up the task tree. Load time and failure of every file are kept in
+ * reports instead of being dropped.
+ */
+public class PeerLogLoader {
+
+    private static final Logger logger = Logger.getLogger(PeerLogLoader.class);
+
+    /**
+     * Outcome of loading one file.
+     */
+    public static class Report {
+
+        private final File file;
+        private final long loadTime;
+        private final Exception failure;
+
+        Report(File file, long loadTime, Exception failure) {
+            this.file = file;
+            this.loadTime = loadTime;
+            this.failure = failure;
+        }
+
+        public File getFile() {
+            return file;
+        }
+
+        /**
+         * @return load time in milliseconds
+         */
+        public long getLoadTime() {
+            return loadTime;
+        }
+
+        /**
+         * @return the exception or null if the file was loaded
+         */
+        public Exception getFailure() {
+            return failure;
+        }
+
+        public boolean isFailed() {
+            return failure != null;
+        }
+    }
+
+    private final int minLoad;
+    private final int maxLoad;
+    private final ForkJoinPool pool;
+    private final List<Report> reports;
+
+    /**
+     * Loads on the common fork-join pool.
+     *
+     * @param minLoad first epoch to keep
+     * @param maxLoad first epoch to drop
+     */
+    public PeerLogLoader(int minLoad, int maxLoad) {
+        this(minLoad, maxLoad, ForkJoinPool.commonPool());
+    }
+
+    public PeerLogLoader(int minLoad, int maxLoad, ForkJoinPool pool) {
+        this.minLoad = minLoad;
+        this.maxLoad = maxLoad;
+        this.pool = pool;
+        this.reports = Collections.synchronizedList(new ArrayList<Report>());
+    }
+
+    /**
+     * @param directory
+     * @return the visible files of the directory except epoch indices, empty
+     * if the directory doesn't exist
+     */
+    public static List<File> listPeerLogs(String directory) {
+        ArrayList<File> peerLogs = new ArrayList<>();
+        File[] files = new File(directory).listFiles();
+        if (files == null) {
+            logger.error("Peer log directory " + directory + " doesn't exist");
+            return peerLogs;
+        }
+        for (File file : files) {
+            if (file.isFile() && !file.isHidden() && !SerializedLogReader.isIndex(file)) {
+                peerLogs.add(file);
+            }
+        }
+        Collections.sort(peerLogs);
+        return peerLogs;
+    }
+
+    /**
+     * Loads and merges the files. Binary logs are converted to measurement
+     * logs. Failed files are logged and reported, the others are merged
+     * anyway.
+     *
+     * @param files
+     * @return the merged log, null if no file could be loaded
+     */
+    public MeasurementLog load(List<File> files) {
+        if (files.isEmpty()) {
+            return null;
+        }
+        long start = System.currentTimeMillis();
+        MeasurementLog merged = pool.invoke(new LoadTask(files, 0, files.size()));
+        int failed = getFailures().size();
+        logger.info("Loaded " + (files.size() - failed) + " of " + files.size() + " peer logs in " + (System.currentTimeMillis() - start) + " ms");
+        return merged;
+    }
+
+    private MeasurementLog loadFile(File file) {
+        long start = System.currentTimeMillis();
+        try {
+            MeasurementLog log;
+            if (BinaryLogReader.isBinaryLog(file)) {
+                try (BinaryLogReader reader = new BinaryLogReader(file)) {
+                    log = reader.toMeasurementLog(minLoad, maxLoad);
+                }
+            } else {
+                log = SerializedLogReader.load(file, minLoad, maxLoad);
+            }
+            long loadTime = System.currentTimeMillis() - start;
+            reports.add(new Report(file, loadTime, null));
+            logger.debug("Loaded " + file.getName() + " in " + loadTime + " ms");
+            return log;
+        } catch (Exception ex) {
+            reports.add(new Report(file, System.currentTimeMillis() - start, ex));
+            logger.error("Could not load peer log " + file.getPath(), ex);
+            return null;
+        }
+    }
+
+    private static MeasurementLog merge(MeasurementLog left, MeasurementLog right) {
+        if (left == null) {
+            return right;
+        }
+        if (right != null) {
+            left.mergeWith(right);
+        }
+        return left;
+    }
+
+    /**
+     * @return the reports of all files loaded so far
+     */
+    public List<Report> getReports() {
+        synchronized (reports) {
+            return new ArrayList<>(reports);
+        }
+    }
+
+    /**
+     * @return the reports of the files which could not be loaded
+     */
+    public List<Report> getFailures() {
+        ArrayList<Report> failures = new ArrayList<>();
+        for (Report report : getReports()) {
+            if (report.isFailed()) {
+                failures.add(report);
+            }
+        }
+        return failures;
+    }
+
+    private class LoadTask extends RecursiveTask<MeasurementLog> {
+
+        private final List<File> files;
+        private final int from;
+        private final int to;
+
+        LoadTask(List<File> files, int from, int to) {
+            this.files = files;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected MeasurementLog compute() {
+            if (to - from == 1) {
+                return loadFile(files.get(from));
+            }
+            int middle = (from + to) >>> 1;
+            LoadTask left = new LoadTask(files, from, middle);
+            left.fork();
+            MeasurementLog right = new LoadTask(files, middle, to).compute();
+            return merge(left.join(), right);
+        }
+    }
+}
@@ -0,0 +1,187 @@
+/*
+ * Copyright (C) 2015 SFINA Team
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package replayer;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.log4j.Logger;
+
+/**
+ * Keeps the aggregate cube of each peer on disk, keyed by a SHA-256 hash of
+ * the content of the peer's log files and the replay parameters. A peer whose
+ * logs didn't change since the last replay is taken from the cache instead of
+ * being loaded again.
+ */
+public class ReplayResultCache {
+
+    private static final Logger logger = Logger.getLogger(ReplayResultCache.class);
+
+    public static final String DEFAULT_DIRECTORY = "results/cache/";
+
+    /**
+     * Part of every key, increase when the content of the cubes changes.
+     */
+    private static final int VERSION = 1;
+
+    private static final String EXTENSION = ".cube";
+
+    private final File directory;
+    private final AtomicInteger hits;
+    private final AtomicInteger misses;
+
+    /**
+     * @param directory cache directory, created when the first cube is put
+     */
+    public ReplayResultCache(String directory) {
+        this.directory = new File(directory);
+        this.hits = new AtomicInteger();
+        this.misses = new AtomicInteger();
+    }
+
+    /**
+     * @param files the log files of one peer
+     * @param parameters replay parameters which change the cube
+     * @return the hex encoded key
+     * @throws IOException if a file can't be read
+     */
+    public String key(List<File> files, Object... parameters) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("SHA-256 not available", ex);
+        }
+        update(digest, "version=" + VERSION);
+        for (Object parameter : parameters) {
+            update(digest, String.valueOf(parameter));
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+        for (File file : files) {
+            update(digest, file.getName());
+            try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                update(digest, Long.toString(channel.size()));
+                while (channel.read(buffer) >= 0) {
+                    buffer.flip();
+                    digest.update(buffer);
+                    buffer.clear();
+                }
+            }
+        }
+        StringBuilder key = new StringBuilder();
+        for (byte b : digest.digest()) {
+            key.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return key.toString();
+    }
+
+    private static void update(MessageDigest digest, String value) {
+        digest.update(value.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+    }
+
+    /**
+     * @param key
+     * @return the cached cube, null if there is none or it can't be read
+     */
+    public AggregateCube get(String key) {
+        File file = new File(directory, key + EXTENSION);
+        if (!file.isFile()) {
+            misses.incrementAndGet();
+            return null;
+        }
+        try (ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            AggregateCube cube = (AggregateCube) in.readObject();
+            hits.incrementAndGet();
+            return cube;
+        } catch (IOException | ClassNotFoundException | ClassCastException ex) {
+            logger.warn("Dropping unreadable cache entry " + file.getPath(), ex);
+            file.delete();
+            misses.incrementAndGet();
+            return null;
+        }
+    }
+
+    /**
+     * Stores the cube. The entry is written to a temporary file first, so a
+     * concurrent reader never sees half of it.
+     *
+     * @param key
+     * @param cube
+     */
+    public void put(String key, AggregateCube cube) {
+        File file = new File(directory, key + EXTENSION);
+        File temporary = null;
+        try {
+            directory.mkdirs();
+            temporary = File.createTempFile(key, ".tmp", directory);
+            try (ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(temporary)))) {
+                out.writeObject(cube);
+            }
+            Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException ex) {
+            logger.error("Could not cache " + file.getPath(), ex);
+            if (temporary != null) {
+                temporary.delete();
+            }
+        }
+    }
+
+    /**
+     * Deletes all cached cubes.
+     */
+    public void clear() {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (file.getName().endsWith(EXTENSION)) {
+                    file.delete();
+                }
+            }
+        }
+    }
+
+    /**
+     * @return number of cubes taken from the cache
+     */
+    public int getHits() {
+        return hits.get();
+    }
+
+    /**
+     * @return number of cubes not found in the cache
+     */
+    public int getMisses() {
+        return misses.get();
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2015 SFINA Team
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package replayer;
+
+import agent.Metrics;
+
+/**
+ * Computes the result rows from the aggregates of a time step.
+ */
+public final class ResultCalculator {
+
+    /**
+     * The metrics the results are computed from.
+     */
+    public static final Metrics[] REPLAYED_METRICS = {
+        Metrics.ACTIVATED_LINKS, Metrics.TOTAL_LINKS, Metrics.LINK_FLOW, Metrics.LINK_UTILIZATION, Metrics.OVERLOADED_LINKS,
+        Metrics.ACTIVATED_NODES, Metrics.TOTAL_NODES, Metrics.NODE_FLOW, Metrics.NODE_UTILIZATION, Metrics.OVERLOADED_NODES,
+        Metrics.NODE_FINAL_LOADING, Metrics.NODE_INIT_LOADING, Metrics.ISLANDS, Metrics.ISOLATED_NODES, Metrics.TOT_SIMU_TIME};
+
+    private ResultCalculator() {
+    }
+
+    /**
+     * Results of the whole time step: the state after the last iteration and
+     * the simulation time of all iterations.
+     *
+     * @param cube
+     * @param epoch
+     * @param initialLoading NODE_INIT_LOADING of epoch 1
+     * @return the row
+     */
+    public static ResultRow epochRow(AggregateCube cube, int epoch, double initialLoading) {
+        int totalIterations = cube.getIterations(epoch);
+        ResultRow row = new ResultRow(epoch, AggregateCube.EPOCH, totalIterations);
+        // links
+        row.set(ResultColumn.LINK_LOSS, 1 - (cube.get(epoch, totalIterations, Metrics.ACTIVATED_LINKS).getSum() / cube.get(epoch, totalIterations, Metrics.TOTAL_LINKS).getSum()));
+        row.set(ResultColumn.LINK_FLOW, cube.get(epoch, totalIterations, Metrics.LINK_FLOW).getAverage());
+        row.set(ResultColumn.LINK_UTILIZATION, cube.get(epoch, totalIterations, Metrics.LINK_UTILIZATION).getAverage());
+        row.set(ResultColumn.LINK_OVERLOAD, 1 - (cube.get(epoch, totalIterations, Metrics.OVERLOADED_LINKS).getSum() / cube.get(epoch, totalIterations, Metrics.TOTAL_LINKS).getSum()));
+        // nodes
+        row.set(ResultColumn.NODE_LOSS, 1 - (cube.get(epoch, totalIterations, Metrics.ACTIVATED_NODES).getSum() / cube.get(epoch, totalIterations, Metrics.TOTAL_NODES).getSum()));
+        row.set(ResultColumn.NODE_FLOW, cube.get(epoch, totalIterations, Metrics.NODE_FLOW).getAverage());
+        row.set(ResultColumn.NODE_UTILIZATION, cube.get(epoch, totalIterations, Metrics.NODE_UTILIZATION).getAverage());
+        row.set(ResultColumn.NODE_OVERLOAD, 1 - (cube.get(epoch, totalIterations, Metrics.OVERLOADED_NODES).getSum() / cube.get(epoch, totalIterations, Metrics.TOTAL_NODES).getSum()));
+        row.set(ResultColumn.EPOCH_POWER_LOSS, 1.0 - cube.get(epoch, totalIterations, Metrics.NODE_FINAL_LOADING).getSum() / cube.get(epoch, totalIterations, Metrics.NODE_INIT_LOADING).getSum());
+        row.set(ResultColumn.TOTAL_POWER_LOSS, 1.0 - cube.get(epoch, totalIterations, Metrics.NODE_FINAL_LOADING).getSum() / initialLoading);
+        row.set(ResultColumn.ISLANDS, cube.get(epoch, totalIterations, Metrics.ISLANDS).getMax());
+        row.set(ResultColumn.ISOLATED_NODES, cube.get(epoch, totalIterations, Metrics.ISOLATED_NODES).getMax());
+        // system
+        double simuTime = 0; // total time = sum(iteration times)
+        for (int i = 1; i <= totalIterations; i++) {
+            simuTime += cube.get(epoch, i, Metrics.TOT_SIMU_TIME).getSum();
+        }
+        row.set(ResultColumn.SIMU_TIME, simuTime);
+        return row;
+    }
+
+    /**
+     * @param cube
+     * @param epoch
+     * @param iteration
+     * @param initialLoading NODE_INIT_LOADING of epoch 1
+     * @return the results of the iteration
+     */
+    public static ResultRow iterationRow(AggregateCube cube, int epoch, int iteration, double initialLoading) {
+        ResultRow row = new ResultRow(epoch, iteration, cube.getIterations(epoch));
+        // links
+        row.set(ResultColumn.LINK_LOSS, 1.0 - (cube.get(epoch, iteration, Metrics.ACTIVATED_LINKS).getSum() / cube.get(epoch, iteration, Metrics.TOTAL_LINKS).getSum()));
+        row.set(ResultColumn.LINK_FLOW, cube.get(epoch, iteration, Metrics.LINK_FLOW).getAverage());
+        row.set(ResultColumn.LINK_UTILIZATION, cube.get(epoch, iteration, Metrics.LINK_UTILIZATION).getAverage());
+        row.set(ResultColumn.LINK_OVERLOAD, cube.get(epoch, iteration, Metrics.OVERLOADED_LINKS).getSum() / cube.get(epoch, iteration, Metrics.TOTAL_LINKS).getSum());
+        // nodes
+        row.set(ResultColumn.NODE_LOSS, 1.0 - (cube.get(epoch, iteration, Metrics.ACTIVATED_NODES).getSum() / cube.get(epoch, iteration, Metrics.TOTAL_NODES).getSum()));
+        row.set(ResultColumn.NODE_FLOW, cube.get(epoch, iteration, Metrics.NODE_FLOW).getAverage());
+        row.set(ResultColumn.NODE_UTILIZATION, cube.get(epoch, iteration, Metrics.NODE_UTILIZATION).getAverage());
+        row.set(ResultColumn.NODE_OVERLOAD, cube.get(epoch, iteration, Metrics.OVERLOADED_NODES).getSum() / cube.get(epoch, iteration, Metrics.TOTAL_NODES).getSum());
+        row.set(ResultColumn.EPOCH_POWER_LOSS, 1.0 - cube.get(epoch, iteration, Metrics.NODE_FINAL_LOADING).getSum() / cube.get(epoch, iteration, Metrics.NODE_INIT_LOADING).getSum());
+        row.set(ResultColumn.TOTAL_POWER_LOSS, 1.0 - cube.get(epoch, iteration, Metrics.NODE_FINAL_LOADING).getSum() / initialLoading);
+        row.set(ResultColumn.ISLANDS, cube.get(epoch, iteration, Metrics.ISLANDS).getMax());
+        row.set(ResultColumn.ISOLATED_NODES, cube.get(epoch, iteration, Metrics.ISOLATED_NODES).getMax());
+        // system
+        row.set(ResultColumn.SIMU_TIME, cube.get(epoch, iteration, Metrics.TOT_SIMU_TIME).getSum()); // time of each iteration
+        return row;
+    }
+}
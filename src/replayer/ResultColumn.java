@@ -0,0 +1,62 @@
+/*
+ * Copyright (C) 2015 SFINA Team
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package replayer;
+
+/**
+ * The results computed per time step and iteration by BenchmarkLogReplayer.
+ */
+public enum ResultColumn {
+    // links
+    LINK_LOSS("linkLoss", "AVG links failed"),
+    LINK_FLOW("linkFlow", "AVG link flow"),
+    LINK_UTILIZATION("linkUtilization", "AVG link utilization"),
+    LINK_OVERLOAD("linkOverload", "AVG links overloaded"),
+    // nodes
+    NODE_LOSS("nodeLoss", "AVG nodes failed"),
+    NODE_FLOW("nodeFlow", "AVG node flow"),
+    NODE_UTILIZATION("nodeUtilization", "AVG node utilization"),
+    NODE_OVERLOAD("nodeOverload", "AVG nodes overloaded"),
+    EPOCH_POWER_LOSS("nodeEpochPowLoss", "Node pow Loss epoch"),
+    TOTAL_POWER_LOSS("nodeTotPowLoss", "Node Pow Loss total"),
+    ISLANDS("nodesIslands", "# islands"),
+    ISOLATED_NODES("nodesIsolated", "# isolated nodes"),
+    // system
+    SIMU_TIME("totalTime", "Simu Time [ms]");
+
+    private final String fileName;
+    private final String label;
+
+    private ResultColumn(String fileName, String label) {
+        this.fileName = fileName;
+        this.label = label;
+    }
+
+    /**
+     * @return name of the result file without extension
+     */
+    public String getFileName() {
+        return fileName;
+    }
+
+    /**
+     * @return column header of the results table
+     */
+    public String getLabel() {
+        return label;
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright (C) 2015 SFINA Team
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package replayer;
+
+import java.util.Arrays;
+
+/**
+ * Results of one iteration of a time step, or of the whole time step.
+ */
+public class ResultRow {
+
+    private static final int COLUMNS = ResultColumn.values().length;
+
+    private final int epoch;
+    private final int iteration;
+    private final int totalIterations;
+    private final double[] values;
+
+    /**
+     * @param epoch
+     * @param iteration iteration or AggregateCube.EPOCH for the results of the
+     * whole time step
+     * @param totalIterations iterations of the time step
+     */
+    public ResultRow(int epoch, int iteration, int totalIterations) {
+        this.epoch = epoch;
+        this.iteration = iteration;
+        this.totalIterations = totalIterations;
+        this.values = new double[COLUMNS];
+        Arrays.fill(values, Double.NaN);
+    }
+
+    public int getEpoch() {
+        return epoch;
+    }
+
+    public int getIteration() {
+        return iteration;
+    }
+
+    public int getTotalIterations() {
+        return totalIterations;
+    }
+
+    /**
+     * @return true if the row holds the results of the whole time step
+     */
+    public boolean isEpochTotal() {
+        return iteration == AggregateCube.EPOCH;
+    }
+
+    /**
+     * @return true if this is the last iteration of the time step
+     */
+    public boolean isLastIteration() {
+        return iteration == totalIterations;
+    }
+
+    /**
+     * @param column
+     * @return the value, NaN if not set
+     */
+    public double get(ResultColumn column) {
+        return values[column.ordinal()];
+    }
+
+    public void set(ResultColumn column, double value) {
+        values[column.ordinal()] = value;
+    }
+}
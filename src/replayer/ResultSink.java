@@ -0,0 +1,56 @@
+/*
+ * Copyright (C) 2015 SFINA Team
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package replayer;
+
+/**
+ * Receives the results computed by BenchmarkLogReplayer and writes them in
+ * its own format. Rows arrive per time step: first the total of the time
+ * step, then its iterations in order, then epochEnded.
+ */
+public interface ResultSink {
+
+    /**
+     * Called once before the first row.
+     *
+     * @param experimentID
+     */
+    public void begin(String experimentID);
+
+    public void row(ResultRow row);
+
+    /**
+     * Called after the last iteration of the time step.
+     *
+     * @param epoch
+     * @param totalIterations
+     */
+    public void epochEnded(int epoch, int totalIterations);
+
+    /**
+     * Writes buffered rows through, for readers following the output while
+     * results are still coming in.
+     */
+    public default void flush() {
+    }
+
+    /**
+     * Flushes and releases the output. Errors are logged, not thrown, so
+     * that one failing sink doesn't stop the others.
+     */
+    public void close();
+}
@@ -0,0 +1,272 @@
+/*
+ * Copyright (C) 2015 SFINA Team
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package replayer;
+
+import agent.BinaryLogFormat;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.SequenceInputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import org.apache.log4j.Logger;
+import protopeer.measurement.MeasurementLog;
+
+/**
+ * Reads the chunks dumped to a serialized peer log which overlap an epoch
+ * range. If the log has an epoch index (agent.EpochIndexWriter) only the bytes
+ * of the indexed epochs in range are read. Without an index, or if the chunks
+ * can't be read on their own, the file is read from the start, chunks before
+ * the range are dropped without merging and reading stops at the first chunk
+ * after the range.
+ */
+public class SerializedLogReader implements Closeable {
+
+    private static final Logger logger = Logger.getLogger(SerializedLogReader.class);
+
+    private static final byte[] STREAM_HEADER = {(byte) 0xAC, (byte) 0xED, 0x00, 0x05};
+
+    private final File file;
+    private final int minEpoch;
+    private final int maxEpoch;
+    private ObjectInputStream in;
+    private boolean seeking;
+    private boolean started;
+
+    /**
+     * @param file serialized peer log
+     * @param minEpoch first epoch to read
+     * @param maxEpoch first epoch not to read
+     * @throws IOException
+     */
+    public SerializedLogReader(File file, int minEpoch, int maxEpoch) throws IOException {
+        this.file = file;
+        this.minEpoch = minEpoch;
+        this.maxEpoch = maxEpoch;
+        this.in = openIndexed();
+        this.seeking = (in != null);
+        if (in == null) {
+            in = openFromStart();
+        }
+        this.started = false;
+    }
+
+    /**
+     * Loads the entries of the epoch range.
+     *
+     * @param file
+     * @param minEpoch first epoch to load
+     * @param maxEpoch first epoch not to load
+     * @return the entries in range
+     * @throws IOException
+     * @throws ClassNotFoundException
+     */
+    public static MeasurementLog load(File file, int minEpoch, int maxEpoch) throws IOException, ClassNotFoundException {
+        MeasurementLog log = new MeasurementLog();
+        try (SerializedLogReader reader = new SerializedLogReader(file, minEpoch, maxEpoch)) {
+            MeasurementLog chunk;
+            while ((chunk = reader.next()) != null) {
+                if (chunk.getMinEpochNumber() < minEpoch || chunk.getMaxEpochNumber() >= maxEpoch) {
+                    chunk = chunk.getSubLog(minEpoch, maxEpoch);
+                }
+                log.mergeWith(chunk);
+            }
+        }
+        return log;
+    }
+
+    /**
+     * @param file
+     * @return true if the file is the epoch index of a peer log
+     */
+    public static boolean isIndex(File file) {
+        return file.getName().endsWith(BinaryLogFormat.INDEX_EXTENSION);
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * @return true if the epoch index is used
+     */
+    public boolean isSeeking() {
+        return seeking;
+    }
+
+    /**
+     * @return the next dumped chunk which overlaps the epoch range, null at
+     * the end of the range or file. Chunks are returned as dumped and may
+     * hold epochs outside the range.
+     * @throws IOException
+     * @throws ClassNotFoundException
+     */
+    public MeasurementLog next() throws IOException, ClassNotFoundException {
+        while (true) {
+            Object object;
+            try {
+                object = in.readObject();
+            } catch (EOFException eof) {
+                return null;
+            } catch (IOException | ClassNotFoundException ex) {
+                if (!seeking || started) {
+                    throw ex;
+                }
+                logger.debug("Epoch index of " + file.getPath() + " not usable, reading the whole log", ex);
+                in.close();
+                in = openFromStart();
+                seeking = false;
+                continue;
+            }
+            started = true;
+            if (!(object instanceof MeasurementLog)) {
+                continue;
+            }
+            MeasurementLog chunk = (MeasurementLog) object;
+            if (chunk.getMinEpochNumber() > chunk.getMaxEpochNumber() || chunk.getMaxEpochNumber() < minEpoch) {
+                continue;
+            }
+            if (chunk.getMinEpochNumber() >= maxEpoch) {
+                return null;
+            }
+            return chunk;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    private ObjectInputStream openFromStart() throws IOException {
+        return new ObjectInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16));
+    }
+
+    /**
+     * Opens the byte range of the indexed epochs in range. The chunks are
+     * preceded by a stream header so that they can be read without the
+     * chunks before them.
+     *
+     * @return the stream or null if there is no usable index
+     */
+    private ObjectInputStream openIndexed() throws IOException {
+        File indexFile = new File(file.getPath() + BinaryLogFormat.INDEX_EXTENSION);
+        if (!indexFile.isFile()) {
+            return null;
+        }
+        long size = file.length();
+        long start = -1;
+        long end = -1;
+        try (FileChannel index = FileChannel.open(indexFile.toPath(), StandardOpenOption.READ)) {
+            long records = index.size() / BinaryLogFormat.INDEX_RECORD_LENGTH;
+            if (records == 0) {
+                return null;
+            }
+            MappedByteBuffer buffer = index.map(FileChannel.MapMode.READ_ONLY, 0, records * BinaryLogFormat.INDEX_RECORD_LENGTH);
+            for (long r = 0; r < records; r++) {
+                int epoch = buffer.getInt();
+                long offset = buffer.getLong();
+                int length = buffer.getInt();
+                if (offset + length > size || epoch >= maxEpoch) {
+                    break;
+                }
+                if (epoch >= minEpoch) {
+                    if (start < 0) {
+                        start = offset;
+                    }
+                    end = offset + length;
+                }
+            }
+        }
+        if (start < 0) {
+            return null;
+        }
+        FileInputStream fileIn = new FileInputStream(file);
+        InputStream range;
+        try {
+            if (start < STREAM_HEADER.length) {
+                range = new RangeInputStream(fileIn, end);
+            } else {
+                fileIn.getChannel().position(start);
+                range = new SequenceInputStream(new ByteArrayInputStream(STREAM_HEADER), new RangeInputStream(fileIn, end - start));
+            }
+            return new ObjectInputStream(new BufferedInputStream(range, 1 << 16));
+        } catch (IOException ex) {
+            fileIn.close();
+            logger.debug("Could not seek in " + file.getPath() + ", reading the whole log", ex);
+            return null;
+        }
+    }
+
+    /**
+     * Ends after a number of bytes.
+     */
+    private static class RangeInputStream extends FilterInputStream {
+
+        private long remaining;
+
+        RangeInputStream(InputStream in, long length) {
+            super(in);
+            this.remaining = length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int b = super.read();
+            if (b >= 0) {
+                remaining--;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int n = super.read(b, off, (int) Math.min(len, remaining));
+            if (n > 0) {
+                remaining -= n;
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(Math.min(n, remaining));
+            remaining -= skipped;
+            return skipped;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return (int) Math.min(super.available(), remaining);
+        }
+    }
+}
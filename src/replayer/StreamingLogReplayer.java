@@ -0,0 +1,246 @@
+/*
+ * Copyright (C) 2015 SFINA Team
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package replayer;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.DoubleBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+import org.apache.log4j.Logger;
+import protopeer.measurement.MeasurementLog;
+import protopeer.measurement.MeasurementLoggerListener;
+
+/**
+ * Replays peer logs epoch by epoch without loading them completely. Every
+ * peer log is read by a cursor, the cursors are merged by epoch and each
+ * merged epoch is handed to the listener and dropped before the next one is
+ * read. Memory is bounded by one epoch of all peers plus one dumped chunk per
+ * peer.
+ *
+ * MeasurementFileDumper appends one serialized MeasurementLog per dump, these
+ * chunks are read one at a time starting at the first indexed chunk in range.
+ * Binary logs are read segment by segment.
+ */
+public class StreamingLogReplayer {
+
+    private static final Logger logger = Logger.getLogger(StreamingLogReplayer.class);
+
+    private final List<File> files;
+    private final int minEpoch;
+    private final int maxEpoch;
+
+    /**
+     * @param files peer logs, serialized or binary
+     * @param minEpoch first epoch to replay
+     * @param maxEpoch first epoch not to replay
+     */
+    public StreamingLogReplayer(List<File> files, int minEpoch, int maxEpoch) {
+        this.files = files;
+        this.minEpoch = minEpoch;
+        this.maxEpoch = maxEpoch;
+    }
+
+    /**
+     * Hands the merged epochs to the listener in ascending order. Peer logs
+     * which can't be opened or read any further are reported and left out.
+     *
+     * @param listener
+     */
+    public void replayTo(MeasurementLoggerListener listener) {
+        PriorityQueue<PeerCursor> cursors = new PriorityQueue<>();
+        for (File file : files) {
+            try {
+                PeerCursor cursor = BinaryLogReader.isBinaryLog(file) ? new BinaryCursor(file) : new SerializedCursor(file, minEpoch, maxEpoch);
+                if (advance(cursor)) {
+                    cursors.add(cursor);
+                }
+            } catch (IOException | ClassNotFoundException ex) {
+                logger.error("Could not open peer log " + file.getPath(), ex);
+            }
+        }
+        while (!cursors.isEmpty()) {
+            int epoch = cursors.peek().epoch;
+            MeasurementLog epochLog = new MeasurementLog();
+            ArrayList<PeerCursor> advanced = new ArrayList<>();
+            while (!cursors.isEmpty() && cursors.peek().epoch == epoch) {
+                PeerCursor cursor = cursors.poll();
+                try {
+                    epochLog.mergeWith(cursor.current());
+                    if (advance(cursor)) {
+                        advanced.add(cursor);
+                    }
+                } catch (IOException | ClassNotFoundException ex) {
+                    logger.error("Could not read peer log " + cursor.file.getPath() + " after epoch " + epoch, ex);
+                    close(cursor);
+                }
+            }
+            cursors.addAll(advanced);
+            listener.measurementEpochEnded(epochLog, epoch);
+        }
+    }
+
+    /**
+     * Moves the cursor to its next epoch in range, closes it at the end.
+     *
+     * @return false if the cursor is exhausted
+     */
+    private boolean advance(PeerCursor cursor) throws IOException, ClassNotFoundException {
+        while (cursor.next()) {
+            if (cursor.epoch >= maxEpoch) {
+                break;
+            }
+            if (cursor.epoch >= minEpoch) {
+                return true;
+            }
+        }
+        close(cursor);
+        return false;
+    }
+
+    private static void close(PeerCursor cursor) {
+        try {
+            cursor.close();
+        } catch (IOException ex) {
+            logger.debug("Could not close " + cursor.file.getPath(), ex);
+        }
+    }
+
+    /**
+     * Position in one peer log, ordered by epoch.
+     */
+    private abstract static class PeerCursor implements Closeable, Comparable<PeerCursor> {
+
+        final File file;
+        int epoch;
+
+        PeerCursor(File file) {
+            this.file = file;
+            this.epoch = Integer.MIN_VALUE;
+        }
+
+        /**
+         * Moves to the next epoch of the peer log.
+         *
+         * @return false at the end of the log
+         */
+        abstract boolean next() throws IOException, ClassNotFoundException;
+
+        /**
+         * @return the entries of the current epoch
+         */
+        abstract MeasurementLog current() throws IOException;
+
+        @Override
+        public int compareTo(PeerCursor other) {
+            return Integer.compare(epoch, other.epoch);
+        }
+    }
+
+    private static class SerializedCursor extends PeerCursor {
+
+        private final SerializedLogReader reader;
+        private MeasurementLog chunk;
+        private int lastEpoch;
+
+        SerializedCursor(File file, int minEpoch, int maxEpoch) throws IOException {
+            super(file);
+            this.reader = new SerializedLogReader(file, minEpoch, maxEpoch);
+            this.lastEpoch = Integer.MIN_VALUE;
+        }
+
+        @Override
+        boolean next() throws IOException, ClassNotFoundException {
+            if (chunk != null && epoch < lastEpoch) {
+                epoch++;
+                return true;
+            }
+            chunk = null;
+            while (chunk == null) {
+                MeasurementLog read = reader.next();
+                if (read == null) {
+                    return false;
+                }
+                if (read.getMaxEpochNumber() <= epoch) {
+                    continue;
+                }
+                chunk = read;
+                epoch = Math.max(read.getMinEpochNumber(), epoch + 1);
+                lastEpoch = read.getMaxEpochNumber();
+            }
+            return true;
+        }
+
+        @Override
+        MeasurementLog current() {
+            return chunk.getSubLog(epoch, epoch + 1);
+        }
+
+        @Override
+        public void close() throws IOException {
+            reader.close();
+        }
+    }
+
+    private static class BinaryCursor extends PeerCursor {
+
+        private final BinaryLogReader reader;
+        private int segment;
+
+        BinaryCursor(File file) throws IOException {
+            super(file);
+            this.reader = new BinaryLogReader(file);
+            this.segment = -1;
+        }
+
+        @Override
+        boolean next() {
+            segment++;
+            if (segment >= reader.getSegmentCount()) {
+                return false;
+            }
+            epoch = reader.getEpochs().get(segment);
+            return true;
+        }
+
+        @Override
+        MeasurementLog current() throws IOException {
+            final MeasurementLog log = new MeasurementLog();
+            reader.readSegment(segment, new BinaryLogReader.ColumnVisitor() {
+                @Override
+                public void column(int epoch, Object[] tags, DoubleBuffer values) {
+                    while (values.hasRemaining()) {
+                        if (tags.length == 1) {
+                            log.log(epoch, tags[0], values.get());
+                        } else {
+                            log.log(epoch, tags[0], tags[1], values.get());
+                        }
+                    }
+                }
+            });
+            return log;
+        }
+
+        @Override
+        public void close() throws IOException {
+            reader.close();
+        }
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright (C) 2015 SFINA Team
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package replayer;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Arrays;
+import org.apache.log4j.Logger;
+
+/**
+ * Writes an overview of the results as a table with a row per time step and
+ * iteration, by default to allMetrics.txt.
+ */
+public class TableResultSink implements ResultSink {
+
+    private static final Logger logger = Logger.getLogger(TableResultSink.class);
+
+    private static final String DELIMITER = delimiter(200);
+    private static final String HEADER_FORMAT = "%10s%10s%20s%20s%20s%20s%20s%20s%20s%20s%20s\n";
+    private static final String TOTAL_FORMAT = "%10d%10s%20.2f%20.2f%20.2f%20.0f%20d%20.4f%20.4f%20.0f%20.0f\n";
+    private static final String ITERATION_FORMAT = "%10s%10d%20.2f%20.2f%20.2f%20.0f%20s%20.4f%20.4f%20.0f%20.0f\n";
+
+    private final String fileName;
+    private PrintWriter out;
+
+    /**
+     * @param fileName table file, appended to
+     */
+    public TableResultSink(String fileName) {
+        this.fileName = fileName;
+    }
+
+    private static String delimiter(int length) {
+        char[] delimiter = new char[length];
+        Arrays.fill(delimiter, '-');
+        return new String(delimiter);
+    }
+
+    /**
+     * Opens the output, called by begin.
+     *
+     * @return false if nothing can be written
+     */
+    protected boolean open() {
+        try {
+            out = new PrintWriter(new BufferedWriter(new FileWriter(fileName, true)));
+            return true;
+        } catch (IOException ex) {
+            logger.error("Could not open " + fileName, ex);
+            return false;
+        }
+    }
+
+    /**
+     * Writes a formatted line.
+     *
+     * @param format
+     * @param args
+     */
+    protected void line(String format, Object... args) {
+        if (out != null) {
+            out.format(format, args);
+        }
+    }
+
+    @Override
+    public void begin(String experimentID) {
+        if (!open()) {
+            return;
+        }
+        line("*** RESULTS PER TIME STEP AND ITERATION FOR EXPERIMENT %s ***\n", experimentID);
+        line(HEADER_FORMAT, "TIME STEP", "ITERATION",
+                ResultColumn.LINK_LOSS.getLabel(), ResultColumn.LINK_FLOW.getLabel(), ResultColumn.LINK_UTILIZATION.getLabel(),
+                ResultColumn.SIMU_TIME.getLabel(), "# iterations",
+                ResultColumn.EPOCH_POWER_LOSS.getLabel(), ResultColumn.TOTAL_POWER_LOSS.getLabel(),
+                ResultColumn.ISLANDS.getLabel(), ResultColumn.ISOLATED_NODES.getLabel());
+    }
+
+    @Override
+    public void row(ResultRow row) {
+        if (row.isEpochTotal()) {
+            line("%s\n", DELIMITER);
+            line(TOTAL_FORMAT, row.getEpoch(), "total",
+                    row.get(ResultColumn.LINK_LOSS), row.get(ResultColumn.LINK_FLOW), row.get(ResultColumn.LINK_UTILIZATION),
+                    row.get(ResultColumn.SIMU_TIME), row.getTotalIterations(),
+                    row.get(ResultColumn.EPOCH_POWER_LOSS), row.get(ResultColumn.TOTAL_POWER_LOSS),
+                    row.get(ResultColumn.ISLANDS), row.get(ResultColumn.ISOLATED_NODES));
+        } else {
+            line(ITERATION_FORMAT, "", row.getIteration(),
+                    row.get(ResultColumn.LINK_LOSS), row.get(ResultColumn.LINK_FLOW), row.get(ResultColumn.LINK_UTILIZATION),
+                    row.get(ResultColumn.SIMU_TIME), "-",
+                    row.get(ResultColumn.EPOCH_POWER_LOSS), row.get(ResultColumn.TOTAL_POWER_LOSS),
+                    row.get(ResultColumn.ISLANDS), row.get(ResultColumn.ISOLATED_NODES));
+        }
+    }
+
+    @Override
+    public void epochEnded(int epoch, int totalIterations) {
+    }
+
+    @Override
+    public void flush() {
+        if (out != null) {
+            out.flush();
+        }
+    }
+
+    @Override
+    public void close() {
+        if (out != null) {
+            out.print("\n");
+            out.close();
+            out = null;
+        }
+    }
+}